@@ -0,0 +1,259 @@
+package com.germer.markov.chain;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded-memory state table used internally by {@link MarkovChainBuilder} to
+ * build approximate Markov Chains. Transition counts live in a
+ * {@link CountMinSketch} keyed by hashed prefix and prefix+suffix, and only a
+ * fixed number of state slots is kept, each with a compact list of candidate
+ * suffixes. States compete for slots by their estimated count (hot prefixes
+ * evict cold ones) and suffixes compete for candidate positions the same way,
+ * so memory no longer depends on the number of distinct n-grams of the source.
+ * <p>
+ * Tokens are consumed in order through {@link #consume}, and the table is
+ * turned into a regular state map by {@link #toStateMap()}, where weights are
+ * the sketch estimates. States whose prefix starts the text are never evicted,
+ * so generation always has a starting point.
+ * </p>
+ *
+ * @author <a href="mailto:alegermer@gmail.com">Alessandro Germer</a>
+ */
+class ApproximateStateTable {
+
+	// number of sketch rows (independent hash functions).
+	private static final int SKETCH_DEPTH = 4;
+	// share of the memory target given to the sketch counters.
+	private static final double SKETCH_SHARE = 0.25;
+	// number of adjacent slots probed for a prefix before evicting.
+	private static final int PROBES = 8;
+	// slot key flagging an empty slot.
+	private static final long EMPTY = 0L;
+	// token id of the null (final state) token.
+	private static final int NULL_TOKEN = 0;
+	// candidate id flagging an empty candidate position.
+	private static final int NO_CANDIDATE = -1;
+
+	private final int prefixLength;
+	private final int candidates;
+	private final CountMinSketch sketch;
+
+	// token dictionary, id 0 is reserved for the null token.
+	private final Map<String, Integer> tokenIds = new HashMap<>();
+	private final List<String> tokens = new ArrayList<>();
+
+	// per slot: the prefix hash, the prefix token ids and the candidate ids.
+	private final int slotMask;
+	private final long[] slotKeys;
+	private final int[] slotPrefixes;
+	private final int[] slotCandidates;
+
+	// token ids of the current prefix while consuming.
+	private final int[] curPrefix;
+
+	/**
+	 * Constructs an empty table sized to a memory target.
+	 *
+	 * @param prefixLength the prefix length of the chain.
+	 * @param candidates the maximum number of suffixes kept per state.
+	 * @param memoryBytes the approximate memory target, including the final
+	 *            state map built by {@link #toStateMap()} but not the token
+	 *            dictionary.
+	 */
+	ApproximateStateTable(int prefixLength, int candidates, long memoryBytes) {
+		this.prefixLength = prefixLength;
+		this.candidates = candidates;
+
+		long sketchWidth = Long.highestOneBit(Math.max(64, (long) (memoryBytes * SKETCH_SHARE) / (4 * SKETCH_DEPTH)));
+		this.sketch = new CountMinSketch(SKETCH_DEPTH, (int) Math.min(1 << 30, sketchWidth));
+
+		long slotBytes = 8 + 4L * prefixLength + 4L * candidates + MemoryFootprint.ofState(prefixLength)
+				+ candidates * MemoryFootprint.SUFFIX_BYTES;
+		long slots = Long.highestOneBit(Math.max(16, (long) (memoryBytes * (1 - SKETCH_SHARE)) / slotBytes));
+		int slotCount = (int) Math.min(1 << 30, Math.min(slots, Integer.MAX_VALUE / Math.max(prefixLength, candidates)));
+		slotCount = Integer.highestOneBit(slotCount);
+
+		this.slotMask = slotCount - 1;
+		this.slotKeys = new long[slotCount];
+		this.slotPrefixes = new int[slotCount * prefixLength];
+		this.slotCandidates = new int[slotCount * candidates];
+		Arrays.fill(slotCandidates, NO_CANDIDATE);
+
+		this.curPrefix = new int[prefixLength];
+		tokens.add(null);
+	}
+
+	/**
+	 * Gets the number of state slots of this table, the maximum number of
+	 * states of the approximate chain.
+	 *
+	 * @return the amount of slots.
+	 */
+	int getSlotCount() {
+		return slotKeys.length;
+	}
+
+	/**
+	 * Consumes the next token of the source (or null for its end), counting
+	 * the transition from the current prefix and shifting it left.
+	 *
+	 * @param token the next token.
+	 */
+	void consume(String token) {
+		int tokenId = idOf(token);
+		long prefixHash = hashOf(curPrefix);
+
+		sketch.increment(prefixKey(prefixHash));
+		sketch.increment(pairKey(prefixHash, tokenId));
+
+		int slot = findSlot(prefixHash);
+		if (slot >= 0) {
+			offerCandidate(slot, tokenId);
+		}
+
+		System.arraycopy(curPrefix, 1, curPrefix, 0, prefixLength - 1);
+		curPrefix[prefixLength - 1] = tokenId;
+	}
+
+	/**
+	 * Builds the state map of the approximate chain, where each state holds
+	 * its candidate suffixes weighted by their estimated counts.
+	 *
+	 * @return the new state map.
+	 */
+	Map<Prefix, WeightedSuffixes> toStateMap() {
+		Map<Prefix, WeightedSuffixes> stateMap = new LinkedHashMap<>();
+		for (int slot = 0; slot < slotKeys.length; slot++) {
+			if (slotKeys[slot] == EMPTY) {
+				continue;
+			}
+			Prefix prefix = new Prefix(prefixLength);
+			for (int i = 0; i < prefixLength; i++) {
+				prefix.shiftLeft(tokens.get(slotPrefixes[slot * prefixLength + i]));
+			}
+			WeightedSuffixes suffixes = new WeightedSuffixes();
+			for (int c = slot * candidates; c < (slot + 1) * candidates && slotCandidates[c] != NO_CANDIDATE; c++) {
+				int tokenId = slotCandidates[c];
+				suffixes.add(tokens.get(tokenId), sketch.estimate(pairKey(slotKeys[slot], tokenId)));
+			}
+			stateMap.put(prefix, suffixes);
+		}
+		return stateMap;
+	}
+
+	private int idOf(String token) {
+		if (token == null) {
+			return NULL_TOKEN;
+		}
+		Integer id = tokenIds.get(token);
+		if (id == null) {
+			id = tokens.size();
+			tokenIds.put(token, id);
+			tokens.add(token);
+		}
+		return id;
+	}
+
+	/**
+	 * Finds (or claims) the slot of the current prefix, returns -1 when the
+	 * prefix isn't hot enough to evict any of the probed slots.
+	 */
+	private int findSlot(long prefixHash) {
+		int base = mix(prefixHash);
+		int victim = -1;
+		int victimCount = Integer.MAX_VALUE;
+
+		for (int p = 0; p < PROBES; p++) {
+			int slot = (base + p) & slotMask;
+			if (slotKeys[slot] == EMPTY) {
+				claim(slot, prefixHash);
+				return slot;
+			} else if (slotKeys[slot] == prefixHash && hasCurrentPrefix(slot)) {
+				return slot;
+			} else if (slotPrefixes[slot * prefixLength] != NULL_TOKEN) {
+				int count = sketch.estimate(prefixKey(slotKeys[slot]));
+				if (count < victimCount) {
+					victim = slot;
+					victimCount = count;
+				}
+			}
+		}
+
+		if (victim >= 0 && sketch.estimate(prefixKey(prefixHash)) > victimCount) {
+			claim(victim, prefixHash);
+			return victim;
+		}
+		return -1;
+	}
+
+	private boolean hasCurrentPrefix(int slot) {
+		for (int i = 0; i < prefixLength; i++) {
+			if (slotPrefixes[slot * prefixLength + i] != curPrefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void claim(int slot, long prefixHash) {
+		slotKeys[slot] = prefixHash;
+		System.arraycopy(curPrefix, 0, slotPrefixes, slot * prefixLength, prefixLength);
+		Arrays.fill(slotCandidates, slot * candidates, (slot + 1) * candidates, NO_CANDIDATE);
+	}
+
+	/**
+	 * Adds the suffix as a candidate of the slot, replacing its coldest
+	 * candidate when full and the suffix is estimated to be hotter.
+	 */
+	private void offerCandidate(int slot, int tokenId) {
+		int victim = -1;
+		int victimCount = Integer.MAX_VALUE;
+
+		for (int c = slot * candidates; c < (slot + 1) * candidates; c++) {
+			if (slotCandidates[c] == tokenId) {
+				return;
+			} else if (slotCandidates[c] == NO_CANDIDATE) {
+				slotCandidates[c] = tokenId;
+				return;
+			}
+			int count = sketch.estimate(pairKey(slotKeys[slot], slotCandidates[c]));
+			if (count < victimCount) {
+				victim = c;
+				victimCount = count;
+			}
+		}
+
+		if (sketch.estimate(pairKey(slotKeys[slot], tokenId)) > victimCount) {
+			slotCandidates[victim] = tokenId;
+		}
+	}
+
+	private static long hashOf(int[] prefix) {
+		long h = 0x9E3779B97F4A7C15L;
+		for (int id : prefix) {
+			h = (h ^ id) * 0xFF51AFD7ED558CCDL;
+			h ^= h >>> 32;
+		}
+		return h == EMPTY ? 1L : h;
+	}
+
+	private static long prefixKey(long prefixHash) {
+		return prefixHash * 0xC2B2AE3D27D4EB4FL;
+	}
+
+	private static long pairKey(long prefixHash, int tokenId) {
+		return (prefixHash ^ ((tokenId + 1L) * 0x9E3779B97F4A7C15L)) * 0xD6E8FEB86659FD93L;
+	}
+
+	private static int mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		return (int) h;
+	}
+}
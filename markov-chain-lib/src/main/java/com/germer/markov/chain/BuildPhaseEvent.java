@@ -0,0 +1,50 @@
+package com.germer.markov.chain;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder event emitted by {@link MarkovChainBuilder} for each
+ * phase of a build: {@value #PARSE} (tokenizing and inserting), {@value #SPILL}
+ * (each flush of the state table to disk) and {@value #MERGE} (merging the
+ * spilled runs). Disabled events cost next to nothing, byte counting is only
+ * done when the event is enabled.
+ * 
+ * @author <a href="mailto:alegermer@gmail.com">Alessandro Germer</a>
+ */
+@Name("com.germer.markov.BuildPhase")
+@Label("Markov Chain Build Phase")
+@Category("Markov Chain")
+@Description("A phase of a Markov Chain build with the amount of data it processed.")
+class BuildPhaseEvent extends Event {
+
+	static final String PARSE = "parse";
+	static final String SPILL = "spill";
+	static final String MERGE = "merge";
+
+	@Label("Phase")
+	String phase;
+
+	@Label("Prefix Length")
+	int prefixLength;
+
+	@Label("Bytes Read")
+	@DataAmount
+	long bytesRead;
+
+	@Label("Tokens")
+	long tokens;
+
+	@Label("States Created")
+	@Description("States created in the state table (or its final size for merges).")
+	long states;
+
+	BuildPhaseEvent(String phase, int prefixLength) {
+		this.phase = phase;
+		this.prefixLength = prefixLength;
+	}
+}
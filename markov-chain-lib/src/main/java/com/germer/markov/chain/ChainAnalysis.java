@@ -0,0 +1,310 @@
+package com.germer.markov.chain;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Structural statistics of a {@link MarkovChain} model, as computed by
+ * {@link MarkovChain#analyze()}. Meant to help choosing build parameters (such
+ * as the prefix length) for a given source text: a chain with entropy rate
+ * close to 0 bits per token mostly copies the source, while a high entropy rate
+ * means it barely follows it.
+ * <p>
+ * The stationary distribution is the long-run share of visits of each state by
+ * a generator that starts over from the empty prefix whenever a walk ends, and
+ * it's approximated by power iteration. Instances are immutable and meant to be
+ * serialized (e.g. as JSON) by their public getters.
+ * </p>
+ * <p>
+ * The entropy and stationary probability of every state are available by its
+ * prefix ({@link #getStateEntropy}, {@link #getStateProbability}), while
+ * {@link #getTopStates()} only summarizes the most visited ones.
+ * </p>
+ *
+ * @author <a href="mailto:alegermer@gmail.com">Alessandro Germer</a>
+ */
+public class ChainAnalysis {
+
+	private final int stateCount;
+	private final int transitionCount;
+	private final double entropyRate;
+	private final double meanStateEntropy;
+	private final double maxStateEntropy;
+	private final double meanFanout;
+	private final int maxFanout;
+	private final SortedMap<Integer, Integer> fanoutHistogram;
+	private final int terminalReachableStates;
+	private final int shortestWalk;
+	private final int stationaryIterations;
+	private final double stationaryResidual;
+	private final List<RankedState> topStates;
+	private final TransitionGraph graph;
+	private final double[] stateEntropy;
+	private final double[] stateProbability;
+	// state index by prefix, built by the first state lookup.
+	private volatile Map<Prefix, Integer> stateIndex;
+
+	/**
+	 * A state of the chain ranked by its stationary probability.
+	 *
+	 * @author <a href="mailto:alegermer@gmail.com">Alessandro Germer</a>
+	 */
+	public static class RankedState {
+		private final List<String> prefix;
+		private final double probability;
+		private final double entropy;
+		private final int fanout;
+
+		RankedState(List<String> prefix, double probability, double entropy, int fanout) {
+			this.prefix = prefix;
+			this.probability = probability;
+			this.entropy = entropy;
+			this.fanout = fanout;
+		}
+
+		/**
+		 * Gets the state prefix as a list of tokens (null tokens stand for the
+		 * beginning of the text).
+		 *
+		 * @return the prefix tokens.
+		 */
+		public List<String> getPrefix() {
+			return prefix;
+		}
+
+		/**
+		 * Gets the stationary probability of the state.
+		 *
+		 * @return the long-run share of visits of the state.
+		 */
+		public double getProbability() {
+			return probability;
+		}
+
+		/**
+		 * Gets the entropy of the suffix distribution of the state.
+		 *
+		 * @return the state entropy in bits.
+		 */
+		public double getEntropy() {
+			return entropy;
+		}
+
+		/**
+		 * Gets the number of distinct suffixes of the state (including the
+		 * final state).
+		 *
+		 * @return the state fanout.
+		 */
+		public int getFanout() {
+			return fanout;
+		}
+	}
+
+	ChainAnalysis(int stateCount, int transitionCount, double entropyRate, double meanStateEntropy,
+			double maxStateEntropy, int maxFanout, SortedMap<Integer, Integer> fanoutHistogram,
+			int terminalReachableStates, int shortestWalk, int stationaryIterations, double stationaryResidual,
+			List<RankedState> topStates, TransitionGraph graph, double[] stateEntropy, double[] stateProbability) {
+		this.stateCount = stateCount;
+		this.transitionCount = transitionCount;
+		this.entropyRate = entropyRate;
+		this.meanStateEntropy = meanStateEntropy;
+		this.maxStateEntropy = maxStateEntropy;
+		this.meanFanout = stateCount == 0 ? 0 : (double) transitionCount / stateCount;
+		this.maxFanout = maxFanout;
+		this.fanoutHistogram = fanoutHistogram;
+		this.terminalReachableStates = terminalReachableStates;
+		this.shortestWalk = shortestWalk;
+		this.stationaryIterations = stationaryIterations;
+		this.stationaryResidual = stationaryResidual;
+		this.topStates = topStates;
+		this.graph = graph;
+		this.stateEntropy = stateEntropy;
+		this.stateProbability = stateProbability;
+	}
+
+	/**
+	 * Gets the number of states of the chain.
+	 *
+	 * @return the amount of states.
+	 */
+	public int getStateCount() {
+		return stateCount;
+	}
+
+	/**
+	 * Gets the number of transitions (distinct state suffixes) of the chain.
+	 *
+	 * @return the amount of transitions.
+	 */
+	public int getTransitionCount() {
+		return transitionCount;
+	}
+
+	/**
+	 * Gets the entropy rate of the chain, the state entropies weighted by the
+	 * stationary distribution: the average information of each generated
+	 * token.
+	 *
+	 * @return the entropy rate in bits per token.
+	 */
+	public double getEntropyRate() {
+		return entropyRate;
+	}
+
+	/**
+	 * Gets the unweighted mean of the state entropies.
+	 *
+	 * @return the mean state entropy in bits.
+	 */
+	public double getMeanStateEntropy() {
+		return meanStateEntropy;
+	}
+
+	/**
+	 * Gets the highest state entropy.
+	 *
+	 * @return the maximum state entropy in bits.
+	 */
+	public double getMaxStateEntropy() {
+		return maxStateEntropy;
+	}
+
+	/**
+	 * Gets the mean number of distinct suffixes per state (branching factor).
+	 *
+	 * @return the mean fanout.
+	 */
+	public double getMeanFanout() {
+		return meanFanout;
+	}
+
+	/**
+	 * Gets the highest number of distinct suffixes of a state.
+	 *
+	 * @return the maximum fanout.
+	 */
+	public int getMaxFanout() {
+		return maxFanout;
+	}
+
+	/**
+	 * Gets the fanout histogram of the chain.
+	 *
+	 * @return the number of states (values) by fanout (keys).
+	 */
+	public SortedMap<Integer, Integer> getFanoutHistogram() {
+		return fanoutHistogram;
+	}
+
+	/**
+	 * Gets the number of states from which a walk can end, either by reaching
+	 * the final state or a prefix missing from the chain. Walks started from
+	 * any other state only end by the token limit.
+	 *
+	 * @return the amount of states from which the end is reachable.
+	 */
+	public int getTerminalReachableStates() {
+		return terminalReachableStates;
+	}
+
+	/**
+	 * Gets the minimum amount of tokens a generation walk can produce before it
+	 * ends.
+	 *
+	 * @return the shortest walk length, -1 if walks only end by the token
+	 *         limit.
+	 */
+	public int getShortestWalk() {
+		return shortestWalk;
+	}
+
+	/**
+	 * Gets the number of power iterations run to approximate the stationary
+	 * distribution.
+	 *
+	 * @return the amount of iterations.
+	 */
+	public int getStationaryIterations() {
+		return stationaryIterations;
+	}
+
+	/**
+	 * Gets the L1 distance between the last two power iterations, an upper
+	 * bound estimate of the stationary distribution error.
+	 *
+	 * @return the last iteration residual.
+	 */
+	public double getStationaryResidual() {
+		return stationaryResidual;
+	}
+
+	/**
+	 * Gets the most visited states according to the stationary distribution,
+	 * in descending order of probability.
+	 *
+	 * @return the list of top {@link RankedState}.
+	 */
+	public List<RankedState> getTopStates() {
+		return topStates;
+	}
+
+	/**
+	 * Gets the entropy of the suffix distribution of the given state.
+	 *
+	 * @param prefix the state prefix as a list of tokens (null tokens stand
+	 *            for the beginning of the text).
+	 * @return the state entropy in bits.
+	 *
+	 * @throws NullPointerException if the given prefix is null.
+	 * @throws IllegalArgumentException if the given prefix isn't a state of
+	 *             the chain.
+	 */
+	public double getStateEntropy(List<String> prefix) {
+		return stateEntropy[stateOf(prefix)];
+	}
+
+	/**
+	 * Gets the stationary probability of the given state.
+	 *
+	 * @param prefix the state prefix as a list of tokens (null tokens stand
+	 *            for the beginning of the text).
+	 * @return the long-run share of visits of the state.
+	 *
+	 * @throws NullPointerException if the given prefix is null.
+	 * @throws IllegalArgumentException if the given prefix isn't a state of
+	 *             the chain.
+	 */
+	public double getStateProbability(List<String> prefix) {
+		return stateProbability[stateOf(prefix)];
+	}
+
+	private int stateOf(List<String> prefix) {
+		if (prefix == null) {
+			throw new NullPointerException("The specified prefix must be not null.");
+		}
+		Map<Prefix, Integer> index = stateIndex;
+		if (index == null) {
+			index = new HashMap<>(stateCount * 4 / 3 + 1);
+			for (int s = 0; s < stateCount; s++) {
+				index.put(graph.getPrefix(s), s);
+			}
+			stateIndex = index;
+		}
+
+		Integer state = null;
+		if (stateCount > 0 && prefix.size() == graph.getPrefix(0).getTokens().length) {
+			Prefix key = new Prefix(prefix.size());
+			for (String token : prefix) {
+				key.shiftLeft(token);
+			}
+			state = index.get(key);
+		}
+		if (state == null) {
+			throw new IllegalArgumentException("The specified prefix isn't a state of the chain: " + prefix);
+		}
+		return state;
+	}
+}
@@ -0,0 +1,265 @@
+package com.germer.markov.chain;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes the {@link ChainAnalysis} of a {@link TransitionGraph}, used
+ * internally by {@link MarkovChain#analyze}. The per-state passes and each
+ * power iteration of the stationary distribution run in parallel on a
+ * {@link ForkJoinPool}, over fixed chunks of states so reductions are
+ * deterministic. Power iteration pulls probability mass through the incoming
+ * edges of each state ({@link TransitionGraph.Incoming}), so every state is
+ * written by a single task.
+ * <p>
+ * The stationary distribution is the one of a lazy chain (staying put with
+ * probability 1/2) where walks ending start over from the empty prefix: same
+ * stationary distribution as the restarting chain, but convergent even when
+ * the chain is periodic (e.g. a source text without repeated n-grams).
+ * </p>
+ *
+ * @author <a href="mailto:alegermer@gmail.com">Alessandro Germer</a>
+ */
+class ChainAnalyzer {
+
+	/**
+	 * Number of states summarized by {@link ChainAnalysis#getTopStates()}.
+	 */
+	static final int TOP_STATES = 20;
+
+	/**
+	 * Maximum number of power iterations.
+	 */
+	static final int MAX_ITERATIONS = 200;
+
+	/**
+	 * L1 residual under which power iteration stops.
+	 */
+	static final double TOLERANCE = 1e-6;
+
+	// number of states processed by a single parallel task.
+	private static final int CHUNK_SIZE = 1 << 13;
+	private static final double LOG_2 = Math.log(2);
+
+	private final TransitionGraph graph;
+	private final ForkJoinPool pool;
+	private final int states;
+	private final int chunks;
+
+	/**
+	 * Body of a parallel pass over a chunk of states.
+	 */
+	@FunctionalInterface
+	private interface ChunkBody {
+		void run(int chunk, int from, int to);
+	}
+
+	/**
+	 * Recursively splits a range of chunks into tasks.
+	 */
+	private class ChunkTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final ChunkBody body;
+		private final int low;
+		private final int high;
+
+		private ChunkTask(ChunkBody body, int low, int high) {
+			this.body = body;
+			this.low = low;
+			this.high = high;
+		}
+
+		@Override
+		protected void compute() {
+			if (high - low == 1) {
+				int from = low * CHUNK_SIZE;
+				body.run(low, from, Math.min(states, from + CHUNK_SIZE));
+			} else {
+				int mid = (low + high) >>> 1;
+				invokeAll(new ChunkTask(body, low, mid), new ChunkTask(body, mid, high));
+			}
+		}
+	}
+
+	/**
+	 * Creates an analyzer of the given graph.
+	 *
+	 * @param graph the compiled chain.
+	 * @param pool the pool running the parallel passes.
+	 */
+	ChainAnalyzer(TransitionGraph graph, ForkJoinPool pool) {
+		this.graph = graph;
+		this.pool = pool;
+		this.states = graph.getStateCount();
+		this.chunks = (states + CHUNK_SIZE - 1) / CHUNK_SIZE;
+	}
+
+	private void forEachChunk(ChunkBody body) {
+		if (chunks > 0) {
+			pool.invoke(new ChunkTask(body, 0, chunks));
+		}
+	}
+
+	private static double sum(double[] partials) {
+		double sum = 0;
+		for (double partial : partials) {
+			sum += partial;
+		}
+		return sum;
+	}
+
+	/**
+	 * Runs the analysis.
+	 *
+	 * @return the new {@link ChainAnalysis}.
+	 */
+	ChainAnalysis analyze() {
+		// Per-state entropy and ending probability, per-edge probability.
+		double[] entropy = new double[states];
+		double[] endProbability = new double[states];
+		double[] edgeProbability = new double[graph.getEdgeCount()];
+		forEachChunk((chunk, from, to) -> {
+			for (int s = from; s < to; s++) {
+				int total = graph.getTotalWeight(s);
+				if (total == 0) {
+					endProbability[s] = 1;
+					continue;
+				}
+				int previous = 0;
+				double h = 0;
+				double end = 0;
+				for (int edge = graph.getEdgesStart(s); edge < graph.getEdgesEnd(s); edge++) {
+					int cumulative = graph.getCumulativeWeight(edge);
+					double p = (double) (cumulative - previous) / total;
+					previous = cumulative;
+					edgeProbability[edge] = p;
+					h -= p * Math.log(p) / LOG_2;
+					if (graph.getTarget(edge) == TransitionGraph.NO_STATE) {
+						end += p;
+					}
+				}
+				entropy[s] = h;
+				endProbability[s] = end;
+			}
+		});
+
+		// Power iteration of the stationary distribution.
+		int start = graph.getStartState();
+		double[] pi = new double[states];
+		if (start != TransitionGraph.NO_STATE) {
+			pi[start] = 1;
+		} else {
+			Arrays.fill(pi, 1.0 / Math.max(1, states));
+		}
+		double[] next = new double[states];
+		double[] partials = new double[chunks];
+		TransitionGraph.Incoming in = graph.getIncoming();
+
+		int iterations = 0;
+		double residual = states == 0 ? 0 : Double.POSITIVE_INFINITY;
+		while (residual > TOLERANCE && iterations < MAX_ITERATIONS) {
+			double[] current = pi;
+			double[] updated = next;
+
+			forEachChunk((chunk, from, to) -> {
+				double end = 0;
+				for (int s = from; s < to; s++) {
+					end += current[s] * endProbability[s];
+				}
+				partials[chunk] = end;
+			});
+			double restart = sum(partials);
+
+			forEachChunk((chunk, from, to) -> {
+				double delta = 0;
+				for (int t = from; t < to; t++) {
+					double mass = t == start ? restart : 0;
+					for (int entry = in.getStart(t); entry < in.getEnd(t); entry++) {
+						int edge = in.getEdge(entry);
+						mass += current[in.getSource(edge)] * edgeProbability[edge];
+					}
+					double value = 0.5 * (current[t] + mass);
+					delta += Math.abs(value - current[t]);
+					updated[t] = value;
+				}
+				partials[chunk] = delta;
+			});
+			residual = sum(partials);
+
+			pi = updated;
+			next = current;
+			iterations++;
+		}
+
+		// Entropy rate and entropy statistics.
+		double[] stationary = pi;
+		double[] weightedEntropy = new double[chunks];
+		forEachChunk((chunk, from, to) -> {
+			double h = 0;
+			for (int s = from; s < to; s++) {
+				h += stationary[s] * entropy[s];
+			}
+			weightedEntropy[chunk] = h;
+		});
+		double entropySum = 0;
+		double maxEntropy = 0;
+		for (double h : entropy) {
+			entropySum += h;
+			maxEntropy = Math.max(maxEntropy, h);
+		}
+
+		// Fanout histogram.
+		SortedMap<Integer, Integer> fanoutHistogram = new TreeMap<>();
+		int maxFanout = 0;
+		for (int s = 0; s < states; s++) {
+			int fanout = graph.getEdgesEnd(s) - graph.getEdgesStart(s);
+			fanoutHistogram.merge(fanout, 1, Integer::sum);
+			maxFanout = Math.max(maxFanout, fanout);
+		}
+
+		// Terminal reachability.
+		int[] distances = graph.getDistancesToEnd();
+		int terminalReachable = 0;
+		for (int distance : distances) {
+			if (distance != Integer.MAX_VALUE) {
+				terminalReachable++;
+			}
+		}
+		int shortestWalk = start == TransitionGraph.NO_STATE ? 0
+				: distances[start] == Integer.MAX_VALUE ? -1 : distances[start];
+
+		return new ChainAnalysis(states, graph.getEdgeCount(), sum(weightedEntropy),
+				states == 0 ? 0 : entropySum / states, maxEntropy, maxFanout,
+				Collections.unmodifiableSortedMap(fanoutHistogram), terminalReachable, shortestWalk, iterations,
+				residual, topStates(stationary, entropy), graph, entropy, stationary);
+	}
+
+	private List<ChainAnalysis.RankedState> topStates(double[] stationary, double[] entropy) {
+		PriorityQueue<Integer> top = new PriorityQueue<>(TOP_STATES + 1,
+				(a, b) -> Double.compare(stationary[a], stationary[b]));
+		for (int s = 0; s < states; s++) {
+			if (top.size() < TOP_STATES) {
+				top.add(s);
+			} else if (stationary[s] > stationary[top.peek()]) {
+				top.poll();
+				top.add(s);
+			}
+		}
+
+		List<ChainAnalysis.RankedState> ranked = new ArrayList<>(top.size());
+		while (!top.isEmpty()) {
+			int s = top.poll();
+			ranked.add(new ChainAnalysis.RankedState(Arrays.asList(graph.getPrefix(s).getTokens()), stationary[s],
+					entropy[s], graph.getEdgesEnd(s) - graph.getEdgesStart(s)));
+		}
+		Collections.reverse(ranked);
+		return Collections.unmodifiableList(ranked);
+	}
+}
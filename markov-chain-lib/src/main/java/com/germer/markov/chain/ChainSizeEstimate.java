@@ -0,0 +1,123 @@
+package com.germer.markov.chain;
+
+/**
+ * Outcome of {@link MarkovChainBuilder#estimate}: the estimated size of the
+ * {@link MarkovChain} a source would build, for the prefix length of the
+ * builder and every shorter one, so callers can decide whether (and with
+ * which prefix length) to build it. State and transition counts are
+ * HyperLogLog estimates, typically within 1% of the actual ones, and model
+ * bytes are estimated as the memory budget of the builder does (see
+ * {@link MarkovChainBuilder#setMemoryBudget}). Instances are immutable and
+ * meant to be serialized (e.g. as JSON) by their public getters.
+ *
+ * @author <a href="mailto:alegermer@gmail.com">Alessandro Germer</a>
+ */
+public class ChainSizeEstimate {
+
+	private final long tokens;
+	// distinct n-grams indexed by n, up to prefix length + 1.
+	private final long[] distinctNgrams;
+	private final double averageTokenBytes;
+
+	ChainSizeEstimate(long tokens, long[] distinctNgrams, double averageTokenBytes) {
+		this.tokens = tokens;
+		this.distinctNgrams = distinctNgrams;
+		this.averageTokenBytes = averageTokenBytes;
+	}
+
+	/**
+	 * Gets the number of tokens of the source.
+	 *
+	 * @return the amount of tokens.
+	 */
+	public long getTokens() {
+		return tokens;
+	}
+
+	/**
+	 * Gets the prefix length of the builder, the longest one estimated.
+	 *
+	 * @return the prefix length.
+	 */
+	public int getPrefixLength() {
+		return distinctNgrams.length - 2;
+	}
+
+	/**
+	 * Gets the estimated number of states with the prefix length of the
+	 * builder.
+	 *
+	 * @return the estimated amount of states.
+	 */
+	public long getStates() {
+		return getStates(getPrefixLength());
+	}
+
+	/**
+	 * Gets the estimated number of states with the given prefix length.
+	 *
+	 * @param prefixLength the prefix length, up to the one of the builder.
+	 * @return the estimated amount of states.
+	 * @throws IllegalArgumentException if the prefix length is out of range.
+	 */
+	public long getStates(int prefixLength) {
+		checkPrefixLength(prefixLength);
+		// Full n-grams plus the prefixes with leading null tokens.
+		return distinctNgrams[prefixLength] + Math.min(prefixLength, tokens + 1);
+	}
+
+	/**
+	 * Gets the estimated number of transitions (distinct suffixes of each
+	 * state) with the prefix length of the builder.
+	 *
+	 * @return the estimated amount of transitions.
+	 */
+	public long getTransitions() {
+		return getTransitions(getPrefixLength());
+	}
+
+	/**
+	 * Gets the estimated number of transitions (distinct suffixes of each
+	 * state) with the given prefix length.
+	 *
+	 * @param prefixLength the prefix length, up to the one of the builder.
+	 * @return the estimated amount of transitions.
+	 * @throws IllegalArgumentException if the prefix length is out of range.
+	 */
+	public long getTransitions(int prefixLength) {
+		checkPrefixLength(prefixLength);
+		// Full n-grams plus those with leading null tokens and the ending.
+		return distinctNgrams[prefixLength + 1] + Math.min(prefixLength, tokens) + 1;
+	}
+
+	/**
+	 * Gets the estimated heap bytes of the model with the prefix length of the
+	 * builder.
+	 *
+	 * @return the estimated size in bytes.
+	 */
+	public long getModelBytes() {
+		return getModelBytes(getPrefixLength());
+	}
+
+	/**
+	 * Gets the estimated heap bytes of the model with the given prefix length.
+	 *
+	 * @param prefixLength the prefix length, up to the one of the builder.
+	 * @return the estimated size in bytes.
+	 * @throws IllegalArgumentException if the prefix length is out of range.
+	 */
+	public long getModelBytes(int prefixLength) {
+		// Each distinct token String is shared by all the states holding it.
+		return getStates(prefixLength) * MemoryFootprint.ofState(prefixLength)
+				+ getTransitions(prefixLength) * MemoryFootprint.SUFFIX_BYTES
+				+ Math.round(distinctNgrams[1] * (MemoryFootprint.TOKEN_ENTRY_BYTES + averageTokenBytes));
+	}
+
+	private void checkPrefixLength(int prefixLength) {
+		if (prefixLength < 1 || prefixLength > getPrefixLength()) {
+			throw new IllegalArgumentException("The specified prefix length must be from 1 up to "
+					+ getPrefixLength() + ".");
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package com.germer.markov.chain;
+
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.util.Scanner;
+
+/**
+ * Markov Chain size pre-scan used internally in the package (see
+ * {@link MarkovChainBuilder#estimate}). A single pass tokenizes the source as
+ * the builder would and adds the rolling hash of every n-gram, of each length
+ * up to the prefix length + 1, to a {@link HyperLogLog} sketch: distinct
+ * n-grams of the prefix length are the states of the chain, and those one
+ * token longer its transitions. Memory is bounded by the sketches (16KB per
+ * n-gram length) no matter the source size.
+ *
+ * @author <a href="mailto:alegermer@gmail.com">Alessandro Germer</a>
+ */
+class ChainSizeEstimator {
+
+	private final int prefixLength;
+	private final TokenStrategy tokenStrategy;
+	private final Charset sourceCharset;
+
+	/**
+	 * Constructs an estimator for chains of the given settings.
+	 *
+	 * @param prefixLength the longest prefix length estimated.
+	 * @param tokenStrategy the {@link TokenStrategy} of the chains.
+	 * @param sourceCharset the charset of the sources.
+	 */
+	ChainSizeEstimator(int prefixLength, TokenStrategy tokenStrategy, Charset sourceCharset) {
+		this.prefixLength = prefixLength;
+		this.tokenStrategy = tokenStrategy;
+		this.sourceCharset = sourceCharset;
+	}
+
+	/**
+	 * Scans a source, closing it afterwards.
+	 *
+	 * @param is the source {@link InputStream}.
+	 * @return the {@link ChainSizeEstimate} of the source.
+	 * @throws UncheckedIOException if the source can't be read.
+	 */
+	ChainSizeEstimate estimate(InputStream is) {
+		// Rolling window and sketch of the n-grams of each length n.
+		OriginalityIndex.Window[] windows = new OriginalityIndex.Window[prefixLength + 2];
+		HyperLogLog[] sketches = new HyperLogLog[prefixLength + 2];
+		for (int n = 1; n < windows.length; n++) {
+			windows[n] = new OriginalityIndex(n).newWindow();
+			sketches[n] = new HyperLogLog(HyperLogLog.DEFAULT_PRECISION);
+		}
+		long tokens = 0;
+		long tokenBytes = 0;
+
+		try (Scanner s = new Scanner(is, sourceCharset.name())) {
+			while (s.findWithinHorizon(tokenStrategy.getPattern(), 0) != null) {
+				String token = s.match().group(1);
+				tokens++;
+				tokenBytes += MemoryFootprint.ofString(token);
+
+				long tokenHash = OriginalityIndex.hashToken(token);
+				for (int n = 1; n < windows.length; n++) {
+					windows[n].push(tokenHash);
+					if (windows[n].isFull()) {
+						sketches[n].add(windows[n].getHash());
+					}
+				}
+			}
+			if (s.ioException() != null) {
+				throw new UncheckedIOException(s.ioException());
+			}
+		}
+
+		long[] distinctNgrams = new long[windows.length];
+		for (int n = 1; n < windows.length; n++) {
+			distinctNgrams[n] = sketches[n].estimate();
+		}
+		return new ChainSizeEstimate(tokens, distinctNgrams, tokens > 0 ? (double) tokenBytes / tokens : 0);
+	}
+}
@@ -0,0 +1,83 @@
+package com.germer.markov.chain;
+
+/**
+ * Outcome of {@link MarkovChain#compact()}: how many suffix distributions the
+ * chain states were sharing afterwards and an estimate of the heap memory
+ * saved. Byte figures are rough estimates of the suffix structures only (token
+ * Strings are shared with prefixes and aren't counted). Instances are
+ * immutable and meant to be serialized (e.g. as JSON) by their public getters.
+ *
+ * @author <a href="mailto:alegermer@gmail.com">Alessandro Germer</a>
+ */
+public class CompactionReport {
+
+	private final int stateCount;
+	private final int distinctDistributions;
+	private final long bytesBefore;
+	private final long bytesAfter;
+
+	CompactionReport(int stateCount, int distinctDistributions, long bytesBefore, long bytesAfter) {
+		this.stateCount = stateCount;
+		this.distinctDistributions = distinctDistributions;
+		this.bytesBefore = bytesBefore;
+		this.bytesAfter = bytesAfter;
+	}
+
+	/**
+	 * Gets the number of states of the chain.
+	 *
+	 * @return the amount of states.
+	 */
+	public int getStateCount() {
+		return stateCount;
+	}
+
+	/**
+	 * Gets the number of distinct suffix distributions, the instances shared
+	 * among all states after the compaction.
+	 *
+	 * @return the amount of distinct distributions.
+	 */
+	public int getDistinctDistributions() {
+		return distinctDistributions;
+	}
+
+	/**
+	 * Gets the number of suffix distribution instances released by the
+	 * compaction.
+	 *
+	 * @return the amount of removed instances.
+	 */
+	public int getRemovedInstances() {
+		return stateCount - distinctDistributions;
+	}
+
+	/**
+	 * Gets the estimated heap bytes of the suffix distributions before the
+	 * compaction.
+	 *
+	 * @return the estimated size in bytes.
+	 */
+	public long getBytesBefore() {
+		return bytesBefore;
+	}
+
+	/**
+	 * Gets the estimated heap bytes of the suffix distributions after the
+	 * compaction.
+	 *
+	 * @return the estimated size in bytes.
+	 */
+	public long getBytesAfter() {
+		return bytesAfter;
+	}
+
+	/**
+	 * Gets the estimated heap bytes saved by the compaction.
+	 *
+	 * @return the estimated saving in bytes.
+	 */
+	public long getBytesSaved() {
+		return bytesBefore - bytesAfter;
+	}
+}
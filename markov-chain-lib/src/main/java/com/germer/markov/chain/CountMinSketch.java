@@ -0,0 +1,91 @@
+package com.germer.markov.chain;
+
+/**
+ * Count-min sketch data-structure used internally in the package to count
+ * occurrences of 64-bit keys in a fixed amount of memory. Estimates never
+ * undercount, and overcount by at most {@code e / width} times the total
+ * count with probability {@code 1 - e^-depth}. Updates are conservative (only
+ * the counters below the new estimate are incremented), which reduces the
+ * overcounting in practice.
+ * 
+ * @author <a href="mailto:alegermer@gmail.com">Alessandro Germer</a>
+ */
+class CountMinSketch {
+
+	// per-row seeds of the hash functions.
+	private static final long[] SEEDS = { 0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L,
+			0xD6E8FEB86659FD93L, 0xFF51AFD7ED558CCDL, 0xC4CEB9FE1A85EC53L, 0x27D4EB2F165667C5L, 0x94D049BB133111EBL };
+
+	/**
+	 * Maximum number of rows (independent hash functions) supported.
+	 */
+	static final int MAX_DEPTH = SEEDS.length;
+
+	private final int depth;
+	private final int widthMask;
+	// depth rows of width counters, laid out row after row.
+	private final int[] counters;
+
+	/**
+	 * Constructs an empty sketch.
+	 * 
+	 * @param depth the number of rows (1 to {@link #MAX_DEPTH}).
+	 * @param width the number of counters per row (a power of two).
+	 */
+	CountMinSketch(int depth, int width) {
+		if (depth < 1 || depth > MAX_DEPTH || Integer.bitCount(width) != 1) {
+			throw new IllegalArgumentException("Invalid sketch dimensions " + depth + "x" + width + ".");
+		}
+		this.depth = depth;
+		this.widthMask = width - 1;
+		this.counters = new int[depth * width];
+	}
+
+	private int index(int row, long key) {
+		long h = (key ^ SEEDS[row]) * 0xBF58476D1CE4E5B9L;
+		h ^= h >>> 31;
+		h *= 0x94D049BB133111EBL;
+		h ^= h >>> 29;
+		return row * (widthMask + 1) + ((int) h & widthMask);
+	}
+
+	/**
+	 * Increments the count of a key by one.
+	 * 
+	 * @param key the 64-bit key.
+	 * @return the new estimated count of the key.
+	 */
+	int increment(long key) {
+		int estimate = estimate(key) + 1;
+		for (int row = 0; row < depth; row++) {
+			int i = index(row, key);
+			if (counters[i] < estimate) {
+				counters[i] = estimate;
+			}
+		}
+		return estimate;
+	}
+
+	/**
+	 * Estimates the count of a key.
+	 * 
+	 * @param key the 64-bit key.
+	 * @return the estimated count, never less than the actual one.
+	 */
+	int estimate(long key) {
+		int min = Integer.MAX_VALUE;
+		for (int row = 0; row < depth; row++) {
+			min = Math.min(min, counters[index(row, key)]);
+		}
+		return min;
+	}
+
+	/**
+	 * Gets the heap size of the counters held by this sketch.
+	 * 
+	 * @return the size in bytes.
+	 */
+	long getSizeInBytes() {
+		return 4L * counters.length;
+	}
+}
@@ -0,0 +1,59 @@
+package com.germer.markov.chain;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * {@link InputStream} decorator used internally in the package to count the
+ * bytes read from the wrapped stream.
+ * 
+ * @author <a href="mailto:alegermer@gmail.com">Alessandro Germer</a>
+ */
+class CountingInputStream extends FilterInputStream {
+
+	private long count = 0;
+
+	CountingInputStream(InputStream in) {
+		super(in);
+	}
+
+	@Override
+	public int read() throws IOException {
+		int b = super.read();
+		if (b >= 0) {
+			count++;
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int n = super.read(b, off, len);
+		if (n > 0) {
+			count += n;
+		}
+		return n;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = super.skip(n);
+		count += skipped;
+		return skipped;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	/**
+	 * Gets the number of bytes read so far.
+	 * 
+	 * @return the amount of bytes read.
+	 */
+	long getCount() {
+		return count;
+	}
+}
@@ -0,0 +1,242 @@
+package com.germer.markov.chain;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractMap;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Read-only Markov Chain state map backed by a memory-mapped file, used
+ * internally in the package for models that shouldn't live in the heap. The
+ * file holds the state records (see {@link StateRecordCodec}) sorted by
+ * {@link Prefix#HASH_ORDER}, and only a compact index (a prefix hash and a file
+ * offset per state) is kept in the heap. Each lookup binary searches the index
+ * and decodes the matching record, so returned {@link WeightedSuffixes} are
+ * fresh copies and must be treated as read-only.
+ * <p>
+ * Instances are created through {@link Writer} and are thread-safe. The backing
+ * file is deleted as soon as it's mapped (or on JVM exit where the platform
+ * doesn't allow deleting mapped files), and the mapping is released once the
+ * map is garbage collected.
+ * </p>
+ *
+ * @author <a href="mailto:alegermer@gmail.com">Alessandro Germer</a>
+ */
+class FileBackedStateMap extends AbstractMap<Prefix, WeightedSuffixes> {
+
+	// log2 of the size of each mapped segment (records never cross them).
+	private static final int SEGMENT_BITS = 30;
+	private static final long SEGMENT_SIZE = 1L << SEGMENT_BITS;
+
+	private final int prefixLength;
+	// prefix hash of each state, sorted.
+	private final int[] hashes;
+	// file offset of each state record, related to the hashes above.
+	private final long[] offsets;
+	// the mapped file segments.
+	private final MappedByteBuffer[] segments;
+
+	/**
+	 * Sequential writer of a {@link FileBackedStateMap}, to be fed with states
+	 * in {@link Prefix#HASH_ORDER} order.
+	 *
+	 * @author <a href="mailto:alegermer@gmail.com">Alessandro Germer</a>
+	 */
+	static class Writer implements AutoCloseable {
+		private final File file;
+		private final int prefixLength;
+		private final OutputStream out;
+		// reusable buffer to measure each record before writing it.
+		private final ByteArrayOutputStream record = new ByteArrayOutputStream();
+		private final DataOutputStream recordOut = new DataOutputStream(record);
+		private int[] hashes = new int[1024];
+		private long[] offsets = new long[1024];
+		private int size = 0;
+		private long position = 0;
+		private boolean finished = false;
+
+		/**
+		 * Creates a writer for a new temporary file in the given directory.
+		 *
+		 * @param directory the directory of the backing file (null for the
+		 *            system default temporary directory).
+		 * @param prefixLength the prefix length of the states to be written.
+		 * @throws IOException if the file can't be created.
+		 */
+		Writer(File directory, int prefixLength) throws IOException {
+			this.file = File.createTempFile("markov-model-", ".bin", directory);
+			this.prefixLength = prefixLength;
+			this.out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+		}
+
+		/**
+		 * Appends a state, which must follow the previous one in
+		 * {@link Prefix#HASH_ORDER}.
+		 *
+		 * @param prefix the state {@link Prefix}.
+		 * @param suffixes the state {@link WeightedSuffixes}.
+		 * @throws IOException if writing fails.
+		 */
+		void write(Prefix prefix, WeightedSuffixes suffixes) throws IOException {
+			record.reset();
+			StateRecordCodec.write(recordOut, prefix, suffixes);
+
+			// Pad up to the next segment so records never cross segments.
+			long segmentEnd = (position | (SEGMENT_SIZE - 1)) + 1;
+			if (position + record.size() > segmentEnd) {
+				for (; position < segmentEnd; position++) {
+					out.write(0);
+				}
+			}
+
+			if (size == hashes.length) {
+				hashes = Arrays.copyOf(hashes, size * 2);
+				offsets = Arrays.copyOf(offsets, size * 2);
+			}
+			hashes[size] = prefix.hashCode();
+			offsets[size] = position;
+			size++;
+
+			record.writeTo(out);
+			position += record.size();
+		}
+
+		/**
+		 * Finishes the file and maps it as a {@link FileBackedStateMap}.
+		 *
+		 * @return the read-only state map.
+		 * @throws IOException if the file can't be mapped.
+		 */
+		FileBackedStateMap finish() throws IOException {
+			out.close();
+			MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((position + SEGMENT_SIZE - 1) >>> SEGMENT_BITS)];
+			try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+				for (int i = 0; i < segments.length; i++) {
+					long start = (long) i << SEGMENT_BITS;
+					segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+							Math.min(SEGMENT_SIZE, position - start));
+				}
+			}
+			finished = true;
+			delete();
+			return new FileBackedStateMap(prefixLength, Arrays.copyOf(hashes, size), Arrays.copyOf(offsets, size),
+					segments);
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (!finished) {
+				out.close();
+				delete();
+			}
+		}
+
+		private void delete() {
+			if (!file.delete()) {
+				file.deleteOnExit();
+			}
+		}
+	}
+
+	private FileBackedStateMap(int prefixLength, int[] hashes, long[] offsets, MappedByteBuffer[] segments) {
+		this.prefixLength = prefixLength;
+		this.hashes = hashes;
+		this.offsets = offsets;
+		this.segments = segments;
+	}
+
+	/**
+	 * Gets an independent buffer positioned at the record of the given index.
+	 */
+	private ByteBuffer recordAt(int index) {
+		long offset = offsets[index];
+		ByteBuffer buffer = segments[(int) (offset >>> SEGMENT_BITS)].duplicate();
+		buffer.position((int) (offset & (SEGMENT_SIZE - 1)));
+		return buffer;
+	}
+
+	@Override
+	public WeightedSuffixes get(Object key) {
+		if (!(key instanceof Prefix)) {
+			return null;
+		}
+		int hash = key.hashCode();
+		int index = Arrays.binarySearch(hashes, hash);
+		if (index < 0) {
+			return null;
+		}
+
+		// Rewind to the first state with the same hash and check each one.
+		while (index > 0 && hashes[index - 1] == hash) {
+			index--;
+		}
+		for (; index < hashes.length && hashes[index] == hash; index++) {
+			ByteBuffer buffer = recordAt(index);
+			if (key.equals(StateRecordCodec.readPrefix(buffer, prefixLength))) {
+				return StateRecordCodec.readSuffixes(buffer);
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return get(key) != null;
+	}
+
+	@Override
+	public int size() {
+		return hashes.length;
+	}
+
+	@Override
+	public WeightedSuffixes put(Prefix key, WeightedSuffixes value) {
+		throw new UnsupportedOperationException("File-backed state maps are read-only.");
+	}
+
+	@Override
+	public Set<Entry<Prefix, WeightedSuffixes>> entrySet() {
+		return new AbstractSet<Entry<Prefix, WeightedSuffixes>>() {
+			@Override
+			public Iterator<Entry<Prefix, WeightedSuffixes>> iterator() {
+				return new Iterator<Entry<Prefix, WeightedSuffixes>>() {
+					private int index = 0;
+
+					@Override
+					public boolean hasNext() {
+						return index < hashes.length;
+					}
+
+					@Override
+					public Entry<Prefix, WeightedSuffixes> next() {
+						if (!hasNext()) {
+							throw new NoSuchElementException();
+						}
+						ByteBuffer buffer = recordAt(index++);
+						Prefix prefix = StateRecordCodec.readPrefix(buffer, prefixLength);
+						return new SimpleImmutableEntry<>(prefix, StateRecordCodec.readSuffixes(buffer));
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return hashes.length;
+			}
+		};
+	}
+}
@@ -0,0 +1,29 @@
+package com.germer.markov.chain;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder event emitted by each {@link MarkovChain#generate}
+ * call.
+ * 
+ * @author <a href="mailto:alegermer@gmail.com">Alessandro Germer</a>
+ */
+@Name("com.germer.markov.Generate")
+@Label("Markov Chain Generate")
+@Category("Markov Chain")
+@Description("A pseudo-random text generation walk over a Markov Chain.")
+class GenerateEvent extends Event {
+
+	@Label("Prefix Length")
+	int prefixLength;
+
+	@Label("Max Tokens")
+	int maxTokens;
+
+	@Label("Tokens Produced")
+	int tokens;
+}
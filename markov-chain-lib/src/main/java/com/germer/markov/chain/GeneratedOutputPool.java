@@ -0,0 +1,374 @@
+package com.germer.markov.chain;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pool of texts pre-generated from a {@link MarkovChain} by low priority
+ * background threads, so interactive callers get an output in constant time
+ * instead of paying a long generation on their request path. Once
+ * {@link #start()} is called, {@link #take()} removes a pooled output, or
+ * generates one inline when the pool is empty (a miss, see
+ * {@link #getHitRate()}). Outputs are generated with the same parameters,
+ * configured before starting the pool, and each one is handed out only once.
+ * <p>
+ * The pool doesn't keep itself full at all times, which would waste CPU on
+ * models nobody asks for: the refill threads measure the demand (takes per
+ * second, smoothed over the last samples) and keep enough outputs for
+ * {@value #REFILL_HORIZON_MILLIS} ms of it, up to the capacity. A new pool
+ * fills to its capacity, outputs already pooled are never discarded, and an
+ * idle pool only refills when taken from.
+ * </p>
+ * <p>
+ * Taking is lock-free: a refill thread reserves a slot before generating
+ * into it, so the threads never overshoot the target between them, and takes
+ * only wake them up when the pool drops below its target.
+ * </p>
+ *
+ * @author <a href="mailto:alegermer@gmail.com">Alessandro Germer</a>
+ */
+public class GeneratedOutputPool implements AutoCloseable {
+
+	/**
+	 * Default maximum number of pooled outputs if no other specified through
+	 * {@link #setCapacity}.
+	 */
+	public static final int DEFAULT_CAPACITY = 32;
+	/**
+	 * Time span (in ms) of measured demand the pool keeps outputs for.
+	 */
+	public static final long REFILL_HORIZON_MILLIS = 1000;
+
+	// interval (ms) between demand samples, and weight of the last sample.
+	private static final long DEMAND_SAMPLE_MILLIS = 100;
+	private static final double DEMAND_SMOOTHING = 0.2;
+
+	private final MarkovChain chain;
+	private final int maxTokens;
+	private int minTokens;
+	private SamplingOptions samplingOptions;
+	private int capacity;
+	private int threads;
+
+	// created by start(), null before.
+	private volatile Queue<String> outputs;
+	private volatile Thread[] refillThreads = new Thread[0];
+	// outputs pooled plus the ones being generated by refill threads.
+	private final AtomicInteger reserved = new AtomicInteger();
+	private volatile boolean closed;
+	private volatile RuntimeException lastFailure;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	// outputs the refill threads keep pooled, following the demand.
+	private volatile int targetSize;
+	// demand measurement (guarded by demandLock).
+	private final Object demandLock = new Object();
+	private double demandRate;
+	private long sampledTakes;
+	private long sampledAt;
+
+	/**
+	 * Constructs a pool of outputs from the given chain. No output is
+	 * generated before {@link #start()} is called.
+	 *
+	 * @param chain the {@link MarkovChain} generating the outputs.
+	 * @param maxTokens the token limit of each output, see
+	 *            {@link MarkovChain#generate(int)}.
+	 *
+	 * @throws NullPointerException if the given chain is null.
+	 * @throws IllegalArgumentException if maxTokens is negative.
+	 */
+	public GeneratedOutputPool(MarkovChain chain, int maxTokens) {
+		if (chain == null) {
+			throw new NullPointerException("The specified MarkovChain must be not null.");
+		}
+		if (maxTokens < 0) {
+			throw new IllegalArgumentException("The specified maxTokens must not be negative.");
+		}
+		this.chain = chain;
+		this.maxTokens = maxTokens;
+		this.minTokens = 0;
+		this.samplingOptions = null;
+		this.capacity = DEFAULT_CAPACITY;
+		this.threads = 1;
+	}
+
+	/**
+	 * Sets the minimum token length of the outputs whenever the chain allows
+	 * it, see {@link MarkovChain#generate(int, int)}. Bounded generation
+	 * samples suffixes by their source counts, so any sampling options are
+	 * ignored when a minimum is set. The default value 0 means no minimum.
+	 *
+	 * @param tokens the minimum token length, or 0 for none.
+	 * @return this {@link GeneratedOutputPool} for method call chaining.
+	 *
+	 * @throws IllegalArgumentException if the given length is negative or
+	 *             greater than the maxTokens of the pool.
+	 * @throws IllegalStateException if the pool was already started.
+	 */
+	public synchronized GeneratedOutputPool setMinTokens(int tokens) {
+		if (tokens < 0 || tokens > maxTokens) {
+			throw new IllegalArgumentException("The specified minTokens must be from 0 up to maxTokens.");
+		}
+		checkNotStarted();
+		this.minTokens = tokens;
+
+		return this;
+	}
+
+	/**
+	 * Sets the {@link SamplingOptions} of the outputs, see
+	 * {@link MarkovChain#generate(int, SamplingOptions)}. By default suffixes
+	 * are sampled by their source counts.
+	 *
+	 * @param options the sampling options, or null for the default sampling.
+	 * @return this {@link GeneratedOutputPool} for method call chaining.
+	 *
+	 * @throws IllegalStateException if the pool was already started.
+	 */
+	public synchronized GeneratedOutputPool setSamplingOptions(SamplingOptions options) {
+		checkNotStarted();
+		this.samplingOptions = options;
+
+		return this;
+	}
+
+	/**
+	 * Sets the maximum number of pooled outputs, default value is
+	 * {@value #DEFAULT_CAPACITY}.
+	 *
+	 * @param capacity the pool capacity.
+	 * @return this {@link GeneratedOutputPool} for method call chaining.
+	 *
+	 * @throws IllegalArgumentException if the capacity isn't greater than 0.
+	 * @throws IllegalStateException if the pool was already started.
+	 */
+	public synchronized GeneratedOutputPool setCapacity(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Pool capacity must be greater than 0.");
+		}
+		checkNotStarted();
+		this.capacity = capacity;
+
+		return this;
+	}
+
+	/**
+	 * Sets the number of background threads refilling the pool, default value
+	 * is 1.
+	 *
+	 * @param threads the number of refill threads.
+	 * @return this {@link GeneratedOutputPool} for method call chaining.
+	 *
+	 * @throws IllegalArgumentException if the number isn't greater than 0.
+	 * @throws IllegalStateException if the pool was already started.
+	 */
+	public synchronized GeneratedOutputPool setThreads(int threads) {
+		if (threads <= 0) {
+			throw new IllegalArgumentException("Refill threads must be greater than 0.");
+		}
+		checkNotStarted();
+		this.threads = threads;
+
+		return this;
+	}
+
+	/**
+	 * Starts filling the pool in background (daemon) threads of minimum
+	 * priority.
+	 *
+	 * @return this {@link GeneratedOutputPool} for method call chaining.
+	 *
+	 * @throws IllegalStateException if already started.
+	 */
+	public synchronized GeneratedOutputPool start() {
+		checkNotStarted();
+		synchronized (demandLock) {
+			// As if the whole capacity was taken in the last horizon.
+			demandRate = capacity * 1000.0 / REFILL_HORIZON_MILLIS;
+			sampledTakes = hits.sum() + misses.sum();
+			sampledAt = System.nanoTime();
+		}
+		targetSize = capacity;
+		outputs = new ConcurrentLinkedQueue<>();
+		Thread[] started = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			started[i] = new Thread(this::refill, "markov-output-pool-" + i);
+			started[i].setDaemon(true);
+			started[i].setPriority(Thread.MIN_PRIORITY);
+		}
+		refillThreads = started;
+		for (Thread thread : started) {
+			thread.start();
+		}
+
+		return this;
+	}
+
+	/**
+	 * Takes a pooled output, or generates one in the calling thread if the
+	 * pool is empty or wasn't started.
+	 *
+	 * @return the pseudo-random generated text.
+	 */
+	public String take() {
+		Queue<String> pooled = outputs;
+		String output = pooled != null ? pooled.poll() : null;
+		if (output == null) {
+			misses.increment();
+			return generate();
+		}
+		hits.increment();
+		// Wakes the refill threads up only when dropping below the target.
+		if (reserved.decrementAndGet() == targetSize - 1) {
+			wakeRefillThreads();
+		}
+		return output;
+	}
+
+	/**
+	 * Gets the fraction of {@link #take()} calls served from the pool.
+	 *
+	 * @return the hit rate, from 0 to 1 (0 if never taken from).
+	 */
+	public double getHitRate() {
+		long h = hits.sum();
+		long total = h + misses.sum();
+		return total > 0 ? (double) h / total : 0;
+	}
+
+	/**
+	 * Gets the number of {@link #take()} calls served from the pool.
+	 *
+	 * @return the hits count.
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * Gets the number of {@link #take()} calls generating inline.
+	 *
+	 * @return the misses count.
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Gets the number of outputs currently pooled.
+	 *
+	 * @return the pool size.
+	 */
+	public int size() {
+		Queue<String> pooled = outputs;
+		return pooled != null ? pooled.size() : 0;
+	}
+
+	/**
+	 * Gets the number of outputs the pool is currently refilled up to, after
+	 * the measured demand.
+	 *
+	 * @return the target size, from 1 up to the capacity.
+	 */
+	public int getTargetSize() {
+		return targetSize;
+	}
+
+	/**
+	 * Gets the last failure of the background generation, which stops
+	 * refilling the pool (while {@link #take()} keeps generating inline).
+	 *
+	 * @return the last failure, null if none.
+	 */
+	public RuntimeException getLastFailure() {
+		return lastFailure;
+	}
+
+	/**
+	 * Stops the refill threads, waiting for the outputs being generated.
+	 * Pooled outputs are still taken afterwards, then {@link #take()}
+	 * generates inline.
+	 */
+	@Override
+	public void close() {
+		Thread[] stopping;
+		synchronized (this) {
+			closed = true;
+			stopping = refillThreads;
+		}
+		wakeRefillThreads();
+		for (Thread thread : stopping) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	private void checkNotStarted() {
+		if (outputs != null) {
+			throw new IllegalStateException("The pool was already started.");
+		}
+	}
+
+	private String generate() {
+		if (minTokens > 0) {
+			return chain.generate(minTokens, maxTokens);
+		}
+		return samplingOptions != null ? chain.generate(maxTokens, samplingOptions) : chain.generate(maxTokens);
+	}
+
+	private void wakeRefillThreads() {
+		for (Thread thread : refillThreads) {
+			LockSupport.unpark(thread);
+		}
+	}
+
+	private void refill() {
+		while (!closed) {
+			sampleDemand();
+			int slots = reserved.get();
+			if (slots >= targetSize) {
+				// Also wakes up at every demand sample, in case the target grew.
+				LockSupport.parkNanos(this, DEMAND_SAMPLE_MILLIS * 1_000_000);
+			} else if (reserved.compareAndSet(slots, slots + 1)) {
+				try {
+					outputs.offer(generate());
+				} catch (RuntimeException e) {
+					reserved.decrementAndGet();
+					lastFailure = e;
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Updates the smoothed demand and the target size, at most once per
+	 * sample interval.
+	 */
+	private void sampleDemand() {
+		synchronized (demandLock) {
+			long now = System.nanoTime();
+			long elapsed = now - sampledAt;
+			if (elapsed < DEMAND_SAMPLE_MILLIS * 1_000_000) {
+				return;
+			}
+			long takes = hits.sum() + misses.sum();
+			double rate = (takes - sampledTakes) * 1e9 / elapsed;
+			demandRate += DEMAND_SMOOTHING * (rate - demandRate);
+			sampledTakes = takes;
+			sampledAt = now;
+
+			double demand = Math.ceil(demandRate * REFILL_HORIZON_MILLIS / 1000.0);
+			targetSize = (int) Math.max(1, Math.min(capacity, demand));
+		}
+	}
+}
@@ -1,8 +1,19 @@
 package com.germer.markov.chain;
 
+import java.io.Reader;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.Collectors;
 
 /**
@@ -21,6 +32,27 @@ public class MarkovChain {
 	private int prefixLength;
 	// The expected token-separator when generating pseudo-random text.
 	private String separator;
+	// The token-parsing strategy used during the stateMap built.
+	private TokenStrategy tokenStrategy;
+	// Distinct suffixes of the stateMap (0 until first scoring).
+	private volatile int vocabularySize;
+	// The source n-gram index used to avoid verbatim copies (null if disabled).
+	private OriginalityIndex originalityIndex;
+	// The compiled form of the stateMap (null until compiled).
+	private volatile TransitionGraph graph;
+
+	/**
+	 * Maximum amount of times a suffix is resampled when the originally
+	 * sampled one would reproduce the source text verbatim, before the walk is
+	 * considered ended.
+	 */
+	private static final int MAX_ORIGINALITY_RESAMPLES = 3;
+
+	/**
+	 * Base misfit of walks ending before the minimum length, above any misfit
+	 * of walks going beyond the maximum length.
+	 */
+	private static final long SHORT_WALK_MISFIT = 1L << 32;
 
 	/**
 	 * Inner State model class that represents a typical Markov Chain state
@@ -96,14 +128,269 @@ public class MarkovChain {
 	 * @param stateMap the Map representation of the Markov Chain FSM.
 	 */
 	MarkovChain(int prefixLength, String separator, Map<Prefix, WeightedSuffixes> stateMap) {
+		this(prefixLength, separator, stateMap, null);
+	}
+
+	/**
+	 * Package-private constructor, instances should be created through
+	 * {@link MarkovChainBuilder}.
+	 * 
+	 * @param prefixLength the prefix length used during the FSM build.
+	 * @param separator the expected token-separator when generating
+	 *            pseudo-random text.
+	 * @param stateMap the Map representation of the Markov Chain FSM.
+	 * @param originalityIndex the source n-gram index used to end or resample
+	 *            walks reproducing the source text verbatim (null if
+	 *            disabled).
+	 */
+	MarkovChain(int prefixLength, String separator, Map<Prefix, WeightedSuffixes> stateMap,
+			OriginalityIndex originalityIndex) {
+		this(prefixLength, strategyOf(separator), stateMap, originalityIndex);
+	}
+
+	/**
+	 * Package-private constructor, instances should be created through
+	 * {@link MarkovChainBuilder}.
+	 * 
+	 * @param prefixLength the prefix length used during the FSM build.
+	 * @param tokenStrategy the {@link TokenStrategy} used during the FSM
+	 *            build.
+	 * @param stateMap the Map representation of the Markov Chain FSM.
+	 * @param originalityIndex the source n-gram index used to end or resample
+	 *            walks reproducing the source text verbatim (null if
+	 *            disabled).
+	 */
+	MarkovChain(int prefixLength, TokenStrategy tokenStrategy, Map<Prefix, WeightedSuffixes> stateMap,
+			OriginalityIndex originalityIndex) {
 		this.prefixLength = prefixLength;
-		this.separator = separator;
+		this.tokenStrategy = tokenStrategy;
+		this.separator = tokenStrategy.getSeparator();
 		this.stateMap = stateMap;
+		this.originalityIndex = originalityIndex;
+	}
+
+	private static TokenStrategy strategyOf(String separator) {
+		for (TokenStrategy strategy : TokenStrategy.values()) {
+			if (Objects.equals(strategy.getSeparator(), separator)) {
+				return strategy;
+			}
+		}
+		return MarkovChainBuilder.DEFAULT_TOKEN_STRATEGY;
+	}
+
+	/**
+	 * Compiles this chain into an immutable transition graph where each
+	 * suffix points directly to its successor state, laid out in flat arrays
+	 * with the most likely states and suffixes first. Once compiled,
+	 * {@link #generate} walks the graph with no hashing and no allocation per
+	 * token, which pays off when the same chain generates text many times.
+	 * <p>
+	 * Compiling takes time and memory proportional to the model size (even for
+	 * file-backed models, see {@link MarkovChainBuilder#setFileBackedModel}),
+	 * and is done only once, later calls are no-ops.
+	 * </p>
+	 * 
+	 * @return this {@link MarkovChain} instance.
+	 */
+	public MarkovChain compile() {
+		graph();
+		return this;
+	}
+
+	/**
+	 * Compacts this chain by sharing one immutable suffix distribution among
+	 * all states with identical suffixes and weights (for example every state
+	 * only ever followed by "the" once). Natural language chains have many
+	 * such states, mostly with a single suffix, so a large share of the suffix
+	 * structures can be released. Generation behaves exactly as before.
+	 * <p>
+	 * Compacting takes time proportional to the model size and is meant to be
+	 * called once, before the chain is shared among threads. Later calls only
+	 * report the current sharing. File-backed models (see
+	 * {@link MarkovChainBuilder#setFileBackedModel}) have no suffix structures
+	 * in the heap and are left untouched.
+	 * </p>
+	 * 
+	 * @return the {@link CompactionReport} with the memory saved.
+	 */
+	public synchronized CompactionReport compact() {
+		if (stateMap instanceof FileBackedStateMap) {
+			return new CompactionReport(stateMap.size(), stateMap.size(), 0, 0);
+		}
+
+		// Canonical instance of each distribution, keyed by its ordered entries.
+		Map<List<Entry<String, Integer>>, WeightedSuffixes> canonical = new HashMap<>();
+		Set<WeightedSuffixes> before = Collections.newSetFromMap(new IdentityHashMap<>());
+		long bytesBefore = 0;
+		long bytesAfter = 0;
+
+		for (Entry<Prefix, WeightedSuffixes> state : stateMap.entrySet()) {
+			WeightedSuffixes suffixes = state.getValue();
+			if (before.add(suffixes)) {
+				bytesBefore += MemoryFootprint.ofSuffixes(suffixes);
+			}
+			WeightedSuffixes shared = canonical.get(new ArrayList<>(suffixes.getSuffixMap().entrySet()));
+			if (shared == null) {
+				shared = suffixes.isFrozen() ? suffixes : suffixes.frozenCopy();
+				canonical.put(new ArrayList<>(shared.getSuffixMap().entrySet()), shared);
+				bytesAfter += MemoryFootprint.ofSuffixes(shared);
+			}
+			state.setValue(shared);
+		}
+
+		return new CompactionReport(stateMap.size(), canonical.size(), bytesBefore, bytesAfter);
+	}
+
+	/**
+	 * Analyzes the structure of this chain, see {@link #analyze(ForkJoinPool)},
+	 * running on the common {@link ForkJoinPool}.
+	 * 
+	 * @return the {@link ChainAnalysis} of this chain.
+	 */
+	public ChainAnalysis analyze() {
+		return analyze(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Analyzes the structure of this chain: per-state and global entropy,
+	 * fanout (branching factor) histogram, terminal reachability and an
+	 * approximate stationary distribution of states. The chain is compiled
+	 * first (see {@link #compile()}) and the analysis runs in parallel on the
+	 * given pool.
+	 * 
+	 * @param pool the {@link ForkJoinPool} running the analysis.
+	 * @return the {@link ChainAnalysis} of this chain.
+	 * @throws NullPointerException if the given pool is null.
+	 */
+	public ChainAnalysis analyze(ForkJoinPool pool) {
+		if (pool == null) {
+			throw new NullPointerException("The specified ForkJoinPool must be not null.");
+		}
+		return new ChainAnalyzer(graph(), pool).analyze();
+	}
+
+	/**
+	 * Creates a {@link TextScorer} of texts against this chain, which can be
+	 * configured (e.g. its smoothing) and shared among threads.
+	 * 
+	 * @return the new {@link TextScorer}.
+	 */
+	public TextScorer scorer() {
+		return new TextScorer(this);
+	}
+
+	/**
+	 * Scores how plausible a text is according to this chain, see
+	 * {@link TextScorer} (with its default smoothing).
+	 * 
+	 * @param text the text to be scored.
+	 * @return the {@link TextScore} of the text.
+	 * @throws NullPointerException if the given text is null.
+	 */
+	public TextScore score(CharSequence text) {
+		return scorer().score(text);
+	}
+
+	/**
+	 * Scores how plausible a text read as a stream is according to this
+	 * chain, see {@link TextScorer} (with its default smoothing). The reader
+	 * isn't closed.
+	 * 
+	 * @param reader the {@link Reader} of the text to be scored.
+	 * @return the {@link TextScore} of the text.
+	 * @throws NullPointerException if the given reader is null.
+	 * @throws java.io.UncheckedIOException if the reader fails.
+	 */
+	public TextScore score(Reader reader) {
+		return scorer().score(reader);
+	}
+
+	/**
+	 * Gets the compiled form of this chain, compiling it on first use.
+	 * 
+	 * @return the {@link TransitionGraph} of this chain.
+	 */
+	TransitionGraph graph() {
+		TransitionGraph g = graph;
+		if (g == null) {
+			synchronized (this) {
+				g = graph;
+				if (g == null) {
+					graph = g = new TransitionGraph(prefixLength, stateMap);
+				}
+			}
+		}
+		return g;
+	}
+
+	/**
+	 * Gets the prefix length used during the build of this chain, shorter than
+	 * the one requested to the builder if downgraded (see
+	 * {@link MarkovChainBuilder#setPrefixDowngrade}).
+	 *
+	 * @return the prefix length.
+	 */
+	public int getPrefixLength() {
+		return prefixLength;
+	}
+
+	/**
+	 * Gets the token-separator used when generating text.
+	 *
+	 * @return the separator (null for none).
+	 */
+	String getSeparator() {
+		return separator;
+	}
+
+	/**
+	 * Gets the token-parsing strategy used during the build of this chain.
+	 *
+	 * @return the {@link TokenStrategy}.
+	 */
+	TokenStrategy getTokenStrategy() {
+		return tokenStrategy;
+	}
+
+	/**
+	 * Gets the number of distinct suffixes of this chain (the final state
+	 * inclusive), counted on first use.
+	 *
+	 * @return the vocabulary size.
+	 */
+	int getVocabularySize() {
+		int size = vocabularySize;
+		if (size == 0) {
+			Set<String> vocabulary = new HashSet<>();
+			for (WeightedSuffixes suffixes : stateMap.values()) {
+				vocabulary.addAll(suffixes.getSuffixMap().keySet());
+			}
+			vocabularySize = size = vocabulary.size();
+		}
+		return size;
+	}
+
+	/**
+	 * Gets the suffixes of a state of this chain.
+	 *
+	 * @param prefix the {@link Prefix} of the state.
+	 * @return the {@link WeightedSuffixes} of the state, null if the chain has
+	 *         no such state.
+	 */
+	WeightedSuffixes getSuffixes(Prefix prefix) {
+		return stateMap.get(prefix);
 	}
 
 	/**
 	 * Generates pseudo-random text from the Markov Chain FSM represented by
 	 * this current instance.
+	 * <p>
+	 * If the chain was built with an originality window (see
+	 * {@link MarkovChainBuilder#setOriginalityWindow}), any suffix that would
+	 * make the last generated tokens reproduce the source text verbatim is
+	 * resampled a few times, and the walk ends when no original suffix is
+	 * found.
+	 * </p>
 	 * 
 	 * @param maxTokens the token size limit for the result generated text (in
 	 *            case of FSM final state isn't achieved before this limit).
@@ -111,7 +398,213 @@ public class MarkovChain {
 	 */
 	public String generate(int maxTokens) {
 		StringBuilder sbResult = new StringBuilder();
-		
+		generate(maxTokens, sbResult);
+
+		return sbResult.toString();
+	}
+
+	/**
+	 * Generates pseudo-random text as {@link #generate(int)} does, appending
+	 * it to the given builder instead of returning a new string. Callers
+	 * generating many texts can reuse a builder, so generation allocates
+	 * nothing per token once the builder has grown.
+	 * 
+	 * @param maxTokens the token size limit for the result generated text (in
+	 *            case of FSM final state isn't achieved before this limit).
+	 * @param output the {@link StringBuilder} the generated text is appended
+	 *            to.
+	 * @return the amount of tokens generated.
+	 * @throws NullPointerException if the given builder is null.
+	 */
+	public int generate(int maxTokens, StringBuilder output) {
+		if (output == null) {
+			throw new NullPointerException("The specified StringBuilder must be not null.");
+		}
+		GenerateEvent event = new GenerateEvent();
+		event.begin();
+
+		// Rolling window over the last generated tokens (if filtering copies).
+		OriginalityIndex.Window window = originalityIndex != null ? originalityIndex.newWindow() : null;
+
+		TransitionGraph g = graph;
+		int generatedLen = g != null ? walk(g, output, maxTokens, window, null) : walk(output, maxTokens, window);
+
+		event.prefixLength = prefixLength;
+		event.maxTokens = maxTokens;
+		event.tokens = generatedLen;
+		event.commit();
+
+		return generatedLen;
+	}
+
+	/**
+	 * Generates pseudo-random text from the Markov Chain FSM represented by
+	 * this current instance, sampling suffixes as set by the given
+	 * {@link SamplingOptions} (e.g. a temperature or top-k/top-p truncation)
+	 * instead of in proportion to the source counts. The chain is compiled
+	 * first (see {@link #compile()}) and sampling is a binary search over
+	 * sorted cumulative weights computed once, with no state map scans. The
+	 * originality window behaves as in {@link #generate(int)}.
+	 * 
+	 * @param maxTokens the token size limit for the result generated text (in
+	 *            case of FSM final state isn't achieved before this limit).
+	 * @param options the {@link SamplingOptions} of the suffixes.
+	 * @return The pseudo-random generated text.
+	 * @throws NullPointerException if the given options are null.
+	 */
+	public String generate(int maxTokens, SamplingOptions options) {
+		if (options == null) {
+			throw new NullPointerException("The specified SamplingOptions must be not null.");
+		}
+		GenerateEvent event = new GenerateEvent();
+		event.begin();
+
+		StringBuilder sbResult = new StringBuilder();
+		OriginalityIndex.Window window = originalityIndex != null ? originalityIndex.newWindow() : null;
+		int generatedLen = walk(graph(), sbResult, maxTokens, window, options.isDefault() ? null : options);
+
+		event.prefixLength = prefixLength;
+		event.maxTokens = maxTokens;
+		event.tokens = generatedLen;
+		event.commit();
+
+		return sbResult.toString();
+	}
+
+	/**
+	 * Generates pseudo-random text from the Markov Chain FSM represented by
+	 * this current instance with a length between the given bounds whenever
+	 * the chain allows it, in a single walk with no retries. The chain is
+	 * compiled first (see {@link #compile()}) along with the shortest and
+	 * longest walk from each state to the final state.
+	 * <p>
+	 * Each suffix is sampled by weight among those still able to end the walk
+	 * within the bounds: before {@code minTokens} suffixes leading to the
+	 * final state too early are avoided and, closer to {@code maxTokens},
+	 * suffixes too far from it. When no suffix fits, the walk is steered to
+	 * the closest fit, preferring to be cut at {@code maxTokens} over ending
+	 * before {@code minTokens} (which only happens if the chain can't go
+	 * further). The originality window behaves as in {@link #generate(int)},
+	 * except suffixes reproducing the source are left out instead of
+	 * resampled.
+	 * </p>
+	 * 
+	 * @param minTokens the minimum token size of the result generated text.
+	 * @param maxTokens the token size limit for the result generated text.
+	 * @return The pseudo-random generated text.
+	 * @throws IllegalArgumentException if minTokens is negative or greater
+	 *             than maxTokens.
+	 */
+	public String generate(int minTokens, int maxTokens) {
+		if (minTokens < 0 || minTokens > maxTokens) {
+			throw new IllegalArgumentException("The specified minTokens must be from 0 up to maxTokens.");
+		}
+		GenerateEvent event = new GenerateEvent();
+		event.begin();
+
+		TransitionGraph g = graph();
+		int[] shortest = g.getDistancesToEnd();
+		int[] longest = g.getLongestWalks();
+		StringBuilder sbResult = new StringBuilder();
+		OriginalityIndex.Window window = originalityIndex != null ? originalityIndex.newWindow() : null;
+		int state = g.getStartState();
+
+		int generatedLen = 0;
+		for (; generatedLen < maxTokens && state != TransitionGraph.NO_STATE; generatedLen++) {
+			int edge = nextBoundedEdge(g, shortest, longest, state, generatedLen, minTokens, maxTokens, window);
+
+			// Final state (or no original suffix) reached.
+			if (edge < 0 || g.getToken(edge) == null) {
+				break;
+			}
+			if (separator != null && generatedLen != 0) {
+				sbResult.append(separator);
+			}
+			sbResult.append(g.getToken(edge));
+			if (window != null) {
+				window.push(g.getTokenHash(edge));
+			}
+			state = g.getTarget(edge);
+		}
+
+		event.prefixLength = prefixLength;
+		event.maxTokens = maxTokens;
+		event.tokens = generatedLen;
+		event.commit();
+
+		return sbResult.toString();
+	}
+
+	/**
+	 * Samples by weight the next edge among those best fitting the length
+	 * bounds (see {@link #misfit}), returns -1 to end the walk.
+	 */
+	private int nextBoundedEdge(TransitionGraph g, int[] shortest, int[] longest, int state, int generated,
+			int minTokens, int maxTokens, OriginalityIndex.Window window) {
+		long bestMisfit = Long.MAX_VALUE;
+		long bestWeight = 0;
+		for (int edge = g.getEdgesStart(state); edge < g.getEdgesEnd(state); edge++) {
+			if (window != null && g.getToken(edge) != null && window.reproducesSource(g.getTokenHash(edge))) {
+				continue;
+			}
+			long misfit = misfit(g, shortest, longest, edge, generated, minTokens, maxTokens);
+			if (misfit < bestMisfit) {
+				bestMisfit = misfit;
+				bestWeight = 0;
+			}
+			if (misfit == bestMisfit) {
+				bestWeight += weightOf(g, state, edge);
+			}
+		}
+		if (bestWeight == 0) {
+			return -1;
+		}
+
+		long randomWeight = ThreadLocalRandom.current().nextLong(bestWeight);
+		for (int edge = g.getEdgesStart(state); edge < g.getEdgesEnd(state); edge++) {
+			if (window != null && g.getToken(edge) != null && window.reproducesSource(g.getTokenHash(edge))) {
+				continue;
+			}
+			if (misfit(g, shortest, longest, edge, generated, minTokens, maxTokens) == bestMisfit) {
+				randomWeight -= weightOf(g, state, edge);
+				if (randomWeight < 0) {
+					return edge;
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Measures how far the possible lengths of a walk taking an edge are from
+	 * the bounds: 0 if they overlap, the tokens beyond maxTokens of its
+	 * shortest end if too long, and far worse, the tokens missing to minTokens
+	 * of its longest end if too short.
+	 */
+	private static long misfit(TransitionGraph g, int[] shortest, int[] longest, int edge, int generated,
+			int minTokens, int maxTokens) {
+		long shortestEnd = generated;
+		long longestEnd = generated;
+		if (g.getToken(edge) != null) {
+			int target = g.getTarget(edge);
+			shortestEnd += 1L + (target == TransitionGraph.NO_STATE ? 0 : shortest[target]);
+			longestEnd += 1L + (target == TransitionGraph.NO_STATE ? 0 : longest[target]);
+		}
+		if (longestEnd < minTokens) {
+			return SHORT_WALK_MISFIT + (minTokens - longestEnd);
+		}
+		return shortestEnd > maxTokens ? shortestEnd - maxTokens : 0;
+	}
+
+	private static int weightOf(TransitionGraph g, int state, int edge) {
+		return g.getCumulativeWeight(edge) - (edge == g.getEdgesStart(state) ? 0 : g.getCumulativeWeight(edge - 1));
+	}
+
+	/**
+	 * Generation walk over the state map, returns the amount of tokens
+	 * appended to the given builder.
+	 */
+	private int walk(StringBuilder sbResult, int maxTokens, OriginalityIndex.Window window) {
 		// Start from a empty prefix of given length.
 		Prefix curPrefix = new Prefix(prefixLength);
 
@@ -121,7 +614,7 @@ public class MarkovChain {
 			WeightedSuffixes suffixes = stateMap.get(curPrefix);
 			if (suffixes != null) {
 				// Get random suffix considering statistical weights.
-				String suffix = suffixes.getRandom();
+				String suffix = nextSuffix(suffixes, window);
 				
 				// null suffix represents the final state.
 				if (suffix != null) {
@@ -130,13 +623,92 @@ public class MarkovChain {
 					}
 					sbResult.append(suffix);
 					curPrefix.shiftLeft(suffix);
+					if (window != null) {
+						window.push(suffix);
+					}
 					continue;
 				}
 			}
 			break;
 		}
+		return generatedLen;
+	}
 
-		return sbResult.toString();
+	/**
+	 * Generation walk over the compiled graph, returns the amount of tokens
+	 * appended to the given builder.
+	 */
+	private int walk(TransitionGraph g, StringBuilder sbResult, int maxTokens, OriginalityIndex.Window window,
+			SamplingOptions options) {
+		int state = g.getStartState();
+
+		int generatedLen = 0;
+		for (; generatedLen < maxTokens && state != TransitionGraph.NO_STATE; generatedLen++) {
+			int edge = nextEdge(g, state, window, options);
+
+			// Final state (or no original suffix) reached.
+			if (edge < 0 || g.getToken(edge) == null) {
+				break;
+			}
+			if (separator != null && generatedLen != 0) {
+				sbResult.append(separator);
+			}
+			sbResult.append(g.getToken(edge));
+			if (window != null) {
+				window.push(g.getTokenHash(edge));
+			}
+			state = g.getTarget(edge);
+		}
+		return generatedLen;
+	}
+
+	/**
+	 * Samples the next edge from a state of the compiled graph with the same
+	 * resampling rules of {@link #nextSuffix}, returns -1 to end the walk.
+	 * Edges are sampled by weight, or as set by the given options (if not
+	 * null).
+	 */
+	private int nextEdge(TransitionGraph g, int state, OriginalityIndex.Window window, SamplingOptions options) {
+		if (g.getTotalWeight(state) == 0) {
+			return -1;
+		}
+		int edge = sampleEdge(g, state, options);
+		if (window == null) {
+			return edge;
+		}
+
+		for (int attempt = 0; g.getToken(edge) != null && window.reproducesSource(g.getTokenHash(edge)); attempt++) {
+			if (attempt == MAX_ORIGINALITY_RESAMPLES) {
+				return -1;
+			}
+			edge = sampleEdge(g, state, options);
+		}
+		return edge;
+	}
+
+	private static int sampleEdge(TransitionGraph g, int state, SamplingOptions options) {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		return options == null ? g.sample(state, random.nextInt(g.getTotalWeight(state)))
+				: g.sample(state, options, random.nextDouble());
+	}
+
+	private String nextSuffix(WeightedSuffixes suffixes, OriginalityIndex.Window window) {
+		String suffix = suffixes.getRandom();
+		if (window == null) {
+			return suffix;
+		}
+
+		/*
+		 * Resample while the suffix would reproduce a source n-gram, giving up
+		 * (as if the final state was reached) after a few attempts.
+		 */
+		for (int attempt = 0; suffix != null && window.reproducesSource(suffix); attempt++) {
+			if (attempt == MAX_ORIGINALITY_RESAMPLES) {
+				return null;
+			}
+			suffix = suffixes.getRandom();
+		}
+		return suffix;
 	}
 
 	/**
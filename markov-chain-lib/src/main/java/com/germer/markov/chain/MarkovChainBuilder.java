@@ -1,11 +1,14 @@
 package com.germer.markov.chain;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.nio.charset.Charset;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Scanner;
 
 /**
  * Builder for {@link MarkovChain} instances, offering parameterization of the
@@ -14,6 +17,11 @@ import java.util.Scanner;
  * <li>Prefix length (number of tokens).</li>
  * <li>Source stream encoding Charset.</li>
  * <li>Token parsing strategy</li>
+ * <li>Originality window (number of tokens)</li>
+ * <li>Memory budget (spilling to disk) and file-backed model</li>
+ * <li>Approximate model memory target</li>
+ * <li>Model size limit and prefix length downgrade</li>
+ * <li>Pipelined build</li>
  * </ul>
  * <p>
  * If no different parameters are given the builder will use default ones.
@@ -39,10 +47,23 @@ public class MarkovChainBuilder {
 	 * {@link #setTokenStrategy(TokenStrategy)}.
 	 */
 	public static final Charset DEFAULT_CHARSET = Charset.defaultCharset();
+	/**
+	 * Maximum number of distinct suffixes ({@value}) kept per state of an
+	 * approximate model (see {@link #setApproximateMemoryTarget}).
+	 */
+	public static final int APPROXIMATE_SUFFIXES_PER_STATE = 8;
 
 	private int prefixLength;
 	private TokenStrategy tokenStrategy;
 	private Charset sourceCharset;
+	private int originalityWindow;
+	private long memoryBudget;
+	private File spillDirectory;
+	private boolean fileBackedModel;
+	private long approximateMemoryTarget;
+	private boolean pipelined;
+	private long modelSizeLimit;
+	private boolean prefixDowngrade;
 
 	/**
 	 * Default {@link MarkovChainBuilder} constructor initializing defaults (
@@ -54,6 +75,14 @@ public class MarkovChainBuilder {
 		prefixLength = DEFAULT_PREFIX_LENGTH;
 		tokenStrategy = DEFAULT_TOKEN_STRATEGY;
 		sourceCharset = DEFAULT_CHARSET;
+		originalityWindow = 0;
+		memoryBudget = 0;
+		spillDirectory = null;
+		fileBackedModel = false;
+		approximateMemoryTarget = 0;
+		pipelined = false;
+		modelSizeLimit = 0;
+		prefixDowngrade = false;
 	}
 
 	/**
@@ -115,6 +144,248 @@ public class MarkovChainBuilder {
 		return this;
 	}
 
+	/**
+	 * Sets the originality window length (number of tokens) to be enforced by
+	 * {@link MarkovChain#generate}. When greater than 0, rolling hashes of all
+	 * source n-grams of this length are indexed during the build, and
+	 * generation resamples or ends a walk as soon as its last tokens would
+	 * reproduce the source text verbatim. The default value 0 disables the
+	 * originality filter.
+	 * <p>
+	 * To be meaningful the window must be greater than the prefix length plus
+	 * one, since every prefix followed by one of its suffixes is an n-gram of
+	 * the source text by definition.
+	 * </p>
+	 * 
+	 * @param tokens the originality window length, or 0 to disable it.
+	 * @return this {@link MarkovChainBuilder} for method call chaining.
+	 * 
+	 * @throws IllegalArgumentException if the given length is negative.
+	 */
+	public MarkovChainBuilder setOriginalityWindow(int tokens) {
+		if (tokens < 0) {
+			throw new IllegalArgumentException("Originality window must not be negative.");
+		}
+		this.originalityWindow = tokens;
+
+		return this;
+	}
+
+	/**
+	 * Sets a memory budget (in bytes) for the in-memory state table during the
+	 * build. Whenever the estimated heap size of the table passes the budget,
+	 * its states are flushed as a sorted run to a temporary file (see
+	 * {@link #setSpillDirectory}), and all runs are k-way merged into the final
+	 * model at the end of the build. The default value 0 means no budget, the
+	 * whole table is kept in memory.
+	 * <p>
+	 * The heap size of the table is estimated from its states, their distinct
+	 * suffixes and the String of every distinct token, counted once since
+	 * tokens are interned while parsing.
+	 * </p>
+	 * <p>
+	 * Note the budget bounds the table while parsing, the final model still
+	 * needs to fit the heap unless {@link #setFileBackedModel} is enabled.
+	 * States of a spilled model are ordered by prefix hash instead of by their
+	 * first occurrence in the source.
+	 * </p>
+	 * 
+	 * @param bytes the memory budget in bytes, or 0 for no budget.
+	 * @return this {@link MarkovChainBuilder} for method call chaining.
+	 * 
+	 * @throws IllegalArgumentException if the given budget is negative.
+	 */
+	public MarkovChainBuilder setMemoryBudget(long bytes) {
+		if (bytes < 0) {
+			throw new IllegalArgumentException("Memory budget must not be negative.");
+		}
+		this.memoryBudget = bytes;
+
+		return this;
+	}
+
+	/**
+	 * Sets the directory where temporary files are created when the build
+	 * spills to disk (see {@link #setMemoryBudget}) or a file-backed model is
+	 * built (see {@link #setFileBackedModel}). The default one is the system
+	 * temporary directory.
+	 * 
+	 * @param directory the directory for temporary files, or null for the
+	 *            system default.
+	 * @return this {@link MarkovChainBuilder} for method call chaining.
+	 */
+	public MarkovChainBuilder setSpillDirectory(File directory) {
+		this.spillDirectory = directory;
+
+		return this;
+	}
+
+	/**
+	 * Sets whether the built {@link MarkovChain} keeps its states in a
+	 * memory-mapped temporary file instead of the heap, where only a compact
+	 * index of 12 bytes per state is kept. Generation is slower since every
+	 * step decodes its state from the file, in exchange models many times
+	 * larger than the heap can be used. Disabled by default.
+	 * 
+	 * @param fileBacked true to build a file-backed model.
+	 * @return this {@link MarkovChainBuilder} for method call chaining.
+	 */
+	public MarkovChainBuilder setFileBackedModel(boolean fileBacked) {
+		this.fileBackedModel = fileBacked;
+
+		return this;
+	}
+
+	/**
+	 * Sets a memory target (in bytes) for building an approximate
+	 * {@link MarkovChain}, trading exact weights for bounded memory. When
+	 * greater than 0, transition counts are kept in a count-min sketch keyed
+	 * by hashed prefix and suffix, and only a fixed number of states sized by
+	 * the target is kept, each with up to
+	 * {@value #APPROXIMATE_SUFFIXES_PER_STATE} candidate suffixes. Hot states
+	 * and suffixes evict cold ones, so memory no longer depends on the number
+	 * of distinct n-grams of the source, and generation quality degrades
+	 * gracefully as the target shrinks: weights are slightly overestimated and
+	 * rare transitions are dropped. The default value 0 builds an exact model.
+	 * <p>
+	 * The target covers the sketch and the final states, but not the
+	 * dictionary of distinct tokens. It can't be combined with
+	 * {@link #setMemoryBudget}.
+	 * </p>
+	 * 
+	 * @param bytes the approximate memory target in bytes, or 0 for an exact
+	 *            model.
+	 * @return this {@link MarkovChainBuilder} for method call chaining.
+	 * 
+	 * @throws IllegalArgumentException if the given target is negative.
+	 */
+	public MarkovChainBuilder setApproximateMemoryTarget(long bytes) {
+		if (bytes < 0) {
+			throw new IllegalArgumentException("Approximate memory target must not be negative.");
+		}
+		this.approximateMemoryTarget = bytes;
+
+		return this;
+	}
+
+	/**
+	 * Sets whether builds are pipelined: the source is decoded and tokenized
+	 * by two threads of their own, each one a stage ahead of the building
+	 * thread, which only inserts tokens into the model. Stages hand chunks of
+	 * characters and batches of tokens over through bounded lock-free queues,
+	 * so the build takes about as long as its slowest stage instead of all of
+	 * them in sequence, at the cost of two more busy threads per build. Tokens
+	 * are inserted in the exact same order, and the model is the same as a
+	 * sequential build. Disabled by default.
+	 * 
+	 * @param pipelined true to pipeline builds.
+	 * @return this {@link MarkovChainBuilder} for method call chaining.
+	 */
+	public MarkovChainBuilder setPipelined(boolean pipelined) {
+		this.pipelined = pipelined;
+
+		return this;
+	}
+
+	/**
+	 * Sets a limit (in bytes) on the estimated heap size of the model, checked
+	 * as every token is consumed, so sources building oversized models are
+	 * stopped while they're read instead of after a separate pre-scan (see
+	 * {@link #estimate}). Once the model passes the limit, the build fails
+	 * with a {@link ModelSizeLimitException} unless prefix length downgrades
+	 * are enabled (see {@link #setPrefixDowngrade}). The model size is
+	 * estimated as for {@link #setMemoryBudget}. The default value 0 means no
+	 * limit.
+	 * <p>
+	 * It can't be combined with {@link #setMemoryBudget} or
+	 * {@link #setApproximateMemoryTarget}.
+	 * </p>
+	 * 
+	 * @param bytes the model size limit in bytes, or 0 for no limit.
+	 * @return this {@link MarkovChainBuilder} for method call chaining.
+	 * 
+	 * @throws IllegalArgumentException if the given limit is negative.
+	 */
+	public MarkovChainBuilder setModelSizeLimit(long bytes) {
+		if (bytes < 0) {
+			throw new IllegalArgumentException("Model size limit must not be negative.");
+		}
+		this.modelSizeLimit = bytes;
+
+		return this;
+	}
+
+	/**
+	 * Sets whether a build passing the model size limit (see
+	 * {@link #setModelSizeLimit}) goes on with a prefix length one token
+	 * shorter instead of failing, down to prefix length 1. The states built so
+	 * far are projected to the shorter prefix length, dropping the left-most
+	 * token of each prefix and summing up the suffix weights of the states
+	 * merged by doing so, which gives the states and weights the shorter
+	 * prefix length would have built from the same tokens. So the source is
+	 * still read once, and the model is the same as building it with the
+	 * longest prefix length fitting the limit from the start. The prefix
+	 * length of the built chain is available through
+	 * {@link MarkovChain#getPrefixLength()}. Disabled by default.
+	 * 
+	 * @param downgrade true to downgrade the prefix length instead of failing.
+	 * @return this {@link MarkovChainBuilder} for method call chaining.
+	 */
+	public MarkovChainBuilder setPrefixDowngrade(boolean downgrade) {
+		this.prefixDowngrade = downgrade;
+
+		return this;
+	}
+
+	/**
+	 * Gets the prefix length set in this builder.
+	 * 
+	 * @return the prefix length.
+	 */
+	int getPrefixLength() {
+		return prefixLength;
+	}
+
+	/**
+	 * Gets the token parsing strategy set in this builder.
+	 * 
+	 * @return the {@link TokenStrategy}.
+	 */
+	TokenStrategy getTokenStrategy() {
+		return tokenStrategy;
+	}
+
+	/**
+	 * Gets the source {@link Charset} set in this builder.
+	 * 
+	 * @return the source charset.
+	 */
+	Charset getSourceCharset() {
+		return sourceCharset;
+	}
+
+	/**
+	 * Estimates the size of the {@link MarkovChain} the given source would
+	 * build with the current prefix length, token strategy and charset (and
+	 * every shorter prefix length) without building it. The source is scanned
+	 * once with bounded memory (a few KB per prefix length, no matter the
+	 * source size) and closed afterwards, so callers can reject or downgrade
+	 * pathological sources before a full {@link #build}.
+	 *
+	 * @param is the source {@link InputStream} aimed to the text to be
+	 *            scanned.
+	 * @return the {@link ChainSizeEstimate} of the source.
+	 *
+	 * @throws NullPointerException if the given stream is null.
+	 * @throws UncheckedIOException if the source can't be read.
+	 */
+	public ChainSizeEstimate estimate(InputStream is) {
+		if (is == null) {
+			throw new NullPointerException("The specified InputStream must be not null.");
+		}
+		return new ChainSizeEstimator(prefixLength, tokenStrategy, sourceCharset).estimate(is);
+	}
+
 	/**
 	 * Builds a {@link MarkovChain} instance according to previously defined
 	 * parameters (or default ones) from a given text String.
@@ -139,35 +410,198 @@ public class MarkovChainBuilder {
 	 * @return the configured, ready-to-be-used {@link MarkovChain} instance.
 	 * 
 	 * @throws NullPointerException if the given stream is null.
+	 * @throws IllegalStateException if more than one of a memory budget, an
+	 *             approximate memory target and a model size limit are set.
+	 * @throws ModelSizeLimitException if the model passes the model size limit
+	 *             with the shortest prefix length allowed.
+	 * @throws UncheckedIOException if temporary files can't be written or read
+	 *             while spilling to disk or building a file-backed model.
 	 */
 	public MarkovChain build(InputStream is) {
 		if (is == null) {
 			throw new NullPointerException("The specified InputStream must be not null.");
 		}
+		if (memoryBudget > 0 && approximateMemoryTarget > 0) {
+			throw new IllegalStateException("Memory budget and approximate memory target can't be combined.");
+		}
+		if (modelSizeLimit > 0 && (memoryBudget > 0 || approximateMemoryTarget > 0)) {
+			throw new IllegalStateException(
+					"Model size limit can't be combined with memory budget or approximate memory target.");
+		}
 
 		// The state map that will be core of the target MarkovChain.
 		Map<Prefix, WeightedSuffixes> stateMap = new LinkedHashMap<>();
+		// The estimated heap size of the state map (checked against budget).
+		long stateMapBytes = 0;
+		// The distinct tokens, so prefixes and suffixes share one String each.
+		Map<String, String> tokenDictionary = new HashMap<>();
+		// The prefix length being built, shorter than requested if downgraded.
+		int length = prefixLength;
 		// The current prefix auxiliary for the parser.
-		Prefix curPrefix = new Prefix(prefixLength);
+		Prefix curPrefix = new Prefix(length);
+		// The bounded-memory table replacing the state map if approximate.
+		ApproximateStateTable approximateTable = approximateMemoryTarget > 0
+				? new ApproximateStateTable(prefixLength, APPROXIMATE_SUFFIXES_PER_STATE, approximateMemoryTarget)
+				: null;
+		// The source n-gram index (and its rolling window) if enabled.
+		OriginalityIndex originalityIndex = originalityWindow > 0 ? new OriginalityIndex(originalityWindow) : null;
+		OriginalityIndex.Window window = originalityIndex != null ? originalityIndex.newWindow() : null;
+
+		// Flight Recorder event of the parse phase (counting bytes if enabled).
+		BuildPhaseEvent parseEvent = new BuildPhaseEvent(BuildPhaseEvent.PARSE, prefixLength);
+		CountingInputStream counter = parseEvent.isEnabled() ? new CountingInputStream(is) : null;
+		long tokens = 0;
+		long spilledStates = 0;
+		parseEvent.begin();
 
 		/*
-		 * Tokenize the stream using a Scanner and a regex pattern, here the
-		 * decision to use Scanner instead of a StreamTokenizer was made in
-		 * order to make the algorithm compatible with non-western charsets
-		 * (UTF-8, UTF-16).
+		 * Tokenize the stream using a regex pattern, either on this thread or
+		 * in decoding and tokenizing threads ahead of this one.
 		 */
-		try (Scanner s = new Scanner(is, sourceCharset.name())) {
-			while (s.findWithinHorizon(tokenStrategy.getPattern(), 0) != null) {
-				curPrefix = consumeToken(stateMap, curPrefix, s.match().group(1));
+		InputStream source = counter != null ? counter : is;
+		try (StateSpiller spiller = new StateSpiller(spillDirectory, prefixLength);
+				TokenSource tokenSource = pipelined
+						? new PipelinedTokenizer(source, sourceCharset, tokenStrategy.getPattern())
+						: TokenSource.scanning(source, sourceCharset, tokenStrategy)) {
+			for (String token = tokenSource.next(); token != null; token = tokenSource.next()) {
+				tokens++;
+				if (approximateTable != null) {
+					approximateTable.consume(token);
+				} else {
+					String interned = tokenDictionary.putIfAbsent(token, token);
+					if (interned == null) {
+						stateMapBytes += MemoryFootprint.ofToken(token);
+					} else {
+						token = interned;
+					}
+					stateMapBytes += consumeToken(stateMap, curPrefix, token, length);
+					curPrefix = curPrefix.createNext(token);
+				}
+
+				while (modelSizeLimit > 0 && stateMapBytes > modelSizeLimit) {
+					if (!prefixDowngrade || length == 1) {
+						throw new ModelSizeLimitException(stateMapBytes, modelSizeLimit, length);
+					}
+					stateMap = shortenStates(stateMap);
+					curPrefix = curPrefix.createShorter();
+					length--;
+					stateMapBytes = tokenDictionaryBytes(tokenDictionary) + stateMapBytes(stateMap, length);
+				}
+
+				if (window != null) {
+					window.push(token);
+					if (window.isFull()) {
+						originalityIndex.add(window.getHash());
+					}
+				}
+
+				if (memoryBudget > 0 && stateMapBytes > memoryBudget) {
+					spilledStates += stateMap.size();
+					spill(spiller, stateMap);
+					// Spilled tokens are no longer held, they're counted again once seen.
+					tokenDictionary.clear();
+					stateMapBytes = 0;
+				}
 			}
+
+			if (approximateTable != null) {
+				approximateTable.consume(null);
+				stateMap = approximateTable.toStateMap();
+			} else {
+				consumeToken(stateMap, curPrefix, null, length);
+			}
+
+			parseEvent.bytesRead = counter != null ? counter.getCount() : 0;
+			parseEvent.tokens = tokens;
+			parseEvent.states = spilledStates + stateMap.size();
+			parseEvent.commit();
+
+			if (length == prefixLength) {
+				stateMap = merge(spiller, stateMap, length);
+			} else {
+				// Downgraded builds never spill, only their final length matters.
+				try (StateSpiller shortened = new StateSpiller(spillDirectory, length)) {
+					stateMap = merge(shortened, stateMap, length);
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
 		}
 
-		curPrefix = consumeToken(stateMap, curPrefix, null);
+		return new MarkovChain(length, tokenStrategy, stateMap, originalityIndex);
+	}
 
-		return new MarkovChain(prefixLength, tokenStrategy.getSeparator(), stateMap);
+	private void spill(StateSpiller spiller, Map<Prefix, WeightedSuffixes> stateMap) throws IOException {
+		BuildPhaseEvent event = new BuildPhaseEvent(BuildPhaseEvent.SPILL, prefixLength);
+		event.begin();
+		event.states = stateMap.size();
+		spiller.spill(stateMap);
+		event.commit();
 	}
 
-	private Prefix consumeToken(Map<Prefix, WeightedSuffixes> stateMap, Prefix curPrefix, String token) {
+	private Map<Prefix, WeightedSuffixes> merge(StateSpiller spiller, Map<Prefix, WeightedSuffixes> stateMap,
+			int length) throws IOException {
+		if (spiller.getRunCount() == 0 && !fileBackedModel) {
+			return stateMap;
+		}
+		BuildPhaseEvent event = new BuildPhaseEvent(BuildPhaseEvent.MERGE, length);
+		event.begin();
+		Map<Prefix, WeightedSuffixes> merged = spiller.merge(stateMap, fileBackedModel);
+		event.states = merged.size();
+		event.commit();
+		return merged;
+	}
+
+	/**
+	 * Projects the state map to a prefix length one token shorter, see
+	 * {@link #setPrefixDowngrade}. States keep the order of their first
+	 * occurrence.
+	 * 
+	 * @return the projected state map.
+	 */
+	private static Map<Prefix, WeightedSuffixes> shortenStates(Map<Prefix, WeightedSuffixes> stateMap) {
+		Map<Prefix, WeightedSuffixes> shortened = new LinkedHashMap<>();
+		for (Map.Entry<Prefix, WeightedSuffixes> state : stateMap.entrySet()) {
+			WeightedSuffixes suffixes = shortened.computeIfAbsent(state.getKey().createShorter(),
+					prefix -> new WeightedSuffixes());
+			for (Map.Entry<String, Integer> suffix : state.getValue().getSuffixMap().entrySet()) {
+				suffixes.add(suffix.getKey(), suffix.getValue());
+			}
+		}
+		return shortened;
+	}
+
+	/**
+	 * Estimates the heap bytes of the states of a state map, as counted by
+	 * {@link #consumeToken}.
+	 */
+	private static long stateMapBytes(Map<Prefix, WeightedSuffixes> stateMap, int length) {
+		long bytes = stateMap.size() * MemoryFootprint.ofState(length);
+		for (WeightedSuffixes suffixes : stateMap.values()) {
+			bytes += suffixes.getSuffixMap().size() * MemoryFootprint.SUFFIX_BYTES;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Estimates the heap bytes of the interned tokens.
+	 */
+	private static long tokenDictionaryBytes(Map<String, String> tokenDictionary) {
+		long bytes = 0;
+		for (String token : tokenDictionary.keySet()) {
+			bytes += MemoryFootprint.ofToken(token);
+		}
+		return bytes;
+	}
+
+	/**
+	 * Binds a suffix token to the given prefix in the state map.
+	 * 
+	 * @return the estimated heap bytes added to the state map.
+	 */
+	private long consumeToken(Map<Prefix, WeightedSuffixes> stateMap, Prefix curPrefix, String token, int length) {
+		long addedBytes = 0;
+
 		/*
 		 * Checks if the prefix needs to be added or if it already exists in the
 		 * stateMap and bind the received suffix token to it (WeightedSuffix
@@ -178,11 +612,14 @@ public class MarkovChainBuilder {
 		if (suffixes == null) {
 			suffixes = new WeightedSuffixes();
 			stateMap.put(curPrefix, suffixes);
+			addedBytes += MemoryFootprint.ofState(length);
 		}
 
-		suffixes.add(token);
+		if (suffixes.add(token)) {
+			addedBytes += MemoryFootprint.SUFFIX_BYTES;
+		}
 
-		return curPrefix.createNext(token);
+		return addedBytes;
 	}
 
 }
@@ -0,0 +1,163 @@
+package com.germer.markov.chain;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Blends already built {@link MarkovChain} instances, generating text as if
+ * from a chain built over all their sources in given proportions, without
+ * building any merged model. Each step samples the next suffix from the
+ * weighted mixture of the suffix distributions the chains have for the current
+ * prefix: a chain is picked among those having the prefix, proportionally to
+ * its mix weight, and the suffix is sampled from that chain.
+ * <p>
+ * Mix weights can be changed at any time through {@link #setWeights}, which
+ * is instant and thread-safe: each {@link #generate} call uses the weights
+ * current when it started. Chains must share the same prefix length and token
+ * separator (i.e. be built with the same {@link TokenStrategy}). Originality
+ * windows of the chains (see {@link MarkovChainBuilder#setOriginalityWindow})
+ * aren't applied to mixed generation.
+ * </p>
+ *
+ * @author <a href="mailto:alegermer@gmail.com">Alessandro Germer</a>
+ */
+public class MarkovChainMixture {
+
+	// The mixed chains.
+	private final MarkovChain[] chains;
+	// Mix weight of each chain, replaced as a whole on changes.
+	private volatile double[] weights;
+
+	/**
+	 * Creates a mixture of the given chains, all of them with the same weight.
+	 *
+	 * @param chains the {@link MarkovChain} instances to be mixed.
+	 * @throws NullPointerException if any of the given chains is null.
+	 * @throws IllegalArgumentException if no chain is given or the chains
+	 *             differ in prefix length or token separator.
+	 */
+	public MarkovChainMixture(MarkovChain... chains) {
+		if (chains.length == 0) {
+			throw new IllegalArgumentException("At least one MarkovChain must be specified.");
+		}
+		for (MarkovChain chain : chains) {
+			if (chain == null) {
+				throw new NullPointerException("The specified MarkovChain must be not null.");
+			}
+			if (chain.getPrefixLength() != chains[0].getPrefixLength()
+					|| !Objects.equals(chain.getSeparator(), chains[0].getSeparator())) {
+				throw new IllegalArgumentException(
+						"The specified MarkovChain instances must share prefix length and token strategy.");
+			}
+		}
+		this.chains = chains.clone();
+		this.weights = new double[chains.length];
+		Arrays.fill(this.weights, 1);
+	}
+
+	/**
+	 * Sets the mix weights of the chains, in the order they were given to the
+	 * constructor. Weights are relative (they don't need to add up to 1) and a
+	 * chain with weight 0 takes no part in generation.
+	 *
+	 * @param weights the weight of each chain.
+	 * @return this {@link MarkovChainMixture} instance.
+	 * @throws IllegalArgumentException if the amount of weights differs from
+	 *             the amount of chains, any weight is negative or not finite,
+	 *             or all of them are 0.
+	 */
+	public MarkovChainMixture setWeights(double... weights) {
+		if (weights.length != chains.length) {
+			throw new IllegalArgumentException("The specified weights must be one for each chain.");
+		}
+		double sum = 0;
+		for (double weight : weights) {
+			if (!(weight >= 0) || Double.isInfinite(weight)) {
+				throw new IllegalArgumentException("The specified weights must be finite and not negative.");
+			}
+			sum += weight;
+		}
+		if (sum == 0) {
+			throw new IllegalArgumentException("At least one of the specified weights must be greater than 0.");
+		}
+		this.weights = weights.clone();
+		return this;
+	}
+
+	/**
+	 * Gets the current mix weights of the chains.
+	 *
+	 * @return a copy of the weights, in the order of the chains.
+	 */
+	public double[] getWeights() {
+		return weights.clone();
+	}
+
+	/**
+	 * Generates pseudo-random text from the mixture of chains.
+	 *
+	 * @param maxTokens the token size limit for the result generated text (in
+	 *            case a final state isn't achieved before this limit).
+	 * @return The pseudo-random generated text.
+	 */
+	public String generate(int maxTokens) {
+		GenerateEvent event = new GenerateEvent();
+		event.begin();
+
+		double[] mix = weights;
+		int prefixLength = chains[0].getPrefixLength();
+		String separator = chains[0].getSeparator();
+		// Suffixes of the current state in each chain (reused across steps).
+		WeightedSuffixes[] candidates = new WeightedSuffixes[chains.length];
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+
+		StringBuilder sbResult = new StringBuilder();
+		Prefix curPrefix = new Prefix(prefixLength);
+
+		int generatedLen = 0;
+		for (; generatedLen < maxTokens; generatedLen++) {
+			double available = 0;
+			for (int i = 0; i < chains.length; i++) {
+				candidates[i] = mix[i] > 0 ? chains[i].getSuffixes(curPrefix) : null;
+				if (candidates[i] != null) {
+					available += mix[i];
+				}
+			}
+			if (available == 0) {
+				break;
+			}
+
+			// Pick a chain having the state, then a suffix from it.
+			double randomWeight = random.nextDouble(available);
+			int picked = -1;
+			for (int i = 0; i < chains.length; i++) {
+				if (candidates[i] != null) {
+					picked = i;
+					randomWeight -= mix[i];
+					if (randomWeight < 0) {
+						break;
+					}
+				}
+			}
+			String suffix = candidates[picked].getRandom();
+
+			// null suffix represents the final state.
+			if (suffix == null) {
+				break;
+			}
+			if (separator != null && generatedLen != 0) {
+				sbResult.append(separator);
+			}
+			sbResult.append(suffix);
+			curPrefix.shiftLeft(suffix);
+		}
+
+		event.prefixLength = prefixLength;
+		event.maxTokens = maxTokens;
+		event.tokens = generatedLen;
+		event.commit();
+
+		return sbResult.toString();
+	}
+}
@@ -0,0 +1,97 @@
+package com.germer.markov.chain;
+
+/**
+ * Rough heap footprint estimates of the {@link MarkovChain} state-map building
+ * blocks, used internally in the package where an approximate memory usage is
+ * enough (memory budgets, reports). Figures assume a 64-bit JVM with
+ * compressed references and the {@link java.util.LinkedHashMap} based
+ * structures used by {@link MarkovChainBuilder} and {@link WeightedSuffixes}.
+ * 
+ * @author <a href="mailto:alegermer@gmail.com">Alessandro Germer</a>
+ */
+final class MemoryFootprint {
+
+	/**
+	 * Fixed bytes per state: the {@link Prefix} and its token array header,
+	 * the state-map entry and table slot, and an empty
+	 * {@link WeightedSuffixes} with its own map.
+	 */
+	static final long STATE_BYTES = 240;
+	/**
+	 * Fixed bytes per distinct suffix of a state: the suffix-map entry and
+	 * table slot.
+	 */
+	static final long SUFFIX_BYTES = 48;
+	/**
+	 * Fixed bytes of a {@link WeightedSuffixes} instance with its own (empty)
+	 * map.
+	 */
+	static final long WEIGHTED_SUFFIXES_BYTES = 160;
+	/**
+	 * Fixed bytes of a frozen {@link WeightedSuffixes} instance with a single
+	 * suffix, backed by a singleton map.
+	 */
+	static final long SINGLE_SUFFIX_BYTES = 72;
+	/**
+	 * Fixed bytes of the unmodifiable view wrapping the map of a frozen
+	 * {@link WeightedSuffixes} instance with many suffixes.
+	 */
+	static final long UNMODIFIABLE_MAP_BYTES = 16;
+	/**
+	 * Fixed bytes per distinct token interned while building: the entry and
+	 * table slot of the token dictionary, not including the String itself.
+	 */
+	static final long TOKEN_ENTRY_BYTES = 48;
+
+	private MemoryFootprint() {
+	}
+
+	/**
+	 * Estimates the bytes taken by a new state of the given prefix length,
+	 * not including its token Strings (see {@link #ofToken}).
+	 * 
+	 * @param prefixLength the prefix length of the state.
+	 * @return the estimated size in bytes.
+	 */
+	static long ofState(int prefixLength) {
+		return STATE_BYTES + 4L * prefixLength;
+	}
+
+	/**
+	 * Estimates the bytes taken by a newly interned distinct token: its String,
+	 * shared by every prefix and suffix holding the token, and its entry in
+	 * the token dictionary.
+	 * 
+	 * @param token the token.
+	 * @return the estimated size in bytes.
+	 */
+	static long ofToken(String token) {
+		return TOKEN_ENTRY_BYTES + ofString(token);
+	}
+
+	/**
+	 * Estimates the bytes taken by a {@link WeightedSuffixes} instance and its
+	 * map, not including the suffix token Strings.
+	 * 
+	 * @param suffixes the {@link WeightedSuffixes} instance.
+	 * @return the estimated size in bytes.
+	 */
+	static long ofSuffixes(WeightedSuffixes suffixes) {
+		int distinct = suffixes.getSuffixMap().size();
+		if (!suffixes.isFrozen()) {
+			return WEIGHTED_SUFFIXES_BYTES + distinct * SUFFIX_BYTES;
+		}
+		return distinct == 1 ? SINGLE_SUFFIX_BYTES
+				: WEIGHTED_SUFFIXES_BYTES + UNMODIFIABLE_MAP_BYTES + distinct * SUFFIX_BYTES;
+	}
+
+	/**
+	 * Estimates the bytes taken by a String instance and its characters.
+	 * 
+	 * @param s the String (may be null).
+	 * @return the estimated size in bytes, 0 for null.
+	 */
+	static long ofString(String s) {
+		return s == null ? 0 : 40 + ((2L * s.length() + 7) & ~7L);
+	}
+}
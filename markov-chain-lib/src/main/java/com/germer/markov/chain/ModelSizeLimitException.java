@@ -0,0 +1,64 @@
+package com.germer.markov.chain;
+
+/**
+ * Thrown by {@link MarkovChainBuilder#build} when the model being built passes
+ * the model size limit of the builder (see
+ * {@link MarkovChainBuilder#setModelSizeLimit}) and its prefix length can't be
+ * downgraded any further. The build is stopped as soon as the limit is passed,
+ * so the rest of the source is left unread.
+ *
+ * @author <a href="mailto:alegermer@gmail.com">Alessandro Germer</a>
+ */
+public class ModelSizeLimitException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final long modelBytes;
+	private final long limitBytes;
+	private final int prefixLength;
+
+	/**
+	 * Creates the exception for the given model size and limit.
+	 *
+	 * @param modelBytes the estimated model bytes when the limit was passed.
+	 * @param limitBytes the model size limit in bytes.
+	 * @param prefixLength the prefix length of the model when the limit was
+	 *            passed.
+	 */
+	ModelSizeLimitException(long modelBytes, long limitBytes, int prefixLength) {
+		super("The model of prefix length " + prefixLength + " passed " + modelBytes + " bytes, over the limit of "
+				+ limitBytes + " bytes.");
+		this.modelBytes = modelBytes;
+		this.limitBytes = limitBytes;
+		this.prefixLength = prefixLength;
+	}
+
+	/**
+	 * Gets the estimated model bytes when the limit was passed, a lower bound
+	 * of the size of the whole model.
+	 *
+	 * @return the estimated size in bytes.
+	 */
+	public long getModelBytes() {
+		return modelBytes;
+	}
+
+	/**
+	 * Gets the model size limit of the builder.
+	 *
+	 * @return the limit in bytes.
+	 */
+	public long getLimitBytes() {
+		return limitBytes;
+	}
+
+	/**
+	 * Gets the prefix length of the model when the limit was passed, the
+	 * shortest one tried.
+	 *
+	 * @return the prefix length.
+	 */
+	public int getPrefixLength() {
+		return prefixLength;
+	}
+}
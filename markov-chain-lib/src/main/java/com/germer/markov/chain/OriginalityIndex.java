@@ -0,0 +1,267 @@
+package com.germer.markov.chain;
+
+/**
+ * Markov Chain originality data-structure used internally in the package. This
+ * class keeps a compact open-addressing set of rolling hashes for every source
+ * n-gram of a fixed window length (number of tokens), so a generation walk can
+ * check in O(1) per token whether its last tokens reproduce the source text
+ * verbatim.
+ * <p>
+ * Being hash based, false positives are possible (with a negligible 64-bit
+ * collision probability), meaning a walk may rarely be considered a copy when
+ * it isn't. False negatives are not possible.
+ * </p>
+ *
+ * @author <a href="mailto:alegermer@gmail.com">Alessandro Germer</a>
+ */
+class OriginalityIndex {
+
+	// odd multiplier of the polynomial rolling hash (arithmetic modulo 2^64).
+	private static final long BASE = 0x9E3779B97F4A7C15L;
+	// initial capacity of the hash table (must be a power of two).
+	private static final int INITIAL_CAPACITY = 1 << 10;
+	// the value reserved to flag empty slots in the hash table.
+	private static final long EMPTY = 0L;
+
+	// n-gram length (in tokens) indexed by this instance.
+	private final int window;
+	// BASE^(window - 1), used to drop the left-most token of a full window.
+	private final long leadingPower;
+	// open-addressing (linear probing) table of n-gram hashes.
+	private long[] table = new long[INITIAL_CAPACITY];
+	// number of distinct hashes stored in the table.
+	private int size = 0;
+
+	/**
+	 * Rolling hash over the last tokens of a token sequence, bounded to the
+	 * window length of the enclosing {@link OriginalityIndex}. Instances are
+	 * not thread-safe and are meant to be used by a single build or generation
+	 * walk.
+	 *
+	 * @author <a href="mailto:alegermer@gmail.com">Alessandro Germer</a>
+	 */
+	class Window {
+		// ring buffer of the token hashes currently in the window.
+		private final long[] ring = new long[window];
+		// ring position of the left-most (oldest) token.
+		private int head = 0;
+		// number of tokens currently in the window.
+		private int count = 0;
+		// rolling hash of the tokens currently in the window.
+		private long hash = 0L;
+
+		private Window() {
+		}
+
+		/**
+		 * Computes the rolling hash the window would have after pushing the
+		 * given token hash, keeping the current instance untouched.
+		 */
+		private long peek(long tokenHash) {
+			long h = hash;
+			if (count == window) {
+				h -= ring[head] * leadingPower;
+			}
+			return h * BASE + tokenHash;
+		}
+
+		/**
+		 * Pushes a token as the right-most one of the window, dropping the
+		 * left-most token when the window is already full.
+		 *
+		 * @param token the token to be pushed (must be not null).
+		 */
+		void push(String token) {
+			push(hashToken(token));
+		}
+
+		/**
+		 * Pushes a token given by its {@link OriginalityIndex#hashToken} hash,
+		 * see {@link #push(String)}.
+		 *
+		 * @param tokenHash the hash of the token to be pushed.
+		 */
+		void push(long tokenHash) {
+			hash = peek(tokenHash);
+			if (count == window) {
+				ring[head] = tokenHash;
+				head = (head + 1) % window;
+			} else {
+				ring[(head + count) % window] = tokenHash;
+				count++;
+			}
+		}
+
+		/**
+		 * Checks whether the window is full, in other words if its hash
+		 * represents a complete n-gram.
+		 *
+		 * @return true if the window holds as many tokens as its length.
+		 */
+		boolean isFull() {
+			return count == window;
+		}
+
+		/**
+		 * Gets the rolling hash of the tokens currently in the window.
+		 *
+		 * @return the current rolling hash.
+		 */
+		long getHash() {
+			return hash;
+		}
+
+		/**
+		 * Checks whether pushing the given token would make the window a
+		 * complete n-gram that is present in the source text indexed by the
+		 * enclosing {@link OriginalityIndex}. The current instance remains
+		 * untouched.
+		 *
+		 * @param token the candidate token (must be not null).
+		 * @return true if the candidate token would reproduce the source.
+		 */
+		boolean reproducesSource(String token) {
+			return reproducesSource(hashToken(token));
+		}
+
+		/**
+		 * Checks a candidate token given by its
+		 * {@link OriginalityIndex#hashToken} hash, see
+		 * {@link #reproducesSource(String)}.
+		 *
+		 * @param tokenHash the hash of the candidate token.
+		 * @return true if the candidate token would reproduce the source.
+		 */
+		boolean reproducesSource(long tokenHash) {
+			return count + 1 >= window && contains(peek(tokenHash));
+		}
+	}
+
+	/**
+	 * Constructs an empty {@link OriginalityIndex} for n-grams of the given
+	 * window length.
+	 *
+	 * @param window the n-gram length (in tokens), must be greater than 0.
+	 */
+	OriginalityIndex(int window) {
+		this.window = window;
+		long power = 1L;
+		for (int i = 1; i < window; i++) {
+			power *= BASE;
+		}
+		this.leadingPower = power;
+	}
+
+	/**
+	 * Creates a new empty {@link Window} bound to this index window length.
+	 *
+	 * @return the new {@link Window} instance.
+	 */
+	Window newWindow() {
+		return new Window();
+	}
+
+	/**
+	 * Gets the n-gram length (in tokens) indexed by this instance.
+	 *
+	 * @return the window length.
+	 */
+	int getWindow() {
+		return window;
+	}
+
+	/**
+	 * Gets the number of distinct n-gram hashes held by this instance.
+	 *
+	 * @return the amount of indexed n-grams.
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Adds the n-gram hash of a full {@link Window} to the index.
+	 *
+	 * @param hash the rolling hash of the n-gram.
+	 */
+	void add(long hash) {
+		if ((size + 1) * 2 > table.length) {
+			resize();
+		}
+		if (insert(table, normalize(hash))) {
+			size++;
+		}
+	}
+
+	/**
+	 * Checks whether an n-gram hash is present in the index.
+	 *
+	 * @param hash the rolling hash of the n-gram.
+	 * @return true if the hash was previously added.
+	 */
+	boolean contains(long hash) {
+		long h = normalize(hash);
+		int mask = table.length - 1;
+		for (int i = mix(h) & mask;; i = (i + 1) & mask) {
+			if (table[i] == h) {
+				return true;
+			} else if (table[i] == EMPTY) {
+				return false;
+			}
+		}
+	}
+
+	private void resize() {
+		long[] newTable = new long[table.length * 2];
+		for (long h : table) {
+			if (h != EMPTY) {
+				insert(newTable, h);
+			}
+		}
+		table = newTable;
+	}
+
+	private static boolean insert(long[] target, long h) {
+		int mask = target.length - 1;
+		for (int i = mix(h) & mask;; i = (i + 1) & mask) {
+			if (target[i] == h) {
+				return false;
+			} else if (target[i] == EMPTY) {
+				target[i] = h;
+				return true;
+			}
+		}
+	}
+
+	private static long normalize(long hash) {
+		return hash == EMPTY ? 1L : hash;
+	}
+
+	private static int mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		return (int) h;
+	}
+
+	/**
+	 * Computes a 64-bit hash for a single token (FNV-1a over its characters
+	 * followed by a bit-spreading finalizer).
+	 *
+	 * @param token the token to be hashed (must be not null).
+	 * @return the 64-bit token hash.
+	 */
+	static long hashToken(String token) {
+		long h = 0xCBF29CE484222325L;
+		for (int i = 0; i < token.length(); i++) {
+			h ^= token.charAt(i);
+			h *= 0x100000001B3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		return h;
+	}
+}
@@ -0,0 +1,225 @@
+package com.germer.markov.chain;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Markov Chain build token stream used internally in the package (see
+ * {@link MarkovChainBuilder#setPipelined}). Decoding and tokenizing run in
+ * their own threads, connected to each other and to the consumer (the
+ * inserting thread) by bounded {@link SpscRingBuffer} queues:
+ * <ol>
+ * <li>the decoder thread reads the stream and decodes it into chunks of
+ * {@value #CHUNK_CHARS} characters;</li>
+ * <li>the tokenizer thread matches the token pattern over the chunks, holding
+ * back any match reaching the end of a chunk (which may go on in the next one),
+ * and hands tokens over in batches of {@value #BATCH_TOKENS};</li>
+ * <li>the consumer takes tokens through {@link #next()}.</li>
+ * </ol>
+ * Tokens are the same, in the same order, as a {@link java.util.Scanner} based
+ * tokenization (see {@link TokenSource#scanning}). Idle stages spin briefly,
+ * then yield and finally park, so a full or empty queue never burns a core for
+ * long. A failure of any stage is rethrown to the consumer at the end of the
+ * tokens.
+ *
+ * @author <a href="mailto:alegermer@gmail.com">Alessandro Germer</a>
+ */
+class PipelinedTokenizer implements TokenSource {
+
+	/**
+	 * Characters per decoded chunk.
+	 */
+	static final int CHUNK_CHARS = 1 << 15;
+	/**
+	 * Tokens per batch handed to the consumer.
+	 */
+	static final int BATCH_TOKENS = 1024;
+	/**
+	 * Chunks or batches queued between two stages.
+	 */
+	static final int QUEUE_CAPACITY = 16;
+
+	// idle iterations busy-spinning, then yielding, before parking.
+	private static final int SPINS = 100;
+	private static final int YIELDS = 200;
+	private static final long PARK_NANOS = 50_000;
+
+	// end of stream markers, compared by identity.
+	private static final CharBuffer END_OF_CHUNKS = CharBuffer.allocate(0);
+	private static final String[] END_OF_BATCHES = new String[0];
+
+	private final SpscRingBuffer<CharBuffer> chunks = new SpscRingBuffer<>(QUEUE_CAPACITY);
+	private final SpscRingBuffer<String[]> batches = new SpscRingBuffer<>(QUEUE_CAPACITY);
+	// set when the consumer closes before the end, stopping the stages.
+	private volatile boolean cancelled;
+	// first failure of a stage, rethrown at the end of the tokens.
+	private volatile Throwable failure;
+
+	// current batch of the consumer and position of its next token.
+	private String[] batch = new String[0];
+	private int position;
+
+	/**
+	 * Starts decoding and tokenizing a source.
+	 *
+	 * @param is the source {@link InputStream}, closed by the decoder thread
+	 *            at its end.
+	 * @param charset the source charset.
+	 * @param pattern the token pattern (see {@link TokenStrategy}).
+	 */
+	PipelinedTokenizer(InputStream is, Charset charset, Pattern pattern) {
+		Thread decoder = new Thread(() -> decode(is, charset), "markov-build-decoder");
+		Thread tokenizer = new Thread(() -> tokenize(pattern), "markov-build-tokenizer");
+		decoder.setDaemon(true);
+		tokenizer.setDaemon(true);
+		decoder.start();
+		tokenizer.start();
+	}
+
+	@Override
+	public String next() {
+		while (position == batch.length) {
+			if (batch == END_OF_BATCHES) {
+				return null;
+			}
+			batch = take(batches);
+			position = 0;
+			if (batch == END_OF_BATCHES) {
+				rethrowFailure();
+			}
+		}
+		return batch[position++];
+	}
+
+	/**
+	 * Stops the stages if the tokens weren't consumed to the end. The decoder
+	 * thread may still be blocked reading the stream, and closes it when done.
+	 */
+	@Override
+	public void close() {
+		cancelled = true;
+	}
+
+	private void decode(InputStream is, Charset charset) {
+		try (Reader reader = new InputStreamReader(is, charset)) {
+			int read = 0;
+			while (read >= 0 && !cancelled) {
+				char[] chunk = new char[CHUNK_CHARS];
+				int length = 0;
+				while (length < chunk.length && (read = reader.read(chunk, length, chunk.length - length)) >= 0) {
+					length += read;
+				}
+				if (length > 0 && !put(chunks, CharBuffer.wrap(chunk, 0, length))) {
+					return;
+				}
+			}
+		} catch (Throwable e) {
+			fail(e);
+		}
+		put(chunks, END_OF_CHUNKS);
+	}
+
+	private void tokenize(Pattern pattern) {
+		try {
+			// Characters not consumed yet, the start of a held back match.
+			StringBuilder text = new StringBuilder(CHUNK_CHARS * 2);
+			Matcher matcher = pattern.matcher(text);
+			String[] tokens = new String[BATCH_TOKENS];
+			int size = 0;
+
+			for (CharBuffer chunk = take(chunks); chunk != null; chunk = take(chunks)) {
+				boolean last = chunk == END_OF_CHUNKS;
+				text.append(chunk);
+				matcher.reset(text);
+				int consumed = 0;
+				while (matcher.find() && (last || !matcher.hitEnd())) {
+					tokens[size++] = matcher.group(1);
+					consumed = matcher.end();
+					if (size == tokens.length) {
+						if (!put(batches, tokens)) {
+							return;
+						}
+						tokens = new String[BATCH_TOKENS];
+						size = 0;
+					}
+				}
+				text.delete(0, consumed);
+
+				if (last) {
+					if (size > 0) {
+						put(batches, Arrays.copyOf(tokens, size));
+					}
+					break;
+				}
+			}
+		} catch (Throwable e) {
+			fail(e);
+		}
+		put(batches, END_OF_BATCHES);
+	}
+
+	private void fail(Throwable e) {
+		if (failure == null) {
+			failure = e;
+		}
+	}
+
+	private void rethrowFailure() {
+		Throwable e = failure;
+		if (e instanceof IOException) {
+			throw new UncheckedIOException((IOException) e);
+		} else if (e instanceof RuntimeException) {
+			throw (RuntimeException) e;
+		} else if (e instanceof Error) {
+			throw (Error) e;
+		}
+	}
+
+	/**
+	 * Adds an element to a queue, waiting while it's full.
+	 *
+	 * @return false if cancelled meanwhile.
+	 */
+	private <E> boolean put(SpscRingBuffer<E> queue, E element) {
+		for (int attempt = 0; !queue.offer(element); attempt++) {
+			if (cancelled) {
+				return false;
+			}
+			idle(attempt);
+		}
+		return true;
+	}
+
+	/**
+	 * Takes an element from a queue, waiting while it's empty.
+	 *
+	 * @return null if cancelled meanwhile.
+	 */
+	private <E> E take(SpscRingBuffer<E> queue) {
+		E element;
+		for (int attempt = 0; (element = queue.poll()) == null; attempt++) {
+			if (cancelled) {
+				return null;
+			}
+			idle(attempt);
+		}
+		return element;
+	}
+
+	private static void idle(int attempt) {
+		if (attempt >= SPINS + YIELDS) {
+			LockSupport.parkNanos(PARK_NANOS);
+		} else if (attempt >= SPINS) {
+			Thread.yield();
+		}
+	}
+}
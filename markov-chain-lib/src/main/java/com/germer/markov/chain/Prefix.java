@@ -2,6 +2,8 @@ package com.germer.markov.chain;
 
 import static java.util.Objects.deepEquals;
 
+import java.util.Comparator;
+
 import org.apache.commons.lang3.ArrayUtils;
 
 /**
@@ -14,6 +16,19 @@ import org.apache.commons.lang3.ArrayUtils;
  */
 class Prefix {
 
+	/**
+	 * Total ordering of prefixes of the same length, primarily by
+	 * {@link #hashCode()} and then token by token (null tokens first). Used to
+	 * lay out states in files so they can be merged and looked up by hash.
+	 */
+	static final Comparator<Prefix> HASH_ORDER = (a, b) -> {
+		int cmp = Integer.compare(a.hashCode(), b.hashCode());
+		for (int i = 0; cmp == 0 && i < a.tokens.length; i++) {
+			cmp = Comparator.nullsFirst(Comparator.<String> naturalOrder()).compare(a.tokens[i], b.tokens[i]);
+		}
+		return cmp;
+	};
+
 	// prefix is nothing more than a array of tokens.
 	private String[] tokens;
 
@@ -44,6 +59,18 @@ class Prefix {
 		return next;
 	};
 
+	/**
+	 * Creates a new {@link Prefix} one token shorter than the current instance,
+	 * dropping its left-most token. The current instance remains untouched.
+	 * 
+	 * @return the new {@link Prefix} instance.
+	 */
+	Prefix createShorter() {
+		Prefix shorter = new Prefix(tokens.length - 1);
+		System.arraycopy(tokens, 1, shorter.tokens, 0, shorter.tokens.length);
+		return shorter;
+	}
+
 	/**
 	 * Shifts left the current prefix tokens array, dropping the left-most token
 	 * and adding the given token as right-most, keeping the array length
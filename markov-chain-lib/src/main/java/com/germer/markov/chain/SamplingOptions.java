@@ -0,0 +1,119 @@
+package com.germer.markov.chain;
+
+/**
+ * Options reshaping the suffix distributions sampled by
+ * {@link MarkovChain#generate(int, SamplingOptions)}, for more conservative or
+ * more creative text than sampling in proportion to the source counts:
+ * <ul>
+ * <li><b>temperature</b> raises each suffix weight to {@code 1 / temperature}
+ * before sampling, so temperatures below 1 favor the most likely suffixes and
+ * temperatures above 1 flatten the distribution (defaults to 1).</li>
+ * <li><b>top-k</b> samples only among the {@code k} most likely suffixes of
+ * each state (defaults to 0, all suffixes).</li>
+ * <li><b>top-p</b> (nucleus sampling) samples only among the most likely
+ * suffixes of each state whose probabilities add up to at least {@code p}
+ * (defaults to 1, all suffixes).</li>
+ * </ul>
+ * Top-k is applied first, then top-p over the tempered weights of the
+ * remaining suffixes. Instances can be reused among generations and threads as
+ * long as they aren't changed meanwhile.
+ *
+ * @author <a href="mailto:alegermer@gmail.com">Alessandro Germer</a>
+ */
+public class SamplingOptions {
+
+	private double temperature = 1;
+	private int topK = 0;
+	private double topP = 1;
+
+	/**
+	 * Sets the temperature of sampling. Tempered weights of a compiled chain
+	 * are computed once per temperature in time and memory proportional to
+	 * its transitions (a double per transition), and kept for a few recently
+	 * used temperatures: generating with a new temperature pays that rebuild,
+	 * so callers should pick among a small set of temperatures (e.g. rounded
+	 * to a tenth) rather than arbitrary ones.
+	 *
+	 * @param temperature the temperature (greater than 0).
+	 * @return this {@link SamplingOptions} instance.
+	 * @throws IllegalArgumentException if the temperature isn't a finite
+	 *             number greater than 0.
+	 */
+	public SamplingOptions setTemperature(double temperature) {
+		if (!(temperature > 0) || Double.isInfinite(temperature)) {
+			throw new IllegalArgumentException("The specified temperature must be finite and greater than 0.");
+		}
+		this.temperature = temperature;
+		return this;
+	}
+
+	/**
+	 * Gets the temperature of sampling.
+	 *
+	 * @return the temperature.
+	 */
+	public double getTemperature() {
+		return temperature;
+	}
+
+	/**
+	 * Sets the amount of most likely suffixes sampled in each state.
+	 *
+	 * @param topK the amount of suffixes, 0 for all of them.
+	 * @return this {@link SamplingOptions} instance.
+	 * @throws IllegalArgumentException if the amount is negative.
+	 */
+	public SamplingOptions setTopK(int topK) {
+		if (topK < 0) {
+			throw new IllegalArgumentException("The specified top-k must be not negative.");
+		}
+		this.topK = topK;
+		return this;
+	}
+
+	/**
+	 * Gets the amount of most likely suffixes sampled in each state.
+	 *
+	 * @return the amount of suffixes, 0 for all of them.
+	 */
+	public int getTopK() {
+		return topK;
+	}
+
+	/**
+	 * Sets the cumulative probability of the most likely suffixes sampled in
+	 * each state.
+	 *
+	 * @param topP the cumulative probability, greater than 0 up to 1 (all
+	 *            suffixes).
+	 * @return this {@link SamplingOptions} instance.
+	 * @throws IllegalArgumentException if the probability is out of range.
+	 */
+	public SamplingOptions setTopP(double topP) {
+		if (!(topP > 0 && topP <= 1)) {
+			throw new IllegalArgumentException("The specified top-p must be greater than 0 and up to 1.");
+		}
+		this.topP = topP;
+		return this;
+	}
+
+	/**
+	 * Gets the cumulative probability of the most likely suffixes sampled in
+	 * each state.
+	 *
+	 * @return the cumulative probability.
+	 */
+	public double getTopP() {
+		return topP;
+	}
+
+	/**
+	 * Checks whether these options sample in proportion to the source counts,
+	 * just like {@link MarkovChain#generate(int)}.
+	 *
+	 * @return true if no option changes the suffix distributions.
+	 */
+	boolean isDefault() {
+		return temperature == 1 && topK == 0 && topP == 1;
+	}
+}
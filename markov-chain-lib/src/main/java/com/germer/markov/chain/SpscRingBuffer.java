@@ -0,0 +1,83 @@
+package com.germer.markov.chain;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Markov Chain build pipeline queue used internally in the package. This class
+ * is a bounded lock-free ring buffer for exactly one producer thread and one
+ * consumer thread: each side only writes its own counter (with ordered, not
+ * fully fenced, writes) and reads the other one, so no locks or CAS loops are
+ * needed. Elements are handed over in order.
+ *
+ * @author <a href="mailto:alegermer@gmail.com">Alessandro Germer</a>
+ *
+ * @param <E> the type of the elements.
+ */
+class SpscRingBuffer<E> {
+
+	// the slots of the ring (length is a power of two).
+	private final Object[] slots;
+	// slots.length - 1, masking counters into slot indexes.
+	private final int mask;
+	// count of elements taken, only written by the consumer.
+	private final AtomicLong head = new AtomicLong();
+	// count of elements added, only written by the producer.
+	private final AtomicLong tail = new AtomicLong();
+
+	/**
+	 * Constructs an empty ring buffer.
+	 *
+	 * @param capacity the maximum number of elements, rounded up to a power
+	 *            of two.
+	 */
+	SpscRingBuffer(int capacity) {
+		int size = capacity <= 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+		this.slots = new Object[size];
+		this.mask = size - 1;
+	}
+
+	/**
+	 * Adds an element if the buffer isn't full, only called by the producer.
+	 *
+	 * @param element the element (must be not null).
+	 * @return true if added, false if the buffer is full.
+	 */
+	boolean offer(E element) {
+		long t = tail.get();
+		if (t - head.get() == slots.length) {
+			return false;
+		}
+		slots[(int) t & mask] = element;
+		// Publishes the slot write along with the new tail.
+		tail.lazySet(t + 1);
+		return true;
+	}
+
+	/**
+	 * Takes the oldest element if the buffer isn't empty, only called by the
+	 * consumer.
+	 *
+	 * @return the element, null if the buffer is empty.
+	 */
+	@SuppressWarnings("unchecked")
+	E poll() {
+		long h = head.get();
+		if (h == tail.get()) {
+			return null;
+		}
+		int slot = (int) h & mask;
+		E element = (E) slots[slot];
+		slots[slot] = null;
+		head.lazySet(h + 1);
+		return element;
+	}
+
+	/**
+	 * Gets the maximum number of elements of the buffer.
+	 *
+	 * @return the capacity.
+	 */
+	int capacity() {
+		return slots.length;
+	}
+}
@@ -0,0 +1,131 @@
+package com.germer.markov.chain;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Binary encoding of Markov Chain states (a {@link Prefix} and its
+ * {@link WeightedSuffixes}) used internally in the package whenever the state
+ * map must leave the heap (spill runs, file-backed models, checkpoints).
+ * <p>
+ * A record is laid out as the prefix tokens, followed by the number of
+ * distinct suffixes and each suffix token with its weight. Tokens are written
+ * as their UTF-8 byte length (-1 for null) followed by the bytes.
+ * </p>
+ * 
+ * @author <a href="mailto:alegermer@gmail.com">Alessandro Germer</a>
+ */
+final class StateRecordCodec {
+
+	private StateRecordCodec() {
+	}
+
+	/**
+	 * Writes a single state record.
+	 * 
+	 * @param out the target {@link DataOutput}.
+	 * @param prefix the state {@link Prefix}.
+	 * @param suffixes the state {@link WeightedSuffixes}.
+	 * @throws IOException if the underlying output fails.
+	 */
+	static void write(DataOutput out, Prefix prefix, WeightedSuffixes suffixes) throws IOException {
+		for (String token : prefix.getTokens()) {
+			writeToken(out, token);
+		}
+		Map<String, Integer> suffixMap = suffixes.getSuffixMap();
+		out.writeInt(suffixMap.size());
+		for (Entry<String, Integer> suffix : suffixMap.entrySet()) {
+			writeToken(out, suffix.getKey());
+			out.writeInt(suffix.getValue());
+		}
+	}
+
+	/**
+	 * Reads a single state record previously written by {@link #write}.
+	 * 
+	 * @param in the source {@link DataInput}.
+	 * @param prefixLength the prefix length of the encoded state.
+	 * @return the decoded state as a prefix to suffixes entry.
+	 * @throws IOException if the underlying input fails or ends prematurely.
+	 */
+	static Entry<Prefix, WeightedSuffixes> read(DataInput in, int prefixLength) throws IOException {
+		Prefix prefix = new Prefix(prefixLength);
+		for (int i = 0; i < prefixLength; i++) {
+			prefix.shiftLeft(readToken(in));
+		}
+		WeightedSuffixes suffixes = new WeightedSuffixes();
+		for (int i = in.readInt(); i > 0; i--) {
+			String suffix = readToken(in);
+			suffixes.add(suffix, in.readInt());
+		}
+		return new SimpleImmutableEntry<>(prefix, suffixes);
+	}
+
+	/**
+	 * Reads only the {@link Prefix} of a record from a {@link ByteBuffer},
+	 * leaving its position at the beginning of the suffixes.
+	 * 
+	 * @param buffer the source buffer positioned at a record.
+	 * @param prefixLength the prefix length of the encoded state.
+	 * @return the decoded {@link Prefix}.
+	 */
+	static Prefix readPrefix(ByteBuffer buffer, int prefixLength) {
+		Prefix prefix = new Prefix(prefixLength);
+		for (int i = 0; i < prefixLength; i++) {
+			prefix.shiftLeft(readToken(buffer));
+		}
+		return prefix;
+	}
+
+	/**
+	 * Reads the {@link WeightedSuffixes} of a record from a {@link ByteBuffer}
+	 * positioned right after its prefix (see {@link #readPrefix}).
+	 * 
+	 * @param buffer the source buffer positioned at the suffixes.
+	 * @return the decoded {@link WeightedSuffixes}.
+	 */
+	static WeightedSuffixes readSuffixes(ByteBuffer buffer) {
+		WeightedSuffixes suffixes = new WeightedSuffixes();
+		for (int i = buffer.getInt(); i > 0; i--) {
+			String suffix = readToken(buffer);
+			suffixes.add(suffix, buffer.getInt());
+		}
+		return suffixes;
+	}
+
+	static void writeToken(DataOutput out, String token) throws IOException {
+		if (token == null) {
+			out.writeInt(-1);
+		} else {
+			byte[] bytes = token.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	static String readToken(DataInput in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static String readToken(ByteBuffer buffer) {
+		int length = buffer.getInt();
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,238 @@
+package com.germer.markov.chain;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.PriorityQueue;
+
+/**
+ * External-sort helper used internally by {@link MarkovChainBuilder} to build
+ * state maps larger than a memory budget. The in-memory state map is flushed
+ * through {@link #spill} as a run file of states sorted by
+ * {@link Prefix#HASH_ORDER}, and all runs are k-way merged by {@link #merge}
+ * into the final state map, summing the weights of the suffixes of a prefix
+ * spread among different runs.
+ * <p>
+ * All temporary files are removed by {@link #close()}, so instances are meant
+ * to be used in a try-with-resources block.
+ * </p>
+ *
+ * @author <a href="mailto:alegermer@gmail.com">Alessandro Germer</a>
+ */
+class StateSpiller implements AutoCloseable {
+
+	/**
+	 * Maximum number of runs merged at once, more runs than this are merged in
+	 * multiple passes to bound the number of open files.
+	 */
+	static final int MAX_MERGE_FAN_IN = 64;
+
+	private static final int IO_BUFFER_SIZE = 1 << 16;
+
+	private final File directory;
+	private final int prefixLength;
+	// run files not yet merged, in creation order.
+	private final List<File> runs = new ArrayList<>();
+
+	/**
+	 * Sequential reader of a run file, holding its current (smallest) state.
+	 */
+	private class RunReader implements AutoCloseable {
+		private final DataInputStream in;
+		private Entry<Prefix, WeightedSuffixes> current;
+
+		private RunReader(File run) throws IOException {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), IO_BUFFER_SIZE));
+			advance();
+		}
+
+		private void advance() throws IOException {
+			try {
+				current = StateRecordCodec.read(in, prefixLength);
+			} catch (EOFException e) {
+				current = null;
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+
+	/**
+	 * Consumer of merged states, in {@link Prefix#HASH_ORDER} order.
+	 */
+	@FunctionalInterface
+	private interface StateSink {
+		void accept(Prefix prefix, WeightedSuffixes suffixes) throws IOException;
+	}
+
+	/**
+	 * Creates a spiller writing its run files to the given directory.
+	 *
+	 * @param directory the directory of temporary files (null for the system
+	 *            default temporary directory).
+	 * @param prefixLength the prefix length of the states to be spilled.
+	 */
+	StateSpiller(File directory, int prefixLength) {
+		this.directory = directory;
+		this.prefixLength = prefixLength;
+	}
+
+	/**
+	 * Gets the number of run files spilled and not yet merged.
+	 *
+	 * @return the amount of pending runs.
+	 */
+	int getRunCount() {
+		return runs.size();
+	}
+
+	/**
+	 * Writes all states of the given map as a new sorted run file and clears
+	 * the map.
+	 *
+	 * @param stateMap the in-memory state map to be flushed.
+	 * @throws IOException if the run file can't be written.
+	 */
+	void spill(Map<Prefix, WeightedSuffixes> stateMap) throws IOException {
+		List<Entry<Prefix, WeightedSuffixes>> states = new ArrayList<>(stateMap.entrySet());
+		states.sort(Entry.comparingByKey(Prefix.HASH_ORDER));
+
+		File run = newRunFile();
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(run), IO_BUFFER_SIZE))) {
+			for (Entry<Prefix, WeightedSuffixes> state : states) {
+				StateRecordCodec.write(out, state.getKey(), state.getValue());
+			}
+		}
+		stateMap.clear();
+	}
+
+	/**
+	 * Merges all runs plus the remaining in-memory states into the final state
+	 * map. When no run was spilled and a file-backed model isn't requested,
+	 * the in-memory map is returned untouched.
+	 *
+	 * @param stateMap the remaining in-memory states (cleared if not returned).
+	 * @param fileBacked true to get a {@link FileBackedStateMap}, false to get
+	 *            an in-memory map (in {@link Prefix#HASH_ORDER} order).
+	 * @return the final state map.
+	 * @throws IOException if the runs can't be read or written.
+	 */
+	Map<Prefix, WeightedSuffixes> merge(Map<Prefix, WeightedSuffixes> stateMap, boolean fileBacked)
+			throws IOException {
+		if (runs.isEmpty() && !fileBacked) {
+			return stateMap;
+		}
+		if (!stateMap.isEmpty()) {
+			spill(stateMap);
+		}
+
+		// Reduce the number of runs with intermediate passes if needed.
+		while (runs.size() > MAX_MERGE_FAN_IN) {
+			List<File> batch = new ArrayList<>(runs.subList(0, MAX_MERGE_FAN_IN));
+			runs.subList(0, MAX_MERGE_FAN_IN).clear();
+
+			File run = newRunFile();
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(run), IO_BUFFER_SIZE))) {
+				mergeRuns(batch, (prefix, suffixes) -> StateRecordCodec.write(out, prefix, suffixes));
+			} finally {
+				delete(batch);
+			}
+		}
+
+		List<File> batch = new ArrayList<>(runs);
+		runs.clear();
+		try {
+			if (fileBacked) {
+				try (FileBackedStateMap.Writer writer = new FileBackedStateMap.Writer(directory, prefixLength)) {
+					mergeRuns(batch, writer::write);
+					return writer.finish();
+				}
+			}
+			Map<Prefix, WeightedSuffixes> merged = new LinkedHashMap<>();
+			mergeRuns(batch, merged::put);
+			return merged;
+		} finally {
+			delete(batch);
+		}
+	}
+
+	private void mergeRuns(List<File> batch, StateSink sink) throws IOException {
+		List<RunReader> readers = new ArrayList<>(batch.size());
+		try {
+			PriorityQueue<RunReader> queue = new PriorityQueue<>(Math.max(1, batch.size()),
+					(a, b) -> Prefix.HASH_ORDER.compare(a.current.getKey(), b.current.getKey()));
+			for (File run : batch) {
+				RunReader reader = new RunReader(run);
+				readers.add(reader);
+				if (reader.current != null) {
+					queue.add(reader);
+				}
+			}
+
+			while (!queue.isEmpty()) {
+				RunReader reader = queue.poll();
+				Prefix prefix = reader.current.getKey();
+				WeightedSuffixes suffixes = reader.current.getValue();
+				requeue(queue, reader);
+
+				// Same prefix spread among other runs, sum up its suffixes.
+				while (!queue.isEmpty() && queue.peek().current.getKey().equals(prefix)) {
+					reader = queue.poll();
+					for (Entry<String, Integer> suffix : reader.current.getValue().getSuffixMap().entrySet()) {
+						suffixes.add(suffix.getKey(), suffix.getValue());
+					}
+					requeue(queue, reader);
+				}
+
+				sink.accept(prefix, suffixes);
+			}
+		} finally {
+			for (RunReader reader : readers) {
+				reader.close();
+			}
+		}
+	}
+
+	private void requeue(PriorityQueue<RunReader> queue, RunReader reader) throws IOException {
+		reader.advance();
+		if (reader.current != null) {
+			queue.add(reader);
+		}
+	}
+
+	private File newRunFile() throws IOException {
+		File run = File.createTempFile("markov-run-", ".bin", directory);
+		runs.add(run);
+		return run;
+	}
+
+	private static void delete(List<File> files) {
+		for (File file : files) {
+			if (!file.delete()) {
+				file.deleteOnExit();
+			}
+		}
+	}
+
+	@Override
+	public void close() {
+		delete(runs);
+		runs.clear();
+	}
+}
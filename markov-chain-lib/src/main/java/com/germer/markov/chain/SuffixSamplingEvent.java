@@ -0,0 +1,67 @@
+package com.germer.markov.chain;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Optional Java Flight Recorder event emitted by
+ * {@link WeightedSuffixes#getRandom} for high-fanout states (at least
+ * {@value #MIN_FANOUT} distinct suffixes), sampled once every
+ * {@value #SAMPLING_RATE} calls on average to keep its overhead low. It's
+ * disabled by default and must be explicitly enabled in the recording
+ * settings.
+ * 
+ * @author <a href="mailto:alegermer@gmail.com">Alessandro Germer</a>
+ */
+@Name("com.germer.markov.SuffixSampling")
+@Label("Markov Chain Suffix Sampling")
+@Category("Markov Chain")
+@Description("A sampled weighted random suffix selection over a high-fanout state.")
+@Enabled(false)
+class SuffixSamplingEvent extends Event {
+
+	/**
+	 * Minimum number of distinct suffixes for a selection to be sampled.
+	 */
+	static final int MIN_FANOUT = 64;
+	/**
+	 * Average number of high-fanout selections per sampled event.
+	 */
+	static final int SAMPLING_RATE = 128;
+
+	@Label("Fanout")
+	@Description("Number of distinct suffixes of the state.")
+	int fanout;
+
+	@Label("Total Weight")
+	int totalWeight;
+
+	@Label("Suffixes Scanned")
+	int scanned;
+
+	/**
+	 * Starts a sampled event for a selection over the given fanout.
+	 * 
+	 * @param fanout the number of distinct suffixes of the state.
+	 * @return the begun event, or null if the selection isn't sampled (or the
+	 *         event is disabled).
+	 */
+	static SuffixSamplingEvent sample(int fanout) {
+		if (fanout < MIN_FANOUT || ThreadLocalRandom.current().nextInt(SAMPLING_RATE) != 0) {
+			return null;
+		}
+		SuffixSamplingEvent event = new SuffixSamplingEvent();
+		if (!event.isEnabled()) {
+			return null;
+		}
+		event.fanout = fanout;
+		event.begin();
+		return event;
+	}
+}
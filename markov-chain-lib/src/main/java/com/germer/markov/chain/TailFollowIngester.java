@@ -0,0 +1,698 @@
+package com.germer.markov.chain;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Incremental builder of {@link MarkovChain} models from append-only text
+ * files, such as a log directory that grows all day. Sources are files or
+ * directories (whose regular files are all followed, including the ones
+ * created later), and only bytes appended since the previous read are
+ * tokenized, one whole line at a time: a trailing incomplete line is left for
+ * the next read. Each file keeps its own prefix context across reads, so
+ * transitions never cross file boundaries. A file replaced by another one
+ * under the same name (as on log rotation, told apart by its file key, or by
+ * its creation time where file keys aren't available) or shrinking (as when
+ * truncated) is followed again from its beginning.
+ * <p>
+ * Refreshed models are published as immutable snapshots, through
+ * {@link #publish()} or at a configurable interval once {@link #start()} is
+ * called, and readers keep generating from the latest snapshot while the model
+ * grows. Snapshots end each file text where it currently stops, so generation
+ * can reach the final state. When a checkpoint file is set, the read offsets,
+ * prefix contexts and the model itself are saved with every snapshot, so a
+ * restarted ingester resumes exactly where the previous one stopped.
+ * </p>
+ * <p>
+ * Publishing is incremental: snapshots share the states of the model, which
+ * are copied on their next change, so a snapshot costs a copy of the state
+ * references plus the states changed since the previous one. Likewise the
+ * checkpoint only gets the states changed since the previous snapshot
+ * appended as a delta record, and it's rewritten in full (atomically
+ * replacing the previous one) only when its deltas outgrow the full model,
+ * which bounds the checkpoint to about twice the size of the model. A delta
+ * left incomplete by a crash is detected by its checksum and discarded.
+ * </p>
+ * <p>
+ * The prefix length, token strategy and source charset are taken from a
+ * {@link MarkovChainBuilder}. Lines are split at the byte {@code '\n'}, so the
+ * charset must encode it as a single byte (such as UTF-8 or ISO-8859-1).
+ * </p>
+ *
+ * @author <a href="mailto:alegermer@gmail.com">Alessandro Germer</a>
+ */
+public class TailFollowIngester implements AutoCloseable {
+
+	/**
+	 * Default interval ({@value} ms) between reads of the sources if no other
+	 * specified through {@link #setPollInterval}.
+	 */
+	public static final long DEFAULT_POLL_INTERVAL = 1000;
+	/**
+	 * Default interval ({@value} ms) between published snapshots if no other
+	 * specified through {@link #setSnapshotInterval}.
+	 */
+	public static final long DEFAULT_SNAPSHOT_INTERVAL = 10000;
+
+	// "MKCP" magic number and version of the checkpoint format.
+	private static final int CHECKPOINT_MAGIC = 0x4D4B4350;
+	private static final int CHECKPOINT_VERSION = 3;
+	private static final int INITIAL_BUFFER_SIZE = 1 << 16;
+	private static final int IO_BUFFER_SIZE = 1 << 16;
+
+	private final int prefixLength;
+	private final TokenStrategy tokenStrategy;
+	private final Charset charset;
+	private final List<File> sources;
+	private File checkpointFile;
+	private long pollInterval;
+	private long snapshotInterval;
+	private final List<Consumer<MarkovChain>> listeners = new CopyOnWriteArrayList<>();
+
+	// The growing state map (guarded by this).
+	private final Map<Prefix, WeightedSuffixes> stateMap = new LinkedHashMap<>();
+	// Read position of each followed file, by absolute path (guarded by this).
+	private final Map<String, Cursor> cursors = new LinkedHashMap<>();
+	// Read buffer, grown for lines longer than its capacity (guarded by this).
+	private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+	// Whether the checkpoint was restored, done on first use (guarded by this).
+	private boolean restored = false;
+	// Whether tokens were consumed since the last snapshot (guarded by this).
+	private boolean changed = true;
+	private long lastPublish = 0;
+	// States changed since the last snapshot, the other ones are shared with
+	// it (guarded by this).
+	private final Set<Prefix> touched = new HashSet<>();
+	// Checkpoint length, and length up to its full record (guarded by this).
+	private long checkpointLength = 0;
+	private long fullCheckpointLength = 0;
+
+	private volatile MarkovChain snapshot;
+	private volatile RuntimeException lastFailure;
+	private ScheduledExecutorService executor;
+
+	/**
+	 * Identity, read position and prefix context of a followed file.
+	 */
+	private static class Cursor {
+		private String identity;
+		private long offset;
+		private Prefix prefix;
+
+		private Cursor(String identity, long offset, Prefix prefix) {
+			this.identity = identity;
+			this.offset = offset;
+			this.prefix = prefix;
+		}
+	}
+
+	/**
+	 * Constructs an ingester following the given sources, with the prefix
+	 * length, token strategy and source charset of the given builder.
+	 *
+	 * @param builder the {@link MarkovChainBuilder} providing the model
+	 *            parameters (read once, other parameters are ignored).
+	 * @param sources the files or directories to be followed, which may not
+	 *            exist yet.
+	 *
+	 * @throws NullPointerException if the builder or any source is null.
+	 * @throws IllegalArgumentException if no source is given.
+	 */
+	public TailFollowIngester(MarkovChainBuilder builder, File... sources) {
+		if (builder == null) {
+			throw new NullPointerException("The specified MarkovChainBuilder must be not null.");
+		}
+		if (sources.length == 0) {
+			throw new IllegalArgumentException("At least one source must be specified.");
+		}
+		for (File source : sources) {
+			if (source == null) {
+				throw new NullPointerException("The specified sources must be not null.");
+			}
+		}
+		this.prefixLength = builder.getPrefixLength();
+		this.tokenStrategy = builder.getTokenStrategy();
+		this.charset = builder.getSourceCharset();
+		this.sources = Arrays.asList(sources.clone());
+		this.pollInterval = DEFAULT_POLL_INTERVAL;
+		this.snapshotInterval = DEFAULT_SNAPSHOT_INTERVAL;
+	}
+
+	/**
+	 * Sets the checkpoint file, restored on the first read and saved with
+	 * every snapshot. By default no checkpoint is kept. If the file is inside
+	 * a followed directory it isn't ingested.
+	 *
+	 * @param file the checkpoint file, or null to disable checkpoints.
+	 * @return this {@link TailFollowIngester} for method call chaining.
+	 */
+	public synchronized TailFollowIngester setCheckpointFile(File file) {
+		this.checkpointFile = file;
+		this.checkpointLength = 0;
+
+		return this;
+	}
+
+	/**
+	 * Sets the interval between reads of the sources once {@link #start()} is
+	 * called, default value is {@value #DEFAULT_POLL_INTERVAL} ms.
+	 *
+	 * @param millis the poll interval in milliseconds.
+	 * @return this {@link TailFollowIngester} for method call chaining.
+	 *
+	 * @throws IllegalArgumentException if the interval isn't greater than 0.
+	 */
+	public synchronized TailFollowIngester setPollInterval(long millis) {
+		if (millis <= 0) {
+			throw new IllegalArgumentException("Poll interval must be greater than 0.");
+		}
+		this.pollInterval = millis;
+
+		return this;
+	}
+
+	/**
+	 * Sets the minimum interval between snapshots published once
+	 * {@link #start()} is called, default value is
+	 * {@value #DEFAULT_SNAPSHOT_INTERVAL} ms. Snapshots are only published when
+	 * new tokens were read.
+	 *
+	 * @param millis the snapshot interval in milliseconds.
+	 * @return this {@link TailFollowIngester} for method call chaining.
+	 *
+	 * @throws IllegalArgumentException if the interval isn't greater than 0.
+	 */
+	public synchronized TailFollowIngester setSnapshotInterval(long millis) {
+		if (millis <= 0) {
+			throw new IllegalArgumentException("Snapshot interval must be greater than 0.");
+		}
+		this.snapshotInterval = millis;
+
+		return this;
+	}
+
+	/**
+	 * Adds a listener notified of every published snapshot, in the thread
+	 * publishing it and without holding the lock of the ingester, so slow
+	 * listeners never block reads.
+	 *
+	 * @param listener the snapshot {@link Consumer}.
+	 * @return this {@link TailFollowIngester} for method call chaining.
+	 *
+	 * @throws NullPointerException if the given listener is null.
+	 */
+	public TailFollowIngester addSnapshotListener(Consumer<MarkovChain> listener) {
+		if (listener == null) {
+			throw new NullPointerException("The specified listener must be not null.");
+		}
+		listeners.add(listener);
+
+		return this;
+	}
+
+	/**
+	 * Gets the latest published snapshot.
+	 *
+	 * @return the latest {@link MarkovChain} snapshot, null if none was
+	 *         published yet.
+	 */
+	public MarkovChain getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * Gets the last failure of the background reads started by
+	 * {@link #start()}, which keep being retried at every poll interval.
+	 *
+	 * @return the last failure, null if the last poll succeeded.
+	 */
+	public RuntimeException getLastFailure() {
+		return lastFailure;
+	}
+
+	/**
+	 * Starts following the sources in a background (daemon) thread, reading
+	 * them at every poll interval and publishing snapshots at every snapshot
+	 * interval, the first one right after the first read.
+	 *
+	 * @return this {@link TailFollowIngester} for method call chaining.
+	 *
+	 * @throws IllegalStateException if already started.
+	 */
+	public synchronized TailFollowIngester start() {
+		if (executor != null) {
+			throw new IllegalStateException("The ingester was already started.");
+		}
+		executor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "markov-tail-follow");
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.scheduleWithFixedDelay(this::tick, 0, pollInterval, TimeUnit.MILLISECONDS);
+
+		return this;
+	}
+
+	private void tick() {
+		try {
+			poll();
+			boolean due;
+			synchronized (this) {
+				due = changed && System.currentTimeMillis() - lastPublish >= snapshotInterval;
+			}
+			// Outside the lock, so listeners never run holding it.
+			if (due) {
+				publish();
+			}
+			lastFailure = null;
+		} catch (RuntimeException e) {
+			lastFailure = e;
+		}
+	}
+
+	/**
+	 * Reads all complete lines appended to the sources since the previous
+	 * read, restoring the checkpoint (if any) on the first call.
+	 *
+	 * @return true if any token was read.
+	 *
+	 * @throws UncheckedIOException if a source or the checkpoint can't be
+	 *             read.
+	 * @throws IllegalStateException if the checkpoint was saved with a
+	 *             different prefix length.
+	 */
+	public synchronized boolean poll() {
+		try {
+			restore();
+			boolean read = false;
+			for (File file : listFiles()) {
+				read |= ingest(file);
+			}
+			changed |= read;
+			return read;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Publishes a snapshot of the current model (saving the checkpoint if
+	 * set) and notifies the listeners.
+	 *
+	 * @return the new {@link MarkovChain} snapshot.
+	 *
+	 * @throws UncheckedIOException if the checkpoint can't be read or written.
+	 * @throws IllegalStateException if the checkpoint was saved with a
+	 *             different prefix length.
+	 */
+	public MarkovChain publish() {
+		MarkovChain chain;
+		synchronized (this) {
+			try {
+				restore();
+				chain = new MarkovChain(prefixLength, tokenStrategy, snapshotStateMap(), null);
+				if (checkpointFile != null) {
+					saveCheckpoint();
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			snapshot = chain;
+			touched.clear();
+			changed = false;
+			lastPublish = System.currentTimeMillis();
+		}
+		for (Consumer<MarkovChain> listener : listeners) {
+			listener.accept(chain);
+		}
+		return chain;
+	}
+
+	/**
+	 * Stops the background reads (if started) and publishes a last snapshot
+	 * if new tokens were read since the previous one, so the checkpoint holds
+	 * everything read.
+	 *
+	 * @throws UncheckedIOException if the checkpoint can't be written.
+	 */
+	@Override
+	public void close() {
+		ScheduledExecutorService e;
+		synchronized (this) {
+			e = executor;
+		}
+		if (e != null) {
+			e.shutdown();
+			try {
+				e.awaitTermination(1, TimeUnit.MINUTES);
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		boolean pending;
+		synchronized (this) {
+			pending = changed && restored;
+		}
+		if (pending) {
+			publish();
+		}
+	}
+
+	private List<File> listFiles() {
+		List<File> files = new ArrayList<>();
+		for (File source : sources) {
+			if (source.isDirectory()) {
+				File[] children = source.listFiles(File::isFile);
+				if (children != null) {
+					Arrays.sort(children);
+					for (File child : children) {
+						if (!isCheckpoint(child)) {
+							files.add(child);
+						}
+					}
+				}
+			} else if (source.isFile()) {
+				files.add(source);
+			}
+		}
+		return files;
+	}
+
+	private boolean isCheckpoint(File file) {
+		return checkpointFile != null && (file.getAbsoluteFile().equals(checkpointFile.getAbsoluteFile())
+				|| file.getAbsoluteFile().equals(temporaryCheckpointFile().getAbsoluteFile()));
+	}
+
+	/**
+	 * Reads the complete lines appended to a file since the previous read.
+	 */
+	private boolean ingest(File file) throws IOException {
+		String identity = identityOf(file);
+		Cursor cursor = cursors.computeIfAbsent(file.getAbsolutePath(),
+				k -> new Cursor(identity, 0, new Prefix(prefixLength)));
+		boolean read = false;
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (!identity.equals(cursor.identity) || size < cursor.offset) {
+				// Rotated or truncated, its previous text has ended.
+				endText(cursor);
+				cursor.identity = identity;
+				cursor.offset = 0;
+			}
+
+			while (cursor.offset < size) {
+				buffer.clear();
+				while (buffer.hasRemaining() && channel.read(buffer, cursor.offset + buffer.position()) > 0) {
+					// Fill the buffer as much as possible.
+				}
+
+				int lineEnd = buffer.position() - 1;
+				while (lineEnd >= 0 && buffer.get(lineEnd) != '\n') {
+					lineEnd--;
+				}
+				if (lineEnd < 0) {
+					if (buffer.hasRemaining()) {
+						break; // incomplete line, wait for the rest.
+					}
+					buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+					continue;
+				}
+
+				buffer.flip().limit(lineEnd + 1);
+				CharBuffer lines = charset.decode(buffer);
+				Matcher matcher = tokenStrategy.getPattern().matcher(lines);
+				while (matcher.find()) {
+					consume(cursor, matcher.group(1));
+					read = true;
+				}
+				cursor.offset += lineEnd + 1;
+			}
+		}
+		return read;
+	}
+
+	/**
+	 * Gets the identity of a file, which changes when another file takes its
+	 * name: its file key (such as device and inode), or its creation time if
+	 * the file system has no file keys.
+	 */
+	private static String identityOf(File file) throws IOException {
+		BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+		return attributes.fileKey() != null ? attributes.fileKey().toString()
+				: attributes.creationTime().toString();
+	}
+
+	private void consume(Cursor cursor, String token) {
+		WeightedSuffixes suffixes = stateMap.get(cursor.prefix);
+		if (touched.add(cursor.prefix)) {
+			// First change since the last snapshot, which may share the state.
+			suffixes = copyOf(suffixes);
+			stateMap.put(cursor.prefix, suffixes);
+		}
+		suffixes.add(token);
+		cursor.prefix = cursor.prefix.createNext(token);
+	}
+
+	private static WeightedSuffixes copyOf(WeightedSuffixes suffixes) {
+		WeightedSuffixes copy = new WeightedSuffixes();
+		if (suffixes != null) {
+			for (Entry<String, Integer> suffix : suffixes.getSuffixMap().entrySet()) {
+				copy.add(suffix.getKey(), suffix.getValue());
+			}
+		}
+		return copy;
+	}
+
+	/**
+	 * Ends the text read so far from a file, adding the final state transition
+	 * to its current prefix and resetting it.
+	 */
+	private void endText(Cursor cursor) {
+		if (hasTokens(cursor.prefix)) {
+			consume(cursor, null);
+			changed = true;
+		}
+		cursor.prefix = new Prefix(prefixLength);
+	}
+
+	private static boolean hasTokens(Prefix prefix) {
+		String[] tokens = prefix.getTokens();
+		return tokens[tokens.length - 1] != null;
+	}
+
+	/**
+	 * Copies the state map for a snapshot, sharing its states, and adds the
+	 * final state transition where each file text currently stops.
+	 */
+	private Map<Prefix, WeightedSuffixes> snapshotStateMap() {
+		Map<Prefix, WeightedSuffixes> copy = new LinkedHashMap<>(stateMap);
+		for (Cursor cursor : cursors.values()) {
+			if (hasTokens(cursor.prefix)) {
+				WeightedSuffixes suffixes = copyOf(copy.get(cursor.prefix));
+				suffixes.add(null);
+				copy.put(cursor.prefix, suffixes);
+			}
+		}
+		return copy;
+	}
+
+	private File temporaryCheckpointFile() {
+		return new File(checkpointFile.getAbsoluteFile().getParentFile(), checkpointFile.getName() + ".tmp");
+	}
+
+	/**
+	 * Appends the states changed since the last snapshot to the checkpoint,
+	 * or rewrites it in full when missing or when its deltas would outgrow
+	 * its full record.
+	 */
+	private void saveCheckpoint() throws IOException {
+		if (checkpointLength == 0 || checkpointLength > 2 * fullCheckpointLength || !checkpointFile.isFile()) {
+			saveFullCheckpoint();
+			return;
+		}
+
+		ByteArrayOutputStream delta = new ByteArrayOutputStream();
+		writeRecord(delta, touched);
+		try (FileChannel channel = FileChannel.open(checkpointFile.toPath(), StandardOpenOption.WRITE)) {
+			// Drops an incomplete delta left by a crash, if any.
+			channel.truncate(checkpointLength);
+			ByteBuffer bytes = ByteBuffer.wrap(delta.toByteArray());
+			while (bytes.hasRemaining()) {
+				channel.write(bytes, checkpointLength + bytes.position());
+			}
+		}
+		checkpointLength += delta.size();
+	}
+
+	/**
+	 * Writes the whole checkpoint to a temporary file and atomically moves it
+	 * over the previous one.
+	 */
+	private void saveFullCheckpoint() throws IOException {
+		File temporary = temporaryCheckpointFile();
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(temporary), IO_BUFFER_SIZE))) {
+			out.writeInt(CHECKPOINT_MAGIC);
+			out.writeInt(CHECKPOINT_VERSION);
+			out.writeInt(prefixLength);
+			writeRecord(out, stateMap.keySet());
+		}
+		long length = temporary.length();
+		Files.move(temporary.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		checkpointLength = length;
+		fullCheckpointLength = length;
+	}
+
+	/**
+	 * Writes a checkpoint record: all the cursors, the given states and the
+	 * CRC-32 checksum of the record.
+	 */
+	private void writeRecord(OutputStream os, Collection<Prefix> states) throws IOException {
+		CheckedOutputStream checked = new CheckedOutputStream(os, new CRC32());
+		DataOutputStream out = new DataOutputStream(checked);
+		out.writeInt(cursors.size());
+		for (Entry<String, Cursor> cursor : cursors.entrySet()) {
+			out.writeUTF(cursor.getKey());
+			out.writeUTF(cursor.getValue().identity);
+			out.writeLong(cursor.getValue().offset);
+			for (String token : cursor.getValue().prefix.getTokens()) {
+				StateRecordCodec.writeToken(out, token);
+			}
+		}
+		out.writeInt(states.size());
+		for (Prefix state : states) {
+			StateRecordCodec.write(out, state, stateMap.get(state));
+		}
+		new DataOutputStream(os).writeLong(checked.getChecksum().getValue());
+	}
+
+	/**
+	 * Reads a checkpoint record into the given maps, replacing the cursors
+	 * and states of the previous records.
+	 *
+	 * @return false if the record is incomplete or doesn't match its checksum,
+	 *         leaving the maps untouched.
+	 */
+	private boolean readRecord(InputStream is, Map<String, Cursor> restoredCursors,
+			Map<Prefix, WeightedSuffixes> restoredStates) throws IOException {
+		CheckedInputStream checked = new CheckedInputStream(is, new CRC32());
+		DataInputStream in = new DataInputStream(checked);
+		Map<String, Cursor> recordCursors = new LinkedHashMap<>();
+		Map<Prefix, WeightedSuffixes> recordStates = new LinkedHashMap<>();
+		try {
+			for (int i = in.readInt(); i > 0; i--) {
+				String path = in.readUTF();
+				String identity = in.readUTF();
+				long offset = in.readLong();
+				Prefix prefix = new Prefix(prefixLength);
+				for (int t = 0; t < prefixLength; t++) {
+					prefix.shiftLeft(StateRecordCodec.readToken(in));
+				}
+				recordCursors.put(path, new Cursor(identity, offset, prefix));
+			}
+			for (int i = in.readInt(); i > 0; i--) {
+				Entry<Prefix, WeightedSuffixes> state = StateRecordCodec.read(in, prefixLength);
+				recordStates.put(state.getKey(), state.getValue());
+			}
+			if (new DataInputStream(is).readLong() != checked.getChecksum().getValue()) {
+				return false;
+			}
+		} catch (EOFException e) {
+			return false;
+		}
+		restoredCursors.clear();
+		restoredCursors.putAll(recordCursors);
+		restoredStates.putAll(recordStates);
+		return true;
+	}
+
+	/**
+	 * Restores the checkpoint once, if set and existing. The checkpoint is
+	 * read in full before replacing the current state, and a failed restore
+	 * is retried (failing again) on every later call instead of being
+	 * skipped, so an unreadable checkpoint is never overwritten. An incomplete
+	 * last delta is ignored, and dropped by the next save.
+	 */
+	private void restore() throws IOException {
+		if (restored) {
+			return;
+		}
+		if (checkpointFile == null || !checkpointFile.isFile()) {
+			restored = true;
+			return;
+		}
+
+		Map<String, Cursor> restoredCursors = new LinkedHashMap<>();
+		Map<Prefix, WeightedSuffixes> restoredStates = new LinkedHashMap<>();
+		long fullLength;
+		long length;
+		try (CountingInputStream counter = new CountingInputStream(
+				new BufferedInputStream(new FileInputStream(checkpointFile), IO_BUFFER_SIZE))) {
+			DataInputStream in = new DataInputStream(counter);
+			if (in.readInt() != CHECKPOINT_MAGIC) {
+				throw new IllegalStateException("Not a checkpoint file: " + checkpointFile);
+			}
+			int version = in.readInt();
+			if (version != CHECKPOINT_VERSION) {
+				throw new IllegalStateException("Unsupported checkpoint version " + version + ": " + checkpointFile);
+			}
+			int checkpointPrefixLength = in.readInt();
+			if (checkpointPrefixLength != prefixLength) {
+				throw new IllegalStateException("The checkpoint was saved with prefix length "
+						+ checkpointPrefixLength + " instead of " + prefixLength + ".");
+			}
+			if (!readRecord(counter, restoredCursors, restoredStates)) {
+				throw new IOException("Corrupt checkpoint file: " + checkpointFile);
+			}
+			fullLength = counter.getCount();
+			length = fullLength;
+			while (length < checkpointFile.length() && readRecord(counter, restoredCursors, restoredStates)) {
+				length = counter.getCount();
+			}
+		}
+		cursors.putAll(restoredCursors);
+		stateMap.putAll(restoredStates);
+		checkpointLength = length;
+		fullCheckpointLength = fullLength;
+		restored = true;
+	}
+}
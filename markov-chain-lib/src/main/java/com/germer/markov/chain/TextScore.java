@@ -0,0 +1,74 @@
+package com.germer.markov.chain;
+
+/**
+ * Outcome of scoring a text against a {@link MarkovChain} (see
+ * {@link TextScorer}): the natural log-probability of the chain generating the
+ * text, its ending inclusive, and the derived perplexity per transition. Higher
+ * log-probabilities and lower perplexities mean more plausible texts. Instances
+ * are immutable and meant to be serialized (e.g. as JSON) by their public
+ * getters.
+ *
+ * @author <a href="mailto:alegermer@gmail.com">Alessandro Germer</a>
+ */
+public class TextScore {
+
+	private final long tokens;
+	private final long unseenTransitions;
+	private final double logProbability;
+
+	TextScore(long tokens, long unseenTransitions, double logProbability) {
+		this.tokens = tokens;
+		this.unseenTransitions = unseenTransitions;
+		this.logProbability = logProbability;
+	}
+
+	/**
+	 * Gets the number of tokens of the text.
+	 *
+	 * @return the amount of tokens.
+	 */
+	public long getTokens() {
+		return tokens;
+	}
+
+	/**
+	 * Gets the number of scored transitions, one per token plus the ending of
+	 * the text.
+	 *
+	 * @return the amount of transitions.
+	 */
+	public long getTransitions() {
+		return tokens + 1;
+	}
+
+	/**
+	 * Gets the number of transitions never seen in the source of the chain,
+	 * only scored thanks to smoothing.
+	 *
+	 * @return the amount of unseen transitions.
+	 */
+	public long getUnseenTransitions() {
+		return unseenTransitions;
+	}
+
+	/**
+	 * Gets the natural log-probability of the text, negative infinity if it
+	 * has unseen transitions and no smoothing was applied.
+	 *
+	 * @return the log-probability.
+	 */
+	public double getLogProbability() {
+		return logProbability;
+	}
+
+	/**
+	 * Gets the perplexity of the text, the inverse of the geometric mean of
+	 * its transition probabilities (1 for a text the chain can only generate
+	 * that way).
+	 *
+	 * @return the perplexity.
+	 */
+	public double getPerplexity() {
+		return Math.exp(-logProbability / getTransitions());
+	}
+}
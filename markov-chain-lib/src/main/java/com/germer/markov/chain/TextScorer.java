@@ -0,0 +1,264 @@
+package com.germer.markov.chain;
+
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Scores texts by how plausible a {@link MarkovChain} finds them, tokenizing
+ * them with the {@link TokenStrategy} of the chain and adding up the log of
+ * each transition probability (see {@link TextScore}). Instances are created
+ * through {@link MarkovChain#scorer()}.
+ * <p>
+ * Transitions never seen in the source of the chain would make any text
+ * containing them impossible, so probabilities are smoothed (additive or
+ * Lidstone smoothing): a transition seen {@code c} times from a state seen
+ * {@code n} times has probability {@code (c + a) / (n + a * V)}, where
+ * {@code a} is the smoothing set through {@link #setSmoothing} and {@code V}
+ * the number of distinct suffixes of the chain. Scorers should be configured
+ * before being shared among threads.
+ * </p>
+ * <p>
+ * Many texts can be scored in parallel through {@link #scoreAll}, each thread
+ * reusing its tokenizer and lookup buffers across texts, and texts too long to
+ * fit in memory can be streamed through {@link #score(Reader)}.
+ * </p>
+ *
+ * @author <a href="mailto:alegermer@gmail.com">Alessandro Germer</a>
+ */
+public class TextScorer {
+
+	/**
+	 * Default smoothing of transition probabilities.
+	 */
+	public static final double DEFAULT_SMOOTHING = 0.01;
+
+	/**
+	 * Number of texts scored in sequence by the same thread in
+	 * {@link #scoreAll}.
+	 */
+	private static final int BATCH_SIZE = 16;
+
+	private final MarkovChain chain;
+	private double smoothing = DEFAULT_SMOOTHING;
+
+	/**
+	 * Per-thread scoring buffers, reused across texts.
+	 */
+	private class Cursor {
+		private final Pattern pattern = chain.getTokenStrategy().getPattern();
+		private final Matcher matcher = pattern.matcher("");
+		private final Prefix prefix = new Prefix(chain.getPrefixLength());
+		// Smoothed weight of the suffixes of any state.
+		private final double smoothedVocabulary = smoothing * chain.getVocabularySize();
+		private long tokens;
+		private long unseenTransitions;
+		private double logProbability;
+
+		private TextScore score(CharSequence text) {
+			begin();
+			matcher.reset(text);
+			while (matcher.find()) {
+				consume(matcher.group(1));
+			}
+			matcher.reset("");
+			return end();
+		}
+
+		private TextScore score(Reader reader) {
+			begin();
+			// Not closed, which would close the reader.
+			Scanner s = new Scanner(reader);
+			while (s.findWithinHorizon(pattern, 0) != null) {
+				consume(s.match().group(1));
+			}
+			if (s.ioException() != null) {
+				throw new UncheckedIOException(s.ioException());
+			}
+			return end();
+		}
+
+		private void begin() {
+			for (int i = 0; i < chain.getPrefixLength(); i++) {
+				prefix.shiftLeft(null);
+			}
+			tokens = 0;
+			unseenTransitions = 0;
+			logProbability = 0;
+		}
+
+		private TextScore end() {
+			consume(null);
+			return new TextScore(tokens, unseenTransitions, logProbability);
+		}
+
+		/**
+		 * Scores the transition from the current prefix to the given token
+		 * (null for the ending of the text).
+		 */
+		private void consume(String token) {
+			int count = 0;
+			int total = 0;
+			WeightedSuffixes suffixes = chain.getSuffixes(prefix);
+			if (suffixes != null) {
+				count = suffixes.getSuffixMap().getOrDefault(token, 0);
+				total = suffixes.getTotalWeight();
+			}
+			if (count == 0) {
+				unseenTransitions++;
+			}
+			double denominator = total + smoothedVocabulary;
+			logProbability += denominator > 0 ? Math.log((count + smoothing) / denominator) : Double.NEGATIVE_INFINITY;
+
+			if (token != null) {
+				tokens++;
+				prefix.shiftLeft(token);
+			}
+		}
+	}
+
+	/**
+	 * Recursively splits a list of texts, scoring batches of them in sequence
+	 * with the same {@link Cursor}.
+	 */
+	private class BatchTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final List<? extends CharSequence> texts;
+		private final TextScore[] scores;
+		private final int low;
+		private final int high;
+
+		private BatchTask(List<? extends CharSequence> texts, TextScore[] scores, int low, int high) {
+			this.texts = texts;
+			this.scores = scores;
+			this.low = low;
+			this.high = high;
+		}
+
+		@Override
+		protected void compute() {
+			if (high - low <= BATCH_SIZE) {
+				Cursor cursor = new Cursor();
+				for (int i = low; i < high; i++) {
+					scores[i] = cursor.score(texts.get(i));
+				}
+			} else {
+				int mid = (low + high) >>> 1;
+				invokeAll(new BatchTask(texts, scores, low, mid), new BatchTask(texts, scores, mid, high));
+			}
+		}
+	}
+
+	/**
+	 * Creates a scorer of texts against the given chain.
+	 *
+	 * @param chain the scoring {@link MarkovChain}.
+	 */
+	TextScorer(MarkovChain chain) {
+		this.chain = chain;
+	}
+
+	/**
+	 * Sets the additive smoothing of transition probabilities, 0 to disable
+	 * it (texts with unseen transitions get a log-probability of negative
+	 * infinity). Defaults to {@link #DEFAULT_SMOOTHING}.
+	 *
+	 * @param smoothing the pseudo-count added to every transition.
+	 * @return this {@link TextScorer} instance.
+	 * @throws IllegalArgumentException if the smoothing is negative or not
+	 *             finite.
+	 */
+	public TextScorer setSmoothing(double smoothing) {
+		if (!(smoothing >= 0) || Double.isInfinite(smoothing)) {
+			throw new IllegalArgumentException("The specified smoothing must be finite and not negative.");
+		}
+		this.smoothing = smoothing;
+		return this;
+	}
+
+	/**
+	 * Gets the additive smoothing of transition probabilities.
+	 *
+	 * @return the pseudo-count added to every transition.
+	 */
+	public double getSmoothing() {
+		return smoothing;
+	}
+
+	/**
+	 * Scores a text.
+	 *
+	 * @param text the text to be scored.
+	 * @return the {@link TextScore} of the text.
+	 * @throws NullPointerException if the given text is null.
+	 */
+	public TextScore score(CharSequence text) {
+		if (text == null) {
+			throw new NullPointerException("The specified CharSequence must be not null.");
+		}
+		return new Cursor().score(text);
+	}
+
+	/**
+	 * Scores a text read as a stream, holding only the current token in
+	 * memory. The reader isn't closed.
+	 *
+	 * @param reader the {@link Reader} of the text to be scored.
+	 * @return the {@link TextScore} of the text.
+	 * @throws NullPointerException if the given reader is null.
+	 * @throws UncheckedIOException if the reader fails.
+	 */
+	public TextScore score(Reader reader) {
+		if (reader == null) {
+			throw new NullPointerException("The specified Reader must be not null.");
+		}
+		return new Cursor().score(reader);
+	}
+
+	/**
+	 * Scores many texts in parallel, see {@link #scoreAll(List, ForkJoinPool)},
+	 * running on the common {@link ForkJoinPool}.
+	 *
+	 * @param texts the texts to be scored.
+	 * @return the {@link TextScore} of each text, in the same order.
+	 * @throws NullPointerException if the given list or any text is null.
+	 */
+	public List<TextScore> scoreAll(List<? extends CharSequence> texts) {
+		return scoreAll(texts, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Scores many texts in parallel on the given pool, in batches sharing the
+	 * same buffers.
+	 *
+	 * @param texts the texts to be scored.
+	 * @param pool the {@link ForkJoinPool} running the scoring.
+	 * @return the {@link TextScore} of each text, in the same order.
+	 * @throws NullPointerException if the given list, any text or the pool is
+	 *             null.
+	 */
+	public List<TextScore> scoreAll(List<? extends CharSequence> texts, ForkJoinPool pool) {
+		if (texts == null) {
+			throw new NullPointerException("The specified List must be not null.");
+		}
+		if (pool == null) {
+			throw new NullPointerException("The specified ForkJoinPool must be not null.");
+		}
+		for (CharSequence text : texts) {
+			if (text == null) {
+				throw new NullPointerException("The specified CharSequence must be not null.");
+			}
+		}
+		TextScore[] scores = new TextScore[texts.size()];
+		if (scores.length > 0) {
+			pool.invoke(new BatchTask(texts, scores, 0, scores.length));
+		}
+		return Arrays.asList(scores);
+	}
+}
@@ -0,0 +1,53 @@
+package com.germer.markov.chain;
+
+import java.io.Closeable;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Scanner;
+
+/**
+ * Markov Chain build token stream used internally in the package, decoupling
+ * how a source text is decoded and tokenized from how its tokens are inserted
+ * by {@link MarkovChainBuilder}. Tokens are handed over in source order and
+ * closing the token source closes the underlying stream.
+ *
+ * @author <a href="mailto:alegermer@gmail.com">Alessandro Germer</a>
+ */
+interface TokenSource extends Closeable {
+
+	/**
+	 * Gets the next token of the source.
+	 *
+	 * @return the next token, null at the end of the source.
+	 */
+	String next();
+
+	/**
+	 * Creates a token source decoding and tokenizing on the calling thread,
+	 * through a {@link Scanner}.
+	 *
+	 * @param is the source {@link InputStream}.
+	 * @param charset the source charset.
+	 * @param strategy the {@link TokenStrategy} of the tokens.
+	 * @return the new {@link TokenSource}.
+	 */
+	static TokenSource scanning(InputStream is, Charset charset, TokenStrategy strategy) {
+		/*
+		 * Here the decision to use Scanner instead of a StreamTokenizer was made
+		 * in order to make the algorithm compatible with non-western charsets
+		 * (UTF-8, UTF-16).
+		 */
+		Scanner s = new Scanner(is, charset.name());
+		return new TokenSource() {
+			@Override
+			public String next() {
+				return s.findWithinHorizon(strategy.getPattern(), 0) != null ? s.match().group(1) : null;
+			}
+
+			@Override
+			public void close() {
+				s.close();
+			}
+		};
+	}
+}
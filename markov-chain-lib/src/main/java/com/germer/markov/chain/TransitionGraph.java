@@ -0,0 +1,623 @@
+package com.germer.markov.chain;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compiled, immutable form of a Markov Chain state map used internally in the
+ * package (see {@link MarkovChain#compile()}). States are numbered and laid out
+ * in flat arrays in compressed sparse row form: the edges (suffixes) of each
+ * state are contiguous and hold the suffix token id, the index of the
+ * successor state and the cumulative weight up to the edge. States are
+ * numbered hottest (highest total weight) first and edges are sorted by
+ * descending weight, so the most visited data is packed together and a linear
+ * scan of the cumulative weights usually stops at the first edges.
+ * <p>
+ * A generation walk over this graph is therefore pointer-chasing plus sampling,
+ * with no {@link Prefix} hashing, mutation or per-token allocation. Instances
+ * are thread-safe: they are never modified after construction, and the
+ * derived views used by analysis and generation ({@link #getIncoming()},
+ * {@link #getDistancesToEnd()}, {@link #getLongestWalks()} and
+ * {@link #getTemperedWeights}) are idempotently computed on first use, the
+ * tempered weights being kept for a few temperatures at a time.
+ * </p>
+ *
+ * @author <a href="mailto:alegermer@gmail.com">Alessandro Germer</a>
+ */
+class TransitionGraph {
+
+	/**
+	 * Token id of the null suffix, leading to the final state.
+	 */
+	static final int END_TOKEN = -1;
+
+	/**
+	 * Target of edges without a successor state, either ending the walk or
+	 * leading to a prefix missing from the state map.
+	 */
+	static final int NO_STATE = -1;
+
+	// fanout up to which the cumulative weights are scanned linearly.
+	private static final int LINEAR_SCAN_FANOUT = 8;
+	// temperatures whose cumulative weights are kept at once.
+	static final int MAX_TEMPERED_TABLES = 8;
+
+	// first edge index of each state, plus one trailing entry for the end.
+	private final int[] stateStart;
+	// suffix token id of each edge (END_TOKEN for the final state).
+	private final int[] edgeToken;
+	// successor state index of each edge (NO_STATE if none).
+	private final int[] edgeTarget;
+	// cumulative weight of each edge within its state.
+	private final int[] edgeCumulativeWeight;
+	// token vocabulary indexed by token id.
+	private final String[] tokens;
+	// OriginalityIndex hash of each token, indexed by token id.
+	private final long[] tokenHashes;
+	// prefix of each state.
+	private final Prefix[] prefixes;
+	// index of the state with the empty (all null) prefix, NO_STATE if none.
+	private final int startState;
+
+	// incoming edges view, lazily built on first use.
+	private volatile Incoming incoming;
+	// distances to the end of a walk, lazily computed on first use.
+	private volatile int[] distancesToEnd;
+	// longest walks before the end, lazily computed on first use.
+	private volatile int[] longestWalks;
+	// tempered cumulative weights of each edge by temperature, on first use.
+	private final Map<Double, TemperedTable> temperedWeights = new ConcurrentHashMap<>();
+	// counts tempered table loads, stamping their uses (guarded by itself).
+	private final AtomicLong temperedClock = new AtomicLong();
+
+	/**
+	 * Reverse (incoming edges) view of a {@link TransitionGraph}, also in
+	 * compressed sparse row form.
+	 *
+	 * @author <a href="mailto:alegermer@gmail.com">Alessandro Germer</a>
+	 */
+	static class Incoming {
+		// first incoming entry of each state, plus one trailing entry.
+		private final int[] start;
+		// incoming edge of each entry.
+		private final int[] edges;
+		// source state of each edge, indexed by edge.
+		private final int[] sources;
+
+		private Incoming(TransitionGraph graph) {
+			int states = graph.getStateCount();
+			this.start = new int[states + 1];
+			this.edges = new int[graph.getEdgeCount()];
+			this.sources = new int[graph.getEdgeCount()];
+
+			for (int s = 0; s < states; s++) {
+				for (int edge = graph.stateStart[s]; edge < graph.stateStart[s + 1]; edge++) {
+					sources[edge] = s;
+					if (graph.edgeTarget[edge] != NO_STATE) {
+						start[graph.edgeTarget[edge] + 1]++;
+					}
+				}
+			}
+			for (int s = 0; s < states; s++) {
+				start[s + 1] += start[s];
+			}
+			int[] next = Arrays.copyOf(start, states);
+			for (int edge = 0; edge < edges.length; edge++) {
+				if (graph.edgeTarget[edge] != NO_STATE) {
+					edges[next[graph.edgeTarget[edge]]++] = edge;
+				}
+			}
+		}
+
+		/**
+		 * Gets the first incoming entry of a state, see {@link #getEdge}.
+		 *
+		 * @param state the state index.
+		 * @return the first entry index.
+		 */
+		int getStart(int state) {
+			return start[state];
+		}
+
+		/**
+		 * Gets the end (exclusive) of the incoming entries of a state.
+		 *
+		 * @param state the state index.
+		 * @return the end entry index.
+		 */
+		int getEnd(int state) {
+			return start[state + 1];
+		}
+
+		/**
+		 * Gets the incoming edge of an entry.
+		 *
+		 * @param entry the entry index.
+		 * @return the edge index.
+		 */
+		int getEdge(int entry) {
+			return edges[entry];
+		}
+
+		/**
+		 * Gets the source state of an edge.
+		 *
+		 * @param edge the edge index.
+		 * @return the source state index.
+		 */
+		int getSource(int edge) {
+			return sources[edge];
+		}
+	}
+
+	/**
+	 * Compiles the given state map into a new {@link TransitionGraph}.
+	 *
+	 * @param prefixLength the prefix length of the state map.
+	 * @param stateMap the Map representation of the Markov Chain FSM.
+	 */
+	TransitionGraph(int prefixLength, Map<Prefix, WeightedSuffixes> stateMap) {
+		// Number states hottest first.
+		List<Entry<Prefix, WeightedSuffixes>> states = new ArrayList<>(stateMap.entrySet());
+		states.sort(Comparator.comparingInt(
+				(Entry<Prefix, WeightedSuffixes> e) -> e.getValue().getTotalWeight()).reversed());
+
+		Map<Prefix, Integer> stateIndex = new HashMap<>(states.size() * 4 / 3 + 1);
+		int edges = 0;
+		for (Entry<Prefix, WeightedSuffixes> state : states) {
+			stateIndex.put(state.getKey(), stateIndex.size());
+			edges += state.getValue().getSuffixMap().size();
+		}
+
+		this.prefixes = new Prefix[states.size()];
+		this.stateStart = new int[states.size() + 1];
+		this.edgeToken = new int[edges];
+		this.edgeTarget = new int[edges];
+		this.edgeCumulativeWeight = new int[edges];
+
+		Map<String, Integer> tokenIds = new HashMap<>();
+		List<String> vocabulary = new ArrayList<>();
+		int edge = 0;
+		for (int s = 0; s < states.size(); s++) {
+			stateStart[s] = edge;
+			Prefix prefix = states.get(s).getKey();
+			prefixes[s] = prefix;
+
+			// Hot-first order of edges within the state.
+			List<Entry<String, Integer>> suffixes = new ArrayList<>(states.get(s).getValue().getSuffixMap().entrySet());
+			suffixes.sort(Entry.<String, Integer> comparingByValue().reversed());
+
+			int cumulativeWeight = 0;
+			for (Entry<String, Integer> suffix : suffixes) {
+				String token = suffix.getKey();
+				cumulativeWeight += suffix.getValue();
+				edgeCumulativeWeight[edge] = cumulativeWeight;
+
+				if (token == null) {
+					edgeToken[edge] = END_TOKEN;
+					edgeTarget[edge] = NO_STATE;
+				} else {
+					Integer id = tokenIds.get(token);
+					if (id == null) {
+						id = vocabulary.size();
+						tokenIds.put(token, id);
+						vocabulary.add(token);
+					}
+					edgeToken[edge] = id;
+					edgeTarget[edge] = stateIndex.getOrDefault(prefix.createNext(token), NO_STATE);
+				}
+				edge++;
+			}
+		}
+		stateStart[states.size()] = edge;
+
+		this.tokens = vocabulary.toArray(new String[vocabulary.size()]);
+		this.tokenHashes = new long[tokens.length];
+		for (int t = 0; t < tokens.length; t++) {
+			tokenHashes[t] = OriginalityIndex.hashToken(tokens[t]);
+		}
+		this.startState = stateIndex.getOrDefault(new Prefix(prefixLength), NO_STATE);
+	}
+
+	/**
+	 * Gets the index of the state a generation walk starts from, the one with
+	 * the empty (all null tokens) prefix.
+	 *
+	 * @return the start state index, or {@link #NO_STATE} if the chain is empty.
+	 */
+	int getStartState() {
+		return startState;
+	}
+
+	/**
+	 * Gets the number of states of this graph.
+	 *
+	 * @return the amount of states.
+	 */
+	int getStateCount() {
+		return stateStart.length - 1;
+	}
+
+	/**
+	 * Gets the number of edges (state suffixes) of this graph.
+	 *
+	 * @return the amount of edges.
+	 */
+	int getEdgeCount() {
+		return edgeToken.length;
+	}
+
+	/**
+	 * Gets the first edge index of a state.
+	 *
+	 * @param state the state index.
+	 * @return the index of the first edge of the state.
+	 */
+	int getEdgesStart(int state) {
+		return stateStart[state];
+	}
+
+	/**
+	 * Gets the end (exclusive) edge index of a state.
+	 *
+	 * @param state the state index.
+	 * @return the index following the last edge of the state.
+	 */
+	int getEdgesEnd(int state) {
+		return stateStart[state + 1];
+	}
+
+	/**
+	 * Gets the cumulative weight of the edges of a state up to (and
+	 * including) the given edge.
+	 *
+	 * @param edge the edge index.
+	 * @return the cumulative weight.
+	 */
+	int getCumulativeWeight(int edge) {
+		return edgeCumulativeWeight[edge];
+	}
+
+	/**
+	 * Gets the {@link Prefix} of a state, which must be treated as read-only.
+	 *
+	 * @param state the state index.
+	 * @return the state prefix.
+	 */
+	Prefix getPrefix(int state) {
+		return prefixes[state];
+	}
+
+	/**
+	 * Gets the reverse (incoming edges) view of this graph, built on first use.
+	 *
+	 * @return the {@link Incoming} view.
+	 */
+	Incoming getIncoming() {
+		Incoming in = incoming;
+		if (in == null) {
+			incoming = in = new Incoming(this);
+		}
+		return in;
+	}
+
+	/**
+	 * Gets, for each state, the minimum amount of tokens a walk from it
+	 * generates before it ends, either by reaching the final state, a prefix
+	 * missing from the chain or a state without suffixes. Computed on first
+	 * use by a breadth-first search over the incoming edges.
+	 *
+	 * @return the distances indexed by state, {@link Integer#MAX_VALUE} for
+	 *         states that never end (only cycles reachable). Must be treated
+	 *         as read-only.
+	 */
+	int[] getDistancesToEnd() {
+		int[] d = distancesToEnd;
+		if (d == null) {
+			distancesToEnd = d = computeDistancesToEnd();
+		}
+		return d;
+	}
+
+	private int[] computeDistancesToEnd() {
+		int states = getStateCount();
+		int[] distances = new int[states];
+		Arrays.fill(distances, Integer.MAX_VALUE);
+
+		// Seeds: walks ending right away (0 tokens) or after one token.
+		int[] queue = new int[states];
+		int tail = 0;
+		for (int s = 0; s < states; s++) {
+			boolean ends = stateStart[s] == stateStart[s + 1];
+			for (int edge = stateStart[s]; edge < stateStart[s + 1] && !ends; edge++) {
+				ends = edgeToken[edge] == END_TOKEN;
+			}
+			if (ends) {
+				distances[s] = 0;
+				queue[tail++] = s;
+			}
+		}
+		for (int s = 0; s < states; s++) {
+			for (int edge = stateStart[s]; edge < stateStart[s + 1] && distances[s] > 1; edge++) {
+				if (edgeToken[edge] != END_TOKEN && edgeTarget[edge] == NO_STATE) {
+					distances[s] = 1;
+					queue[tail++] = s;
+				}
+			}
+		}
+
+		// Breadth-first search backwards, the queue is sorted by distance.
+		Incoming in = getIncoming();
+		for (int head = 0; head < tail; head++) {
+			int state = queue[head];
+			for (int entry = in.getStart(state); entry < in.getEnd(state); entry++) {
+				int source = in.getSource(in.getEdge(entry));
+				if (distances[source] > distances[state] + 1) {
+					distances[source] = distances[state] + 1;
+					queue[tail++] = source;
+				}
+			}
+		}
+		return distances;
+	}
+
+	/**
+	 * Gets, for each state, the maximum amount of tokens a walk from it can
+	 * generate before it ends (see {@link #getDistancesToEnd()}). Computed on
+	 * first use by resolving states backwards from those whose edges all end
+	 * the walk, in topological order.
+	 *
+	 * @return the longest walks indexed by state, {@link Integer#MAX_VALUE}
+	 *         for states reaching a cycle (unbounded walks). Must be treated as
+	 *         read-only.
+	 */
+	int[] getLongestWalks() {
+		int[] l = longestWalks;
+		if (l == null) {
+			longestWalks = l = computeLongestWalks();
+		}
+		return l;
+	}
+
+	private int[] computeLongestWalks() {
+		int states = getStateCount();
+		int[] longest = new int[states];
+		Arrays.fill(longest, Integer.MAX_VALUE);
+
+		// Successor edges of each state not resolved yet.
+		int[] pending = new int[states];
+		int[] queue = new int[states];
+		int tail = 0;
+		for (int s = 0; s < states; s++) {
+			for (int edge = stateStart[s]; edge < stateStart[s + 1]; edge++) {
+				if (edgeTarget[edge] != NO_STATE) {
+					pending[s]++;
+				}
+			}
+			if (pending[s] == 0) {
+				queue[tail++] = s;
+			}
+		}
+
+		// States left pending are on or reach a cycle.
+		Incoming in = getIncoming();
+		for (int head = 0; head < tail; head++) {
+			int state = queue[head];
+			int walk = 0;
+			for (int edge = stateStart[state]; edge < stateStart[state + 1]; edge++) {
+				if (edgeToken[edge] != END_TOKEN) {
+					walk = Math.max(walk, edgeTarget[edge] == NO_STATE ? 1 : 1 + longest[edgeTarget[edge]]);
+				}
+			}
+			longest[state] = walk;
+			for (int entry = in.getStart(state); entry < in.getEnd(state); entry++) {
+				int source = in.getSource(in.getEdge(entry));
+				if (--pending[source] == 0) {
+					queue[tail++] = source;
+				}
+			}
+		}
+		return longest;
+	}
+
+	/**
+	 * Gets the total weight of the edges of a state, the exclusive bound of
+	 * the random index given to {@link #sample}.
+	 *
+	 * @param state the state index.
+	 * @return the total weight of the state (0 if it has no edges).
+	 */
+	int getTotalWeight(int state) {
+		int end = stateStart[state + 1];
+		return end == stateStart[state] ? 0 : edgeCumulativeWeight[end - 1];
+	}
+
+	/**
+	 * Selects the edge of a state matching a random index, so edges are
+	 * selected proportionally to their weights when the index is uniformly
+	 * distributed.
+	 *
+	 * @param state the state index.
+	 * @param randomIndex a random index from 0 to the state total weight - 1.
+	 * @return the selected edge index.
+	 */
+	int sample(int state, int randomIndex) {
+		int start = stateStart[state];
+		int end = stateStart[state + 1];
+		if (end - start <= LINEAR_SCAN_FANOUT) {
+			int edge = start;
+			while (edge < end - 1 && edgeCumulativeWeight[edge] <= randomIndex) {
+				edge++;
+			}
+			return edge;
+		}
+		int edge = Arrays.binarySearch(edgeCumulativeWeight, start, end, randomIndex + 1);
+		return edge >= 0 ? edge : -edge - 1;
+	}
+
+	/**
+	 * Selects the edge of a state according to the given
+	 * {@link SamplingOptions}: the edges sampled are truncated to the top-k
+	 * ones, then to the top-p ones by tempered weight, and an edge is selected
+	 * by binary search over their tempered cumulative weights.
+	 *
+	 * @param state the state index, which must have edges.
+	 * @param options the {@link SamplingOptions} of the selection.
+	 * @param random a random number from 0 (inclusive) to 1 (exclusive).
+	 * @return the selected edge index.
+	 */
+	int sample(int state, SamplingOptions options, double random) {
+		double[] cumulative = options.getTemperature() == 1 ? null : getTemperedWeights(options.getTemperature());
+		int start = stateStart[state];
+		int end = stateStart[state + 1];
+		if (options.getTopK() > 0) {
+			end = Math.min(end, start + options.getTopK());
+		}
+		if (options.getTopP() < 1) {
+			// Down to the first edge whose cumulative weight reaches top-p.
+			double threshold = options.getTopP() * weightUpTo(end - 1, cumulative);
+			end = firstAbove(start, end, Math.nextDown(threshold), cumulative) + 1;
+		}
+		return firstAbove(start, end, random * weightUpTo(end - 1, cumulative), cumulative);
+	}
+
+	/**
+	 * Gets the first edge in the given range whose cumulative weight is above
+	 * a value, the last one if none.
+	 */
+	private int firstAbove(int start, int end, double value, double[] cumulative) {
+		int low = start;
+		int high = end - 1;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (weightUpTo(mid, cumulative) > value) {
+				high = mid;
+			} else {
+				low = mid + 1;
+			}
+		}
+		return low;
+	}
+
+	private double weightUpTo(int edge, double[] cumulative) {
+		return cumulative != null ? cumulative[edge] : edgeCumulativeWeight[edge];
+	}
+
+	/**
+	 * Tempered cumulative weights of a temperature, with the value of the
+	 * load counter when it was last used.
+	 */
+	private static class TemperedTable {
+		private final double[] cumulative;
+		private volatile long lastUsed;
+
+		private TemperedTable(double[] cumulative, long lastUsed) {
+			this.cumulative = cumulative;
+			this.lastUsed = lastUsed;
+		}
+	}
+
+	/**
+	 * Gets the cumulative weights of the edges of each state with each weight
+	 * raised to {@code 1 / temperature}, computed once per temperature. Weights
+	 * are scaled by the heaviest edge of their state, so they don't overflow,
+	 * and stay sorted in descending order.
+	 * <p>
+	 * Tables of up to {@value #MAX_TEMPERED_TABLES} temperatures are kept, the
+	 * least recently used one being evicted to load another. Uses are only
+	 * ordered by the loads they follow, so a hit costs a volatile read (and a
+	 * write for the first use after a load) with no locking.
+	 * </p>
+	 *
+	 * @param temperature the sampling temperature.
+	 * @return the tempered cumulative weights indexed by edge. Must be treated
+	 *         as read-only.
+	 */
+	double[] getTemperedWeights(double temperature) {
+		TemperedTable table = temperedWeights.get(temperature);
+		if (table == null) {
+			table = loadTemperedTable(temperature);
+		}
+		long now = temperedClock.get();
+		if (table.lastUsed != now) {
+			table.lastUsed = now;
+		}
+		return table.cumulative;
+	}
+
+	private TemperedTable loadTemperedTable(double temperature) {
+		synchronized (temperedClock) {
+			TemperedTable table = temperedWeights.get(temperature);
+			if (table != null) {
+				return table;
+			}
+			if (temperedWeights.size() >= MAX_TEMPERED_TABLES) {
+				Double eldest = null;
+				long eldestUse = Long.MAX_VALUE;
+				for (Entry<Double, TemperedTable> entry : temperedWeights.entrySet()) {
+					if (entry.getValue().lastUsed < eldestUse) {
+						eldest = entry.getKey();
+						eldestUse = entry.getValue().lastUsed;
+					}
+				}
+				temperedWeights.remove(eldest);
+			}
+			table = new TemperedTable(computeTemperedWeights(temperature), temperedClock.incrementAndGet());
+			temperedWeights.put(temperature, table);
+			return table;
+		}
+	}
+
+	private double[] computeTemperedWeights(double temperature) {
+		double[] cumulative = new double[getEdgeCount()];
+		for (int s = 0; s < getStateCount(); s++) {
+			int start = stateStart[s];
+			double sum = 0;
+			for (int edge = start; edge < stateStart[s + 1]; edge++) {
+				int weight = edgeCumulativeWeight[edge] - (edge == start ? 0 : edgeCumulativeWeight[edge - 1]);
+				sum += Math.pow((double) weight / edgeCumulativeWeight[start], 1 / temperature);
+				cumulative[edge] = sum;
+			}
+		}
+		return cumulative;
+	}
+
+	/**
+	 * Gets the suffix token of an edge.
+	 *
+	 * @param edge the edge index.
+	 * @return the suffix token, null for the final state.
+	 */
+	String getToken(int edge) {
+		int id = edgeToken[edge];
+		return id == END_TOKEN ? null : tokens[id];
+	}
+
+	/**
+	 * Gets the {@link OriginalityIndex#hashToken} hash of the suffix token of an
+	 * edge, which must not lead to the final state.
+	 *
+	 * @param edge the edge index.
+	 * @return the suffix token hash.
+	 */
+	long getTokenHash(int edge) {
+		return tokenHashes[edgeToken[edge]];
+	}
+
+	/**
+	 * Gets the successor state of an edge.
+	 *
+	 * @param edge the edge index.
+	 * @return the successor state index, {@link #NO_STATE} if none.
+	 */
+	int getTarget(int edge) {
+		return edgeTarget[edge];
+	}
+}
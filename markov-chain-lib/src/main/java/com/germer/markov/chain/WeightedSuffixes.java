@@ -1,5 +1,6 @@
 package com.germer.markov.chain;
 
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -22,6 +23,8 @@ class WeightedSuffixes {
 	private String firstSuffix = null;
 	// total weight (count of amount of suffix added).
 	private int totalWeight = 0;
+	// whether this instance is immutable (see frozenCopy).
+	private boolean frozen = false;
 
 	/**
 	 * The pseudo-random generator used by instances to select suffixes among
@@ -39,12 +42,25 @@ class WeightedSuffixes {
 	 * {@link #getRandom} method.
 	 * 
 	 * @param suffix the suffix to be added as a String-token.
+	 * @return true if the suffix wasn't present before (a new distinct suffix).
 	 */
-	public void add(String suffix) {
+	public boolean add(String suffix) {
+		return add(suffix, 1);
+	}
+
+	/**
+	 * Adds a suffix to the collection with a given weight, as if it was added
+	 * that many times through {@link #add(String)}. Used when merging
+	 * statistics collected elsewhere.
+	 * 
+	 * @param suffix the suffix to be added as a String-token.
+	 * @param weight the number of occurrences to be added (greater than 0).
+	 * @return true if the suffix wasn't present before (a new distinct suffix).
+	 */
+	boolean add(String suffix, int weight) {
 		// Add (or replace) suffix to the map incrementing its weight.
-		Integer weight = getSuffixMap().getOrDefault(suffix, 0) + 1;
-		getSuffixMap().put(suffix, weight);
-		totalWeight++;
+		Integer previous = getSuffixMap().put(suffix, getSuffixMap().getOrDefault(suffix, 0) + weight);
+		totalWeight += weight;
 
 		/*
 		 * Store first suffix added in a dedicated attribute for performance
@@ -53,6 +69,42 @@ class WeightedSuffixes {
 		if (firstSuffix == null) {
 			firstSuffix = suffix;
 		}
+
+		return previous == null;
+	}
+
+	/**
+	 * Creates an immutable copy of this instance, which can be shared among
+	 * states with the same suffix distribution. The copy selects suffixes
+	 * exactly like this instance (same order and weights), its map is sized to
+	 * its content (a singleton map for a single suffix) and any later
+	 * {@link #add} throws an {@link UnsupportedOperationException}.
+	 * 
+	 * @return the frozen copy.
+	 */
+	WeightedSuffixes frozenCopy() {
+		WeightedSuffixes copy = new WeightedSuffixes();
+		if (suffixMap.size() == 1) {
+			Entry<String, Integer> suffix = suffixMap.entrySet().iterator().next();
+			copy.suffixMap = Collections.singletonMap(suffix.getKey(), suffix.getValue());
+		} else {
+			Map<String, Integer> map = new LinkedHashMap<>(suffixMap.size() * 4 / 3 + 1);
+			map.putAll(suffixMap);
+			copy.suffixMap = Collections.unmodifiableMap(map);
+		}
+		copy.firstSuffix = firstSuffix;
+		copy.totalWeight = totalWeight;
+		copy.frozen = true;
+		return copy;
+	}
+
+	/**
+	 * Checks whether this instance is immutable, see {@link #frozenCopy()}.
+	 * 
+	 * @return true if frozen.
+	 */
+	boolean isFrozen() {
+		return frozen;
 	}
 
 	/**
@@ -83,7 +135,10 @@ class WeightedSuffixes {
 		if (getSuffixMap().size() == 1) {
 			randomSuffix = firstSuffix;
 		} else if (getSuffixMap().size() > 1) {
+			// Flight Recorder event, only sampled for high-fanout states.
+			SuffixSamplingEvent event = SuffixSamplingEvent.sample(getSuffixMap().size());
 			int randomIndex = generateRandomIndex();
+			int scanned = 0;
 
 			for (Entry<String, Integer> suffix : getSuffixMap().entrySet()) {
 				/*
@@ -92,12 +147,19 @@ class WeightedSuffixes {
 				 * the result goes negative.
 				 */
 				randomIndex -= suffix.getValue();
+				scanned++;
 
 				if (randomIndex < 0) {
 					randomSuffix = suffix.getKey();
 					break;
 				}
 			}
+
+			if (event != null) {
+				event.totalWeight = getTotalWeight();
+				event.scanned = scanned;
+				event.commit();
+			}
 		}
 
 		return randomSuffix;
@@ -0,0 +1,101 @@
+package com.germer.markov.chain;
+
+import static org.junit.Assert.*;
+
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Scanner;
+
+import org.junit.Test;
+
+public class ApproximateStateTableTest {
+
+	private Map<Prefix, WeightedSuffixes> exactStates(int prefixLength) {
+		InputStream is = this.getClass().getResourceAsStream("/the-beatitudes.txt");
+		Map<Prefix, WeightedSuffixes> states = new HashMap<>();
+		for (MarkovChain.State state : new MarkovChainBuilder().setPrefixLength(prefixLength)
+				.setSourceCharset(Charset.forName("UTF-8")).build(is).getStates()) {
+			Prefix prefix = new Prefix(prefixLength);
+			state.getPrefix().forEach(prefix::shiftLeft);
+			WeightedSuffixes suffixes = new WeightedSuffixes();
+			for (int i = 0; i < state.getSuffixes().size(); i++) {
+				suffixes.add(state.getSuffixes().get(i), state.getSuffixesWeights().get(i));
+			}
+			states.put(prefix, suffixes);
+		}
+		return states;
+	}
+
+	private Map<Prefix, WeightedSuffixes> approximateStates(int prefixLength, long memoryBytes) {
+		ApproximateStateTable table = new ApproximateStateTable(prefixLength, 8, memoryBytes);
+		try (Scanner s = new Scanner(this.getClass().getResourceAsStream("/the-beatitudes.txt"),
+				"UTF-8")) {
+			while (s.findWithinHorizon(TokenStrategy.WORD_GLUED_TO_PUNCTUATION.getPattern(), 0) != null) {
+				table.consume(s.match().group(1));
+			}
+		}
+		table.consume(null);
+		return table.toStateMap();
+	}
+
+	@Test
+	public void testSketchNeverUndercounts() {
+		CountMinSketch sketch = new CountMinSketch(4, 64);
+		Map<Long, Integer> actual = new HashMap<>();
+		Random random = new Random(42);
+
+		for (int i = 0; i < 10000; i++) {
+			long key = random.nextInt(500);
+			sketch.increment(key);
+			actual.merge(key, 1, Integer::sum);
+		}
+
+		for (Map.Entry<Long, Integer> entry : actual.entrySet()) {
+			assertTrue(sketch.estimate(entry.getKey()) >= entry.getValue());
+		}
+	}
+
+	@Test
+	public void testGenerousTargetMatchesExactModel() {
+		Map<Prefix, WeightedSuffixes> exact = exactStates(2);
+		Map<Prefix, WeightedSuffixes> approximate = approximateStates(2, 1 << 20);
+
+		assertEquals(exact.keySet(), approximate.keySet());
+		for (Map.Entry<Prefix, WeightedSuffixes> state : exact.entrySet()) {
+			Map<String, Integer> exactSuffixes = state.getValue().getSuffixMap();
+			Map<String, Integer> approximateSuffixes = approximate.get(state.getKey()).getSuffixMap();
+			assertEquals(exactSuffixes.keySet(), approximateSuffixes.keySet());
+			for (Map.Entry<String, Integer> suffix : exactSuffixes.entrySet()) {
+				assertTrue(approximateSuffixes.get(suffix.getKey()) >= suffix.getValue());
+			}
+		}
+	}
+
+	@Test
+	public void testSmallTargetBoundsStates() {
+		ApproximateStateTable table = new ApproximateStateTable(2, 8, 1);
+		Map<Prefix, WeightedSuffixes> approximate = approximateStates(2, 1);
+
+		assertTrue(approximate.size() <= table.getSlotCount());
+		assertTrue(approximate.containsKey(new Prefix(2)));
+	}
+
+	@Test
+	public void testApproximateChainGeneration() {
+		InputStream is = this.getClass().getResourceAsStream("/the-beatitudes.txt");
+		MarkovChain chain = new MarkovChainBuilder().setApproximateMemoryTarget(1 << 20).build(is);
+
+		String result = chain.generate(1000);
+
+		assertTrue(result.startsWith("Blessed are"));
+		assertTrue(result.endsWith("God."));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testApproximateWithMemoryBudget() {
+		new MarkovChainBuilder().setApproximateMemoryTarget(1 << 20).setMemoryBudget(1 << 20).build("some text");
+	}
+}
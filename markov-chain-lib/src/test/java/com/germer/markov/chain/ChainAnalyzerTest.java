@@ -0,0 +1,122 @@
+package com.germer.markov.chain;
+
+import static org.junit.Assert.*;
+
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+public class ChainAnalyzerTest {
+
+	@Test(expected = NullPointerException.class)
+	public void testNullPool() {
+		new MarkovChainBuilder().build("a b c").analyze(null);
+	}
+
+	@Test
+	public void testEmptyChain() {
+		ChainAnalysis analysis = new MarkovChainBuilder().build("").analyze();
+
+		assertEquals(1, analysis.getStateCount());
+		assertEquals(0, analysis.getEntropyRate(), 0);
+		assertEquals(1, analysis.getTerminalReachableStates());
+		assertEquals(0, analysis.getShortestWalk());
+	}
+
+	@Test
+	public void testDeterministicChain() {
+		InputStream is = this.getClass().getResourceAsStream("/the-beatitudes.txt");
+		ChainAnalysis analysis = new MarkovChainBuilder().setPrefixLength(1000).build(is).analyze();
+
+		// A single line of states, no choice anywhere.
+		assertEquals(81, analysis.getStateCount());
+		assertEquals(81, analysis.getTransitionCount());
+		assertEquals(0, analysis.getEntropyRate(), 0);
+		assertEquals(0, analysis.getMaxStateEntropy(), 0);
+		assertEquals(1, analysis.getMaxFanout());
+		assertEquals(Integer.valueOf(81), analysis.getFanoutHistogram().get(1));
+		assertEquals(81, analysis.getTerminalReachableStates());
+		assertEquals(80, analysis.getShortestWalk());
+	}
+
+	@Test
+	public void testEntropyAndStationaryDistribution() {
+		/*
+		 * Prefix length 1 over "a b a c": from a, b and c are equally likely
+		 * (1 bit), every other state has a single suffix.
+		 */
+		ChainAnalysis analysis = new MarkovChainBuilder().setPrefixLength(1).build("a b a c")
+				.analyze(new ForkJoinPool(2));
+
+		assertEquals(4, analysis.getStateCount());
+		assertEquals(1, analysis.getMaxStateEntropy(), 1e-9);
+		assertEquals(0.25, analysis.getMeanStateEntropy(), 1e-9);
+		assertEquals(Integer.valueOf(1), analysis.getFanoutHistogram().get(2));
+		assertEquals(2, analysis.getShortestWalk());
+
+		/*
+		 * Restarting walks ("a" then "b a" any times then "c") spend 2/5 of
+		 * the visits on "a" and 1/5 on each other state.
+		 */
+		assertTrue(analysis.getStationaryResidual() <= ChainAnalyzer.TOLERANCE);
+		ChainAnalysis.RankedState top = analysis.getTopStates().get(0);
+		assertEquals(Arrays.asList("a"), top.getPrefix());
+		assertEquals(0.4, top.getProbability(), 1e-4);
+		assertEquals(2, top.getFanout());
+		assertEquals(0.4, analysis.getEntropyRate(), 1e-4);
+	}
+
+	@Test
+	public void testEveryStateByPrefix() {
+		MarkovChain chain = new MarkovChainBuilder().setPrefixLength(1).build("a b a c");
+		ChainAnalysis analysis = chain.analyze();
+
+		assertEquals(1, analysis.getStateEntropy(Arrays.asList("a")), 1e-9);
+		assertEquals(0.4, analysis.getStateProbability(Arrays.asList("a")), 1e-4);
+		assertEquals(0, analysis.getStateEntropy(Arrays.asList((String) null)), 1e-9);
+		assertEquals(0.2, analysis.getStateProbability(Arrays.asList("c")), 1e-4);
+
+		// Also the states left out of the top states summary.
+		double entropySum = 0;
+		double probabilitySum = 0;
+		for (MarkovChain.State state : chain.getStates()) {
+			entropySum += analysis.getStateEntropy(state.getPrefix());
+			probabilitySum += analysis.getStateProbability(state.getPrefix());
+		}
+		assertEquals(analysis.getMeanStateEntropy() * analysis.getStateCount(), entropySum, 1e-9);
+		assertEquals(1, probabilitySum, 1e-4);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownStatePrefix() {
+		new MarkovChainBuilder().setPrefixLength(1).build("a b a c").analyze()
+				.getStateEntropy(Arrays.asList("d"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testStatePrefixOfOtherLength() {
+		new MarkovChainBuilder().setPrefixLength(1).build("a b a c").analyze()
+				.getStateProbability(Arrays.asList("a", "b"));
+	}
+
+	@Test
+	public void testEndlessChain() {
+		WeightedSuffixes ws = new WeightedSuffixes();
+		ws.add("a");
+		WeightedSuffixes wsA = new WeightedSuffixes();
+		wsA.add("a");
+		Map<Prefix, WeightedSuffixes> map = new LinkedHashMap<>();
+		map.put(new Prefix(1), ws);
+		map.put(new Prefix(1).createNext("a"), wsA);
+
+		ChainAnalysis analysis = new MarkovChain(1, " ", map).analyze();
+
+		assertEquals(0, analysis.getTerminalReachableStates());
+		assertEquals(-1, analysis.getShortestWalk());
+		assertEquals(Arrays.asList("a"), analysis.getTopStates().get(0).getPrefix());
+	}
+}
@@ -0,0 +1,81 @@
+package com.germer.markov.chain;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class ChainSizeEstimatorTest {
+
+	/**
+	 * Random words out of a small vocabulary, so short n-grams repeat and long
+	 * ones are mostly distinct.
+	 */
+	private static String randomText(int tokens) {
+		Random random = new Random(42);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < tokens; i++) {
+			sb.append("w").append(random.nextInt(300)).append(' ');
+		}
+		return sb.toString();
+	}
+
+	private static long modelBytes(MarkovChain chain, int prefixLength) {
+		long bytes = 0;
+		Set<String> tokens = new HashSet<>();
+		for (MarkovChain.State state : chain.getStates()) {
+			bytes += MemoryFootprint.ofState(prefixLength);
+			for (String suffix : state.getSuffixes()) {
+				bytes += MemoryFootprint.SUFFIX_BYTES;
+				if (suffix != null && tokens.add(suffix)) {
+					bytes += MemoryFootprint.ofToken(suffix);
+				}
+			}
+		}
+		return bytes;
+	}
+
+	@Test
+	public void testEstimateMatchesBuild() {
+		String text = randomText(50000);
+		MarkovChainBuilder builder = new MarkovChainBuilder().setPrefixLength(3)
+				.setSourceCharset(StandardCharsets.UTF_8);
+
+		ChainSizeEstimate estimate = builder
+				.estimate(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
+
+		assertEquals(50000, estimate.getTokens());
+		assertEquals(3, estimate.getPrefixLength());
+		for (int prefixLength = 1; prefixLength <= 3; prefixLength++) {
+			MarkovChain chain = builder.setPrefixLength(prefixLength).build(text);
+			long states = chain.getStates().size();
+			long transitions = chain.getStates().stream().mapToLong(s -> s.getSuffixes().size()).sum();
+
+			assertEquals(states, estimate.getStates(prefixLength), states * 0.03);
+			assertEquals(transitions, estimate.getTransitions(prefixLength), transitions * 0.03);
+			long bytes = modelBytes(chain, prefixLength);
+			assertEquals(bytes, estimate.getModelBytes(prefixLength), bytes * 0.05);
+		}
+		assertTrue(estimate.getModelBytes(1) < estimate.getModelBytes());
+	}
+
+	@Test
+	public void testTinySource() {
+		ChainSizeEstimate estimate = new MarkovChainBuilder().setPrefixLength(2)
+				.estimate(new ByteArrayInputStream("a b a".getBytes()));
+
+		// Prefixes [null null], [null a], [a b], [b a] and suffixes a, b, a, end.
+		assertEquals(4, estimate.getStates());
+		assertEquals(4, estimate.getTransitions());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testPrefixLengthOutOfRange() {
+		new MarkovChainBuilder().setPrefixLength(2).estimate(new ByteArrayInputStream(new byte[0])).getStates(3);
+	}
+}
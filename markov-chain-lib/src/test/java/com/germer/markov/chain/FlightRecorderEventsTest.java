@@ -0,0 +1,81 @@
+package com.germer.markov.chain;
+
+import static org.junit.Assert.*;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class FlightRecorderEventsTest {
+
+	private List<RecordedEvent> record(Runnable workload) throws Exception {
+		Path dump = Files.createTempFile("markov-events-", ".jfr");
+		try (Recording recording = new Recording()) {
+			recording.enable(BuildPhaseEvent.class);
+			recording.enable(GenerateEvent.class);
+			recording.enable(SuffixSamplingEvent.class);
+			recording.start();
+			workload.run();
+			recording.stop();
+			recording.dump(dump);
+			return RecordingFile.readAllEvents(dump).stream()
+					.filter(e -> e.getEventType().getName().startsWith("com.germer.markov."))
+					.collect(Collectors.toList());
+		} finally {
+			Files.delete(dump);
+		}
+	}
+
+	private List<RecordedEvent> ofType(List<RecordedEvent> events, String name) {
+		return events.stream().filter(e -> e.getEventType().getName().equals(name)).collect(Collectors.toList());
+	}
+
+	@Test
+	public void testBuildAndGenerateEvents() throws Exception {
+		List<RecordedEvent> events = record(() -> {
+			InputStream is = this.getClass().getResourceAsStream("/the-beatitudes.txt");
+			MarkovChain chain = new MarkovChainBuilder().setPrefixLength(1000).setMemoryBudget(1 << 12).build(is);
+			chain.generate(10);
+		});
+
+		List<RecordedEvent> phases = ofType(events, "com.germer.markov.BuildPhase");
+		RecordedEvent parse = phases.stream().filter(e -> "parse".equals(e.getString("phase"))).findFirst().get();
+		assertEquals(80, parse.getLong("tokens"));
+		assertTrue(parse.getLong("bytesRead") > 0);
+		assertTrue(phases.stream().anyMatch(e -> "spill".equals(e.getString("phase"))));
+		RecordedEvent merge = phases.stream().filter(e -> "merge".equals(e.getString("phase"))).findFirst().get();
+		assertEquals(81, merge.getLong("states"));
+
+		List<RecordedEvent> generates = ofType(events, "com.germer.markov.Generate");
+		assertEquals(1, generates.size());
+		assertEquals(10, generates.get(0).getInt("tokens"));
+		assertEquals(10, generates.get(0).getInt("maxTokens"));
+	}
+
+	@Test
+	public void testHighFanoutSamplingEvents() throws Exception {
+		WeightedSuffixes ws = new WeightedSuffixes();
+		for (int i = 0; i < SuffixSamplingEvent.MIN_FANOUT; i++) {
+			ws.add("suffix" + i);
+		}
+
+		List<RecordedEvent> events = record(() -> {
+			for (int i = 0; i < SuffixSamplingEvent.SAMPLING_RATE * 50; i++) {
+				ws.getRandom();
+			}
+		});
+
+		List<RecordedEvent> samples = ofType(events, "com.germer.markov.SuffixSampling");
+		assertFalse(samples.isEmpty());
+		assertEquals(SuffixSamplingEvent.MIN_FANOUT, samples.get(0).getInt("fanout"));
+		assertTrue(samples.get(0).getInt("scanned") >= 1);
+	}
+}
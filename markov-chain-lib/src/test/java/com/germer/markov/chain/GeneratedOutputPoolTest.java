@@ -0,0 +1,116 @@
+package com.germer.markov.chain;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class GeneratedOutputPoolTest {
+
+	private static final String SOURCE = "the cat sat on the mat and the dog sat on the cat";
+
+	private static void awaitSize(GeneratedOutputPool pool, int size) throws InterruptedException {
+		for (int i = 0; i < 500 && pool.size() < size; i++) {
+			Thread.sleep(10);
+		}
+		assertTrue(pool.size() >= size);
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testNullChain() {
+		new GeneratedOutputPool(null, 10);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidCapacity() {
+		new GeneratedOutputPool(new MarkovChainBuilder().build(SOURCE), 10).setCapacity(0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMinTokensOverMaxTokens() {
+		new GeneratedOutputPool(new MarkovChainBuilder().build(SOURCE), 10).setMinTokens(11);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testSettingsFixedOnceStarted() {
+		try (GeneratedOutputPool pool = new GeneratedOutputPool(new MarkovChainBuilder().build(SOURCE), 10)) {
+			pool.start().setCapacity(4);
+		}
+	}
+
+	@Test
+	public void testInlineGenerationWhenNotStarted() {
+		try (GeneratedOutputPool pool = new GeneratedOutputPool(new MarkovChainBuilder().setPrefixLength(20).build(SOURCE),
+				1000)) {
+			assertEquals(SOURCE, pool.take());
+			assertEquals(0, pool.size());
+			assertEquals(0.0, pool.getHitRate(), 0);
+			assertEquals(1, pool.getMisses());
+		}
+	}
+
+	@Test
+	public void testTakesFromFilledPool() throws InterruptedException {
+		MarkovChain chain = new MarkovChainBuilder().setPrefixLength(1).build(SOURCE);
+		try (GeneratedOutputPool pool = new GeneratedOutputPool(chain, 8).setCapacity(16).setThreads(2)) {
+			pool.start();
+			awaitSize(pool, 16);
+			assertEquals(16, pool.getTargetSize());
+
+			for (int i = 0; i < 10; i++) {
+				String output = pool.take();
+				String[] tokens = output.split(" ");
+				assertTrue(tokens.length <= 8);
+				assertEquals("the", tokens[0]);
+			}
+			assertEquals(10, pool.getHits());
+			assertEquals(1.0, pool.getHitRate(), 0);
+			assertNull(pool.getLastFailure());
+		}
+	}
+
+	@Test
+	public void testRefillThreadsNeverOvershoot() throws InterruptedException {
+		MarkovChain chain = new MarkovChainBuilder().setPrefixLength(1).build(SOURCE);
+		try (GeneratedOutputPool pool = new GeneratedOutputPool(chain, 8).setCapacity(4).setThreads(8)) {
+			pool.start();
+			for (int round = 0; round < 50; round++) {
+				awaitSize(pool, 4);
+				assertEquals(4, pool.size());
+				assertNotNull(pool.take());
+				assertNotNull(pool.take());
+			}
+			Thread.sleep(50);
+			assertTrue(pool.size() <= 4);
+		}
+	}
+
+	@Test
+	public void testTargetFollowsDemand() throws InterruptedException {
+		MarkovChain chain = new MarkovChainBuilder().setPrefixLength(1).build(SOURCE);
+		try (GeneratedOutputPool pool = new GeneratedOutputPool(chain, 8).setCapacity(64)) {
+			pool.start();
+			awaitSize(pool, 64);
+
+			// Nothing taken, the target decays to a single output.
+			for (int i = 0; i < 500 && pool.getTargetSize() > 1; i++) {
+				Thread.sleep(10);
+			}
+			assertEquals(1, pool.getTargetSize());
+			assertEquals(64, pool.size());
+		}
+	}
+
+	@Test
+	public void testBoundedOutputs() throws InterruptedException {
+		MarkovChain chain = new MarkovChainBuilder().setPrefixLength(1).build(SOURCE);
+		try (GeneratedOutputPool pool = new GeneratedOutputPool(chain, 12).setMinTokens(9).setCapacity(4)) {
+			pool.start();
+			awaitSize(pool, 4);
+
+			for (int i = 0; i < 4; i++) {
+				int tokens = pool.take().split(" ").length;
+				assertTrue(tokens >= 9 && tokens <= 12);
+			}
+		}
+	}
+}
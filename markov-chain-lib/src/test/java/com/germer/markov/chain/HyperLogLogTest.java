@@ -0,0 +1,33 @@
+package com.germer.markov.chain;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class HyperLogLogTest {
+
+	@Test
+	public void testEmpty() {
+		assertEquals(0, new HyperLogLog(HyperLogLog.DEFAULT_PRECISION).estimate());
+	}
+
+	@Test
+	public void testRepeatedHashesCountOnce() {
+		HyperLogLog sketch = new HyperLogLog(HyperLogLog.DEFAULT_PRECISION);
+		for (int i = 0; i < 10000; i++) {
+			sketch.add(i % 100);
+		}
+		assertEquals(100, sketch.estimate());
+	}
+
+	@Test
+	public void testLargeCardinality() {
+		HyperLogLog sketch = new HyperLogLog(HyperLogLog.DEFAULT_PRECISION);
+		int distinct = 1000000;
+		for (int i = 0; i < distinct; i++) {
+			// Sequential (weak) hashes are remixed by the sketch.
+			sketch.add(i);
+		}
+		assertEquals(distinct, sketch.estimate(), distinct * 0.03);
+	}
+}
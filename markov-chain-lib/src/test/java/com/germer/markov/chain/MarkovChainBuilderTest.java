@@ -1,9 +1,18 @@
 package com.germer.markov.chain;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Scanner;
+import java.util.Set;
 
 import org.junit.Test;
 
@@ -30,6 +39,11 @@ public class MarkovChainBuilderTest {
 	}
 	
 	
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeOriginalityWindow() {
+		new MarkovChainBuilder().setOriginalityWindow(-1);
+	}
+	
 	@Test(expected = NullPointerException.class)
 	public void testNullInputStream(){
 		new MarkovChainBuilder().build((InputStream) null);
@@ -100,4 +114,69 @@ public class MarkovChainBuilderTest {
 				+ "тумане спрятанного солнца, Кругом шумел.", result);
 	}
 
+	@Test
+	public void testOriginalityWindowEndsVerbatimCopy() {
+		InputStream is = this.getClass()
+				.getResourceAsStream("/the-beatitudes.txt");
+		
+		MarkovChain chain = new MarkovChainBuilder().setPrefixLength(1000)
+				.setOriginalityWindow(5).build(is);
+		
+		String result = chain.generate(1000);
+		
+		assertEquals("Blessed are the poor", result);
+	}
+
+	@Test
+	public void testOriginalityWindowNeverReproducesSource() {
+		String source = "the cat sat on the mat and the dog sat on the cat "
+				+ "and the mat sat on the dog and the cat ran";
+		List<String> sourceTokens = Arrays.asList(source.split(" "));
+		Set<List<String>> sourceTrigrams = new HashSet<>();
+		for (int i = 0; i + 3 <= sourceTokens.size(); i++) {
+			sourceTrigrams.add(sourceTokens.subList(i, i + 3));
+		}
+
+		MarkovChain chain = new MarkovChainBuilder().setPrefixLength(1)
+				.setOriginalityWindow(3).build(source);
+
+		for (int run = 0; run < 200; run++) {
+			List<String> result = Arrays.asList(chain.generate(50).split(" "));
+			for (int i = 0; i + 3 <= result.size(); i++) {
+				assertFalse(sourceTrigrams.contains(result.subList(i, i + 3)));
+			}
+		}
+	}
+
+	@Test
+	public void testPipelinedBuildMatchesSequential() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 50; i++) {
+			sb.append(new Scanner(this.getClass().getResourceAsStream("/sample-russian.txt"), "UTF-8")
+					.useDelimiter("\\A").next());
+		}
+		byte[] source = sb.toString().getBytes(StandardCharsets.UTF_8);
+		MarkovChainBuilder builder = new MarkovChainBuilder().setSourceCharset(StandardCharsets.UTF_8);
+
+		List<MarkovChain.State> sequential = builder.build(new ByteArrayInputStream(source)).getStates();
+		List<MarkovChain.State> pipelined = builder.setPipelined(true).build(new ByteArrayInputStream(source))
+				.getStates();
+
+		assertEquals(sequential.size(), pipelined.size());
+		for (int i = 0; i < sequential.size(); i++) {
+			assertEquals(sequential.get(i).getPrefix(), pipelined.get(i).getPrefix());
+			assertEquals(sequential.get(i).getSuffixes(), pipelined.get(i).getSuffixes());
+			assertEquals(sequential.get(i).getSuffixesWeights(), pipelined.get(i).getSuffixesWeights());
+		}
+	}
+
+	@Test
+	public void testTokensInterned() {
+		List<MarkovChain.State> states = new MarkovChainBuilder().setPrefixLength(1).build("a b a b").getStates();
+
+		// States [null], [a] and [b]: the suffix b of [a] is the prefix of [b].
+		assertEquals(3, states.size());
+		assertSame(states.get(1).getSuffixes().get(0), states.get(2).getPrefix().get(0));
+		assertSame(states.get(0).getSuffixes().get(0), states.get(1).getPrefix().get(0));
+	}
 }
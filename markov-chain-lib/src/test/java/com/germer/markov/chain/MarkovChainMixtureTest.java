@@ -0,0 +1,68 @@
+package com.germer.markov.chain;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class MarkovChainMixtureTest {
+
+	private static final MarkovChain CATS = new MarkovChainBuilder().setPrefixLength(1).build("the cat sat");
+	private static final MarkovChain DOGS = new MarkovChainBuilder().setPrefixLength(1).build("the dog ran");
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNoChains() {
+		new MarkovChainMixture();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testPrefixLengthMismatch() {
+		new MarkovChainMixture(CATS, new MarkovChainBuilder().setPrefixLength(2).build("the dog ran"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testAllWeightsZero() {
+		new MarkovChainMixture(CATS, DOGS).setWeights(0, 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testWeightsCountMismatch() {
+		new MarkovChainMixture(CATS, DOGS).setWeights(1);
+	}
+
+	@Test
+	public void testSingleChainWeight() {
+		MarkovChainMixture mixture = new MarkovChainMixture(CATS, DOGS).setWeights(0, 3);
+		for (int i = 0; i < 20; i++) {
+			assertEquals("the dog ran", mixture.generate(100));
+		}
+
+		// Changing the weights takes effect on the next generation.
+		mixture.setWeights(1, 0);
+		assertEquals("the cat sat", mixture.generate(100));
+		assertArrayEquals(new double[] { 1, 0 }, mixture.getWeights(), 0);
+	}
+
+	@Test
+	public void testBlendedTransitions() {
+		MarkovChainMixture mixture = new MarkovChainMixture(CATS, DOGS);
+		Set<String> outputs = new HashSet<>();
+		for (int i = 0; i < 200; i++) {
+			outputs.add(mixture.generate(100));
+		}
+		// Only "the" is shared, so a walk switches chains there only.
+		assertEquals(new HashSet<>(Arrays.asList("the cat sat", "the dog ran")), outputs);
+
+		// A shared state in the middle of the walks mixes both sources.
+		mixture = new MarkovChainMixture(new MarkovChainBuilder().setPrefixLength(1).build("a b c"),
+				new MarkovChainBuilder().setPrefixLength(1).build("x b y"));
+		outputs.clear();
+		for (int i = 0; i < 500; i++) {
+			outputs.add(mixture.generate(100));
+		}
+		assertEquals(new HashSet<>(Arrays.asList("a b c", "a b y", "x b c", "x b y")), outputs);
+	}
+}
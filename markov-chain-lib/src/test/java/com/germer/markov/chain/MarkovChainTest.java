@@ -3,6 +3,7 @@ package com.germer.markov.chain;
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
+import java.io.InputStream;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -86,4 +87,66 @@ public class MarkovChainTest {
 				+ "beta alpha beta alpha beta", result);
 	}
 
+	@Test
+	public void testGenerateIntoReusedBuilder() {
+		MarkovChain chain = new MarkovChainBuilder().build("the quick brown fox jumps");
+		StringBuilder output = new StringBuilder("> ");
+
+		assertEquals(5, chain.generate(100, output));
+		assertEquals("> the quick brown fox jumps", output.toString());
+
+		output.setLength(0);
+		assertEquals(2, chain.compile().generate(2, output));
+		assertEquals("the quick", output.toString());
+	}
+
+	@Test
+	public void testCompactSharesIdenticalDistributions() {
+		// States "a", "b", "c" and "d" are all followed by a single "x".
+		MarkovChain chain = new MarkovChainBuilder().setPrefixLength(1).build("a x b x c x d x");
+
+		CompactionReport report = chain.compact();
+
+		assertEquals(6, report.getStateCount());
+		// Distributions {a}, {x} (shared by 4 states) and {b, c, d, end}.
+		assertEquals(3, report.getDistinctDistributions());
+		assertEquals(3, report.getRemovedInstances());
+		assertTrue(report.getBytesSaved() > 0);
+		assertTrue(report.getBytesAfter() < report.getBytesBefore());
+
+		// Compacting again finds nothing more to share.
+		CompactionReport again = chain.compact();
+		assertEquals(3, again.getDistinctDistributions());
+		assertEquals(again.getBytesBefore(), again.getBytesAfter());
+	}
+
+	@Test
+	public void testCompactKeepsGeneration() {
+		InputStream is = this.getClass().getResourceAsStream("/the-beatitudes.txt");
+		MarkovChain chain = new MarkovChainBuilder().setPrefixLength(1000).build(is);
+		String expected = chain.generate(1000);
+
+		chain.compact();
+
+		assertEquals(expected, chain.generate(1000));
+	}
+
+	@Test
+	public void testBoundedGeneration() {
+		// Walks only end after "c", with 2, 4, 6... tokens.
+		MarkovChain chain = new MarkovChainBuilder().setPrefixLength(1).build("a b a b a b a c");
+
+		for (int i = 0; i < 50; i++) {
+			assertEquals("a b a b a c", chain.generate(5, 7));
+			assertEquals("a b a b a b a b a c", chain.generate(10, 10));
+		}
+		// No length fits, cut at maxTokens rather than ending too early.
+		assertEquals("a b a b a", chain.generate(5, 5));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBoundedGenerationInvalidBounds() {
+		new MarkovChainBuilder().build("a b").generate(3, 2);
+	}
+
 }
@@ -0,0 +1,131 @@
+package com.germer.markov.chain;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class ModelSizeLimitTest {
+
+	/**
+	 * Random words out of a small vocabulary, so longer prefixes build larger
+	 * models.
+	 */
+	private static String randomText(int tokens) {
+		Random random = new Random(42);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < tokens; i++) {
+			sb.append("w").append(random.nextInt(300)).append(' ');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * The model bytes as counted by the builder.
+	 */
+	private static long modelBytes(MarkovChain chain) {
+		long bytes = 0;
+		Set<String> tokens = new HashSet<>();
+		for (MarkovChain.State state : chain.getStates()) {
+			bytes += MemoryFootprint.ofState(chain.getPrefixLength());
+			for (String suffix : state.getSuffixes()) {
+				bytes += MemoryFootprint.SUFFIX_BYTES;
+				if (suffix != null && tokens.add(suffix)) {
+					bytes += MemoryFootprint.ofToken(suffix);
+				}
+			}
+		}
+		return bytes;
+	}
+
+	private static Map<List<String>, Map<String, Integer>> transitions(MarkovChain chain) {
+		Map<List<String>, Map<String, Integer>> transitions = new HashMap<>();
+		for (MarkovChain.State state : chain.getStates()) {
+			Map<String, Integer> weights = new HashMap<>();
+			for (int i = 0; i < state.getSuffixes().size(); i++) {
+				weights.put(state.getSuffixes().get(i), state.getSuffixesWeights().get(i));
+			}
+			transitions.put(state.getPrefix(), weights);
+		}
+		return transitions;
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeLimit() {
+		new MarkovChainBuilder().setModelSizeLimit(-1);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testLimitWithMemoryBudget() {
+		new MarkovChainBuilder().setModelSizeLimit(1 << 20).setMemoryBudget(1 << 20).build("a b c");
+	}
+
+	@Test
+	public void testWithinLimit() {
+		String text = randomText(20000);
+		MarkovChain unlimited = new MarkovChainBuilder().setPrefixLength(3).build(text);
+
+		MarkovChain limited = new MarkovChainBuilder().setPrefixLength(3).setModelSizeLimit(modelBytes(unlimited))
+				.build(text);
+
+		assertEquals(3, limited.getPrefixLength());
+		assertEquals(transitions(unlimited), transitions(limited));
+	}
+
+	@Test
+	public void testOverLimitStopsReading() {
+		byte[] source = randomText(20000).getBytes(StandardCharsets.UTF_8);
+		ByteArrayInputStream is = new ByteArrayInputStream(source);
+
+		try {
+			new MarkovChainBuilder().setPrefixLength(3).setModelSizeLimit(100_000).build(is);
+			fail("The model should be over the limit.");
+		} catch (ModelSizeLimitException e) {
+			assertEquals(3, e.getPrefixLength());
+			assertEquals(100_000, e.getLimitBytes());
+			assertTrue(e.getModelBytes() > 100_000);
+		}
+		assertTrue(is.available() > source.length / 2);
+	}
+
+	@Test
+	public void testDowngradeMatchesShorterBuild() {
+		String text = randomText(20000);
+		MarkovChain shorter = new MarkovChainBuilder().setPrefixLength(2).build(text);
+
+		MarkovChain downgraded = new MarkovChainBuilder().setPrefixLength(4).setModelSizeLimit(modelBytes(shorter))
+				.setPrefixDowngrade(true).build(text);
+
+		assertEquals(2, downgraded.getPrefixLength());
+		assertEquals(transitions(shorter), transitions(downgraded));
+		// Same states in the same order (of their first occurrence).
+		List<MarkovChain.State> expected = shorter.getStates();
+		List<MarkovChain.State> actual = downgraded.getStates();
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).getPrefix(), actual.get(i).getPrefix());
+		}
+	}
+
+	@Test
+	public void testDowngradeRejectedAtPrefixLengthOne() {
+		String text = randomText(20000);
+		MarkovChain shortest = new MarkovChainBuilder().setPrefixLength(1).build(text);
+
+		try {
+			new MarkovChainBuilder().setPrefixLength(3).setModelSizeLimit(modelBytes(shortest) / 2)
+					.setPrefixDowngrade(true).build(text);
+			fail("The model should be over the limit.");
+		} catch (ModelSizeLimitException e) {
+			assertEquals(1, e.getPrefixLength());
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package com.germer.markov.chain;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class OriginalityIndexTest {
+
+	private static final String[] SOURCE = { "alpha", "beta", "gamma", "delta", "alpha", "beta", "epsilon" };
+
+	private OriginalityIndex index(int window) {
+		OriginalityIndex index = new OriginalityIndex(window);
+		OriginalityIndex.Window w = index.newWindow();
+		for (String token : SOURCE) {
+			w.push(token);
+			if (w.isFull()) {
+				index.add(w.getHash());
+			}
+		}
+		return index;
+	}
+
+	@Test
+	public void testRollingHashMatchesFreshWindow() {
+		OriginalityIndex index = new OriginalityIndex(3);
+		OriginalityIndex.Window rolling = index.newWindow();
+		for (String token : SOURCE) {
+			rolling.push(token);
+		}
+
+		OriginalityIndex.Window fresh = index.newWindow();
+		fresh.push("delta");
+		fresh.push("alpha");
+		fresh.push("beta");
+		fresh.push("epsilon");
+
+		OriginalityIndex.Window exact = index.newWindow();
+		exact.push("alpha");
+		exact.push("beta");
+		exact.push("epsilon");
+
+		assertEquals(exact.getHash(), rolling.getHash());
+		assertEquals(exact.getHash(), fresh.getHash());
+	}
+
+	@Test
+	public void testIndexedNGrams() {
+		OriginalityIndex index = index(3);
+
+		// alpha beta gamma, beta gamma delta, gamma delta alpha, delta alpha
+		// beta, alpha beta epsilon
+		assertEquals(5, index.size());
+
+		OriginalityIndex.Window w = index.newWindow();
+		w.push("alpha");
+		assertFalse(w.reproducesSource("beta"));
+		w.push("beta");
+		assertTrue(w.reproducesSource("gamma"));
+		assertTrue(w.reproducesSource("epsilon"));
+		assertFalse(w.reproducesSource("delta"));
+		w.push("delta");
+		assertFalse(w.reproducesSource("alpha"));
+	}
+
+	@Test
+	public void testGrowth() {
+		OriginalityIndex index = new OriginalityIndex(2);
+		OriginalityIndex.Window w = index.newWindow();
+		for (int i = 0; i < 10000; i++) {
+			w.push(Integer.toString(i));
+			if (w.isFull()) {
+				index.add(w.getHash());
+			}
+		}
+
+		assertEquals(9999, index.size());
+
+		OriginalityIndex.Window probe = index.newWindow();
+		probe.push("4241");
+		assertTrue(probe.reproducesSource("4242"));
+		assertFalse(probe.reproducesSource("4243"));
+	}
+}
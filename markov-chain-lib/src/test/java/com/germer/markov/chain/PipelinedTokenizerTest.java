@@ -0,0 +1,130 @@
+package com.germer.markov.chain;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PipelinedTokenizerTest {
+
+	/**
+	 * Random words of mixed scripts and separators, long enough to span many
+	 * chunks so tokens are split across chunk boundaries.
+	 */
+	private static String randomText(int tokens) {
+		String[] words = { "a", "markov", "chain,", "цепь", "Маркова!", "鎖", "...", "xéy" };
+		String[] separators = { " ", "  ", "\n", "\t ", "\r\n" };
+		Random random = new Random(7);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < tokens; i++) {
+			sb.append(words[random.nextInt(words.length)]);
+			sb.append(separators[random.nextInt(separators.length)]);
+		}
+		return sb.toString();
+	}
+
+	private static List<String> drain(TokenSource source) throws IOException {
+		List<String> tokens = new ArrayList<>();
+		try (TokenSource s = source) {
+			for (String token = s.next(); token != null; token = s.next()) {
+				tokens.add(token);
+			}
+		}
+		return tokens;
+	}
+
+	private static List<String> tokenize(String text, TokenStrategy strategy, boolean pipelined)
+			throws IOException {
+		InputStream is = new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+		return drain(pipelined ? new PipelinedTokenizer(is, StandardCharsets.UTF_8, strategy.getPattern())
+				: TokenSource.scanning(is, StandardCharsets.UTF_8, strategy));
+	}
+
+	@Test
+	public void testSameTokensAsScanning() throws IOException {
+		String text = randomText(200000);
+
+		List<String> expected = tokenize(text, TokenStrategy.WORD_GLUED_TO_PUNCTUATION, false);
+
+		assertEquals(200000, expected.size());
+		assertEquals(expected, tokenize(text, TokenStrategy.WORD_GLUED_TO_PUNCTUATION, true));
+	}
+
+	@Test
+	public void testSameCharactersAsScanning() throws IOException {
+		String text = randomText(30000);
+
+		List<String> expected = tokenize(text, TokenStrategy.ANY_SINGLE_CHARACTER, false);
+
+		assertEquals(text.length(), expected.size());
+		assertEquals(expected, tokenize(text, TokenStrategy.ANY_SINGLE_CHARACTER, true));
+	}
+
+	@Test
+	public void testTokenSpanningChunks() throws IOException {
+		StringBuilder sb = new StringBuilder(" first ");
+		for (int i = 0; i < PipelinedTokenizer.CHUNK_CHARS * 2; i++) {
+			sb.append('w');
+		}
+		String longToken = sb.substring(" first ".length());
+		sb.append(" last");
+
+		List<String> tokens = tokenize(sb.toString(), TokenStrategy.WORD_GLUED_TO_PUNCTUATION, true);
+
+		assertEquals(3, tokens.size());
+		assertEquals("first", tokens.get(0));
+		assertEquals(longToken, tokens.get(1));
+		assertEquals("last", tokens.get(2));
+	}
+
+	@Test
+	public void testEmptySource() throws IOException {
+		assertTrue(tokenize("", TokenStrategy.WORD_GLUED_TO_PUNCTUATION, true).isEmpty());
+		assertTrue(tokenize(" \n ", TokenStrategy.WORD_GLUED_TO_PUNCTUATION, true).isEmpty());
+	}
+
+	@Test
+	public void testReadFailureRethrownAtTheEnd() throws IOException {
+		InputStream failing = new InputStream() {
+			private final InputStream text = new ByteArrayInputStream("one two ".getBytes(StandardCharsets.UTF_8));
+
+			@Override
+			public int read() throws IOException {
+				int b = text.read();
+				if (b < 0) {
+					throw new IOException("disk on fire");
+				}
+				return b;
+			}
+		};
+
+		List<String> tokens = new ArrayList<>();
+		try (TokenSource source = new PipelinedTokenizer(failing, StandardCharsets.UTF_8,
+				TokenStrategy.WORD_GLUED_TO_PUNCTUATION.getPattern())) {
+			for (String token = source.next(); token != null; token = source.next()) {
+				tokens.add(token);
+			}
+			fail("The read failure should have been rethrown.");
+		} catch (UncheckedIOException e) {
+			assertEquals("disk on fire", e.getCause().getMessage());
+		}
+	}
+
+	@Test
+	public void testCloseBeforeTheEnd() throws IOException {
+		String text = randomText(200000);
+		try (TokenSource source = new PipelinedTokenizer(
+				new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8,
+				TokenStrategy.WORD_GLUED_TO_PUNCTUATION.getPattern())) {
+			assertNotNull(source.next());
+		}
+	}
+}
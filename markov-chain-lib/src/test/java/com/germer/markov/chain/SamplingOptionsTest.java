@@ -0,0 +1,96 @@
+package com.germer.markov.chain;
+
+import static org.junit.Assert.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class SamplingOptionsTest {
+
+	/**
+	 * Single state graph with suffixes "a" to "d" weighted 4, 3, 2 and 1.
+	 */
+	private static TransitionGraph graph() {
+		WeightedSuffixes ws = new WeightedSuffixes();
+		ws.add("d", 1);
+		ws.add("c", 2);
+		ws.add("b", 3);
+		ws.add("a", 4);
+		Map<Prefix, WeightedSuffixes> map = new LinkedHashMap<>();
+		map.put(new Prefix(1), ws);
+		return new TransitionGraph(1, map);
+	}
+
+	private static String sample(TransitionGraph graph, SamplingOptions options, double random) {
+		return graph.getToken(graph.sample(graph.getStartState(), options, random));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testZeroTemperature() {
+		new SamplingOptions().setTemperature(0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTopPOutOfRange() {
+		new SamplingOptions().setTopP(1.5);
+	}
+
+	@Test
+	public void testDefaultOptionsFollowWeights() {
+		TransitionGraph graph = graph();
+		SamplingOptions options = new SamplingOptions();
+
+		assertTrue(options.isDefault());
+		assertEquals("a", sample(graph, options, 0));
+		assertEquals("a", sample(graph, options, 0.39));
+		assertEquals("b", sample(graph, options, 0.4));
+		assertEquals("c", sample(graph, options, 0.75));
+		assertEquals("d", sample(graph, options, 0.99));
+	}
+
+	@Test
+	public void testTopKAndTopP() {
+		TransitionGraph graph = graph();
+
+		// Only a and b: weights 4 and 3 out of 7.
+		SamplingOptions topK = new SamplingOptions().setTopK(2);
+		assertEquals("a", sample(graph, topK, 0.5));
+		assertEquals("b", sample(graph, topK, 0.6));
+		assertEquals("b", sample(graph, topK, 0.99));
+
+		// a and b add up to 0.7, the first reaching 0.6.
+		SamplingOptions topP = new SamplingOptions().setTopP(0.6);
+		assertEquals("b", sample(graph, topP, 0.99));
+		assertEquals("b", sample(graph, new SamplingOptions().setTopP(0.7), 0.99));
+		assertEquals("a", sample(graph, new SamplingOptions().setTopP(0.4), 0.99));
+		assertEquals("c", sample(graph, new SamplingOptions().setTopP(0.71), 0.99));
+	}
+
+	@Test
+	public void testTemperature() {
+		TransitionGraph graph = graph();
+
+		// Squared weights 16, 9, 4 and 1 out of 30.
+		SamplingOptions cold = new SamplingOptions().setTemperature(0.5);
+		assertEquals("a", sample(graph, cold, 0.53));
+		assertEquals("b", sample(graph, cold, 0.54));
+		assertEquals("d", sample(graph, cold, 0.97));
+
+		// Near-greedy and near-uniform extremes.
+		assertEquals("a", sample(graph, new SamplingOptions().setTemperature(0.01), 0.99));
+		assertEquals("b", sample(graph, new SamplingOptions().setTemperature(1000), 0.26));
+	}
+
+	@Test
+	public void testGenerate() {
+		MarkovChain chain = new MarkovChainBuilder().setPrefixLength(1).build("x a x a x a x b");
+
+		for (int i = 0; i < 20; i++) {
+			String text = chain.generate(5, new SamplingOptions().setTopK(1));
+			assertEquals("x a x a x", text);
+		}
+		assertTrue(chain.generate(5, new SamplingOptions().setTemperature(0.3).setTopP(0.9)).startsWith("x"));
+	}
+}
@@ -0,0 +1,56 @@
+package com.germer.markov.chain;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class SpscRingBufferTest {
+
+	@Test
+	public void testCapacityRoundedToPowerOfTwo() {
+		assertEquals(1, new SpscRingBuffer<String>(1).capacity());
+		assertEquals(16, new SpscRingBuffer<String>(16).capacity());
+		assertEquals(32, new SpscRingBuffer<String>(17).capacity());
+	}
+
+	@Test
+	public void testFullAndEmpty() {
+		SpscRingBuffer<Integer> queue = new SpscRingBuffer<>(4);
+		assertNull(queue.poll());
+		for (int i = 0; i < 4; i++) {
+			assertTrue(queue.offer(i));
+		}
+		assertFalse(queue.offer(4));
+
+		assertEquals(Integer.valueOf(0), queue.poll());
+		assertTrue(queue.offer(4));
+		for (int i = 1; i <= 4; i++) {
+			assertEquals(Integer.valueOf(i), queue.poll());
+		}
+		assertNull(queue.poll());
+	}
+
+	@Test
+	public void testHandsOverInOrderBetweenThreads() throws InterruptedException {
+		int count = 1_000_000;
+		SpscRingBuffer<Integer> queue = new SpscRingBuffer<>(64);
+		Thread producer = new Thread(() -> {
+			for (int i = 0; i < count; i++) {
+				while (!queue.offer(i)) {
+					Thread.yield();
+				}
+			}
+		});
+		producer.start();
+
+		for (int i = 0; i < count; i++) {
+			Integer element;
+			while ((element = queue.poll()) == null) {
+				Thread.yield();
+			}
+			assertEquals(i, element.intValue());
+		}
+		producer.join();
+		assertNull(queue.poll());
+	}
+}
@@ -0,0 +1,114 @@
+package com.germer.markov.chain;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class StateSpillerTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private MarkovChain build(MarkovChainBuilder builder, String resource) {
+		InputStream is = this.getClass().getResourceAsStream(resource);
+		return builder.setSourceCharset(Charset.forName("UTF-8")).build(is);
+	}
+
+	private Map<List<String>, Map<String, Integer>> statesOf(MarkovChain chain) {
+		Map<List<String>, Map<String, Integer>> states = new HashMap<>();
+		for (MarkovChain.State state : chain.getStates()) {
+			Map<String, Integer> suffixes = new HashMap<>();
+			Iterator<Integer> weights = state.getSuffixesWeights().iterator();
+			for (String suffix : state.getSuffixes()) {
+				suffixes.put(suffix, weights.next());
+			}
+			states.put(state.getPrefix(), suffixes);
+		}
+		return states;
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeMemoryBudget() {
+		new MarkovChainBuilder().setMemoryBudget(-1);
+	}
+
+	@Test
+	public void testSpilledBuildMatchesInMemoryBuild() throws Exception {
+		File spillDir = folder.newFolder();
+
+		MarkovChain expected = build(new MarkovChainBuilder(), "/the-beatitudes.txt");
+		// A tiny budget spills every token, also forcing multi-pass merges.
+		MarkovChain spilled = build(new MarkovChainBuilder().setMemoryBudget(1).setSpillDirectory(spillDir),
+				"/the-beatitudes.txt");
+
+		assertEquals(statesOf(expected), statesOf(spilled));
+		assertEquals(0, spillDir.list().length);
+	}
+
+	@Test
+	public void testFileBackedModel() throws Exception {
+		File spillDir = folder.newFolder();
+
+		MarkovChain expected = build(new MarkovChainBuilder(), "/sample-russian.txt");
+		MarkovChain fileBacked = build(new MarkovChainBuilder().setMemoryBudget(4096).setSpillDirectory(spillDir)
+				.setFileBackedModel(true), "/sample-russian.txt");
+
+		assertEquals(statesOf(expected), statesOf(fileBacked));
+	}
+
+	@Test
+	public void testFileBackedGeneration() {
+		MarkovChain chain = build(new MarkovChainBuilder().setPrefixLength(1000).setMemoryBudget(1)
+				.setFileBackedModel(true), "/the-beatitudes.txt");
+
+		assertEquals("Blessed are the poor in spirit, for theirs is the kingdom "
+				+ "of heaven. Blessed are those who mourn, for they will be "
+				+ "comforted. Blessed are the meek, for they will inherit the "
+				+ "earth. Blessed are those who hunger and thirst for "
+				+ "righteousness, for they will be filled. Blessed are the "
+				+ "merciful, for they will be shown mercy. Blessed are the "
+				+ "pure in heart, for they will see God. Blessed are the "
+				+ "peacemakers, for they will be called sons of God.", chain.generate(1000));
+	}
+
+	@Test
+	public void testMergeSumsWeightsAcrossRuns() throws Exception {
+		try (StateSpiller spiller = new StateSpiller(folder.newFolder(), 1)) {
+			Prefix p = new Prefix(1);
+			Map<Prefix, WeightedSuffixes> stateMap = new HashMap<>();
+
+			WeightedSuffixes ws = new WeightedSuffixes();
+			ws.add("alpha");
+			ws.add("beta");
+			stateMap.put(p, ws);
+			spiller.spill(stateMap);
+			assertTrue(stateMap.isEmpty());
+
+			ws = new WeightedSuffixes();
+			ws.add("alpha");
+			ws.add("gamma");
+			stateMap.put(p, ws);
+			stateMap.put(p.createNext("alpha"), new WeightedSuffixes());
+			stateMap.get(p.createNext("alpha")).add(null);
+
+			Map<Prefix, WeightedSuffixes> merged = spiller.merge(stateMap, false);
+
+			assertEquals(2, merged.size());
+			assertEquals(4, merged.get(p).getTotalWeight());
+			assertEquals(Integer.valueOf(2), merged.get(p).getSuffixMap().get("alpha"));
+			assertEquals(Integer.valueOf(1), merged.get(p).getSuffixMap().get("gamma"));
+			assertNull(merged.get(p.createNext("alpha")).getRandom());
+			assertEquals(0, spiller.getRunCount());
+		}
+	}
+}
@@ -0,0 +1,355 @@
+package com.germer.markov.chain;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TailFollowIngesterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static void append(File file, String text) throws IOException {
+		Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE,
+				StandardOpenOption.APPEND);
+	}
+
+	private static MarkovChainBuilder builder() {
+		return new MarkovChainBuilder().setPrefixLength(1).setSourceCharset(StandardCharsets.UTF_8);
+	}
+
+	private static MarkovChain.State stateOf(MarkovChain chain, String... prefix) {
+		return chain.getStates().stream().filter(s -> s.getPrefix().equals(Arrays.asList(prefix))).findFirst()
+				.orElse(null);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNoSources() {
+		new TailFollowIngester(builder());
+	}
+
+	@Test
+	public void testOnlyCompleteLinesAreRead() throws IOException {
+		File log = folder.newFile("app.log");
+		try (TailFollowIngester ingester = new TailFollowIngester(builder(), log)) {
+			append(log, "alpha beta\ngamma");
+			assertTrue(ingester.poll());
+			assertEquals("alpha beta", ingester.publish().generate(100));
+
+			// The incomplete line continues, keeping the prefix context.
+			append(log, " delta\n");
+			assertTrue(ingester.poll());
+			assertFalse(ingester.poll());
+			assertEquals("alpha beta gamma delta", ingester.publish().generate(100));
+		}
+	}
+
+	@Test
+	public void testPerFileContextInDirectory() throws IOException {
+		File dir = folder.newFolder("logs");
+		append(new File(dir, "a.log"), "x y\n");
+		append(new File(dir, "b.log"), "x z\n");
+
+		try (TailFollowIngester ingester = new TailFollowIngester(builder(), dir)) {
+			ingester.poll();
+			MarkovChain chain = ingester.publish();
+
+			assertEquals(Arrays.asList(2), stateOf(chain, (String) null).getSuffixesWeights());
+			assertEquals(Arrays.asList("y", "z"), stateOf(chain, "x").getSuffixes());
+			// Each file text ends where it stops, no transition across files.
+			assertEquals(Arrays.asList((String) null), stateOf(chain, "y").getSuffixes());
+			assertEquals(Arrays.asList((String) null), stateOf(chain, "z").getSuffixes());
+
+			// New files are picked up.
+			append(new File(dir, "c.log"), "w\n");
+			assertTrue(ingester.poll());
+			assertNotNull(stateOf(ingester.publish(), "w"));
+		}
+	}
+
+	@Test
+	public void testTruncatedFileIsReadAgain() throws IOException {
+		File log = folder.newFile("app.log");
+		try (TailFollowIngester ingester = new TailFollowIngester(builder(), log)) {
+			append(log, "one two three\n");
+			ingester.poll();
+
+			Files.write(log.toPath(), "four\n".getBytes(StandardCharsets.UTF_8));
+			assertTrue(ingester.poll());
+			MarkovChain chain = ingester.publish();
+
+			assertEquals(Arrays.asList((String) null), stateOf(chain, "three").getSuffixes());
+			assertEquals(Arrays.asList("one", "four"), stateOf(chain, (String) null).getSuffixes());
+		}
+	}
+
+	@Test
+	public void testRotatedFileIsReadFromStart() throws IOException {
+		File log = folder.newFile("app.log");
+		try (TailFollowIngester ingester = new TailFollowIngester(builder(), log)) {
+			append(log, "one two\n");
+			ingester.poll();
+
+			// A longer file takes the name, so its size doesn't tell.
+			assertTrue(log.renameTo(new File(folder.getRoot(), "app.log.1")));
+			append(log, "three four five\n");
+			assertTrue(ingester.poll());
+			MarkovChain chain = ingester.publish();
+
+			assertEquals(Arrays.asList((String) null), stateOf(chain, "two").getSuffixes());
+			assertEquals(Arrays.asList("one", "three"), stateOf(chain, (String) null).getSuffixes());
+		}
+	}
+
+	@Test
+	public void testRotatedWhileStopped() throws IOException {
+		File log = folder.newFile("app.log");
+		File checkpoint = new File(folder.getRoot(), "app.checkpoint");
+
+		try (TailFollowIngester ingester = new TailFollowIngester(builder(), log).setCheckpointFile(checkpoint)) {
+			append(log, "one two\n");
+			ingester.poll();
+		}
+
+		assertTrue(log.renameTo(new File(folder.getRoot(), "app.log.1")));
+		append(log, "three four five\n");
+		try (TailFollowIngester ingester = new TailFollowIngester(builder(), log).setCheckpointFile(checkpoint)) {
+			assertTrue(ingester.poll());
+			MarkovChain chain = ingester.publish();
+
+			assertEquals(Arrays.asList("one", "three"), stateOf(chain, (String) null).getSuffixes());
+		}
+	}
+
+	@Test
+	public void testCheckpointResume() throws IOException {
+		File log = folder.newFile("app.log");
+		File checkpoint = new File(folder.getRoot(), "app.checkpoint");
+
+		try (TailFollowIngester ingester = new TailFollowIngester(builder(), log).setCheckpointFile(checkpoint)) {
+			append(log, "a b\nc");
+			ingester.poll();
+		}
+		assertTrue(checkpoint.isFile());
+
+		append(log, " d\n");
+		try (TailFollowIngester ingester = new TailFollowIngester(builder(), log).setCheckpointFile(checkpoint)) {
+			assertTrue(ingester.poll());
+			MarkovChain chain = ingester.publish();
+
+			assertEquals("a b c d", chain.generate(100));
+			// Nothing was read twice.
+			assertEquals(Arrays.asList(1), stateOf(chain, "a").getSuffixesWeights());
+		}
+	}
+
+	@Test
+	public void testSnapshotsUnchangedByLaterReads() throws IOException {
+		File log = folder.newFile("app.log");
+		try (TailFollowIngester ingester = new TailFollowIngester(builder(), log)) {
+			append(log, "a b\n");
+			ingester.poll();
+			MarkovChain first = ingester.publish();
+
+			append(log, "a c\n");
+			ingester.poll();
+			MarkovChain second = ingester.publish();
+
+			assertEquals(Arrays.asList("b"), stateOf(first, "a").getSuffixes());
+			assertEquals(Arrays.asList("b", "c"), stateOf(second, "a").getSuffixes());
+		}
+	}
+
+	@Test
+	public void testCheckpointDeltasResume() throws IOException {
+		File log = folder.newFile("app.log");
+		File checkpoint = new File(folder.getRoot(), "app.checkpoint");
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 200; i++) {
+			text.append("w").append(i).append(" w").append(i + 1).append('\n');
+		}
+
+		long fullLength;
+		try (TailFollowIngester ingester = new TailFollowIngester(builder(), log).setCheckpointFile(checkpoint)) {
+			append(log, text.toString());
+			ingester.poll();
+			ingester.publish();
+			fullLength = checkpoint.length();
+
+			append(log, "w1 x\n");
+			ingester.poll();
+			ingester.publish();
+			append(log, "x y\n");
+			ingester.poll();
+			ingester.publish();
+		}
+		// Only the changed states were appended.
+		assertTrue(checkpoint.length() < fullLength * 3 / 2);
+
+		try (TailFollowIngester ingester = new TailFollowIngester(builder(), log).setCheckpointFile(checkpoint)) {
+			assertFalse(ingester.poll());
+			MarkovChain resumed = ingester.publish();
+
+			try (TailFollowIngester uninterrupted = new TailFollowIngester(builder(), log)) {
+				uninterrupted.poll();
+				MarkovChain expected = uninterrupted.publish();
+				assertEquals(expected.getStates().size(), resumed.getStates().size());
+				for (MarkovChain.State state : expected.getStates()) {
+					MarkovChain.State actual = stateOf(resumed, state.getPrefix().toArray(new String[0]));
+					assertEquals(state.getSuffixes(), actual.getSuffixes());
+					assertEquals(state.getSuffixesWeights(), actual.getSuffixesWeights());
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testCheckpointRewrittenWhenDeltasOutgrowIt() throws IOException {
+		File log = folder.newFile("app.log");
+		File checkpoint = new File(folder.getRoot(), "app.checkpoint");
+
+		try (TailFollowIngester ingester = new TailFollowIngester(builder(), log).setCheckpointFile(checkpoint)) {
+			long maxLength = 0;
+			for (int i = 0; i < 100; i++) {
+				append(log, "a b" + i + "\n");
+				ingester.poll();
+				ingester.publish();
+				maxLength = Math.max(maxLength, checkpoint.length());
+			}
+			// The last full checkpoint holds all the states, deltas up to twice it.
+			assertTrue(maxLength < 4 * checkpoint.length());
+		}
+	}
+
+	@Test
+	public void testTornCheckpointDeltaIgnored() throws IOException {
+		File log = folder.newFile("app.log");
+		File checkpoint = new File(folder.getRoot(), "app.checkpoint");
+
+		long length;
+		try (TailFollowIngester ingester = new TailFollowIngester(builder(), log).setCheckpointFile(checkpoint)) {
+			append(log, "a b\n");
+			ingester.poll();
+			ingester.publish();
+			append(log, "a c\n");
+			ingester.poll();
+			ingester.publish();
+			length = checkpoint.length();
+			append(log, "a d\n");
+			ingester.poll();
+			ingester.publish();
+		}
+		// A crash while appending the last delta.
+		byte[] saved = Files.readAllBytes(checkpoint.toPath());
+		Files.write(checkpoint.toPath(), Arrays.copyOf(saved, (int) (length + saved.length) / 2));
+
+		try (TailFollowIngester ingester = new TailFollowIngester(builder(), log).setCheckpointFile(checkpoint)) {
+			// The last line is read again, from the previous delta.
+			assertTrue(ingester.poll());
+			MarkovChain chain = ingester.publish();
+
+			assertEquals(Arrays.asList("b", "c", "d"), stateOf(chain, "a").getSuffixes());
+			assertEquals(Arrays.asList(1, 1, 1), stateOf(chain, "a").getSuffixesWeights());
+		}
+		// The torn delta was replaced.
+		try (TailFollowIngester ingester = new TailFollowIngester(builder(), log).setCheckpointFile(checkpoint)) {
+			assertFalse(ingester.poll());
+			assertEquals(Arrays.asList(1, 1, 1), stateOf(ingester.publish(), "a").getSuffixesWeights());
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testCheckpointPrefixLengthMismatch() throws IOException {
+		File log = folder.newFile("app.log");
+		File checkpoint = new File(folder.getRoot(), "app.checkpoint");
+		append(log, "a b\n");
+		try (TailFollowIngester ingester = new TailFollowIngester(builder(), log).setCheckpointFile(checkpoint)) {
+			ingester.poll();
+		}
+
+		new TailFollowIngester(builder().setPrefixLength(2), log).setCheckpointFile(checkpoint).poll();
+	}
+
+	@Test
+	public void testCorruptCheckpointIsNeverOverwritten() throws Exception {
+		File log = folder.newFile("app.log");
+		File checkpoint = new File(folder.getRoot(), "app.checkpoint");
+		append(log, "a b c\nd e f\n");
+		try (TailFollowIngester ingester = new TailFollowIngester(builder(), log).setCheckpointFile(checkpoint)) {
+			ingester.poll();
+		}
+		// Cut the checkpoint partway through its states.
+		byte[] saved = Files.readAllBytes(checkpoint.toPath());
+		byte[] corrupt = Arrays.copyOf(saved, saved.length - 4);
+		Files.write(checkpoint.toPath(), corrupt);
+
+		try (TailFollowIngester ingester = new TailFollowIngester(builder(), log).setCheckpointFile(checkpoint)
+				.setPollInterval(10).setSnapshotInterval(10)) {
+			for (int i = 0; i < 2; i++) {
+				try {
+					ingester.poll();
+					fail("The corrupt checkpoint should have failed the restore.");
+				} catch (UncheckedIOException e) {
+					// Failing again on every call.
+				}
+			}
+			ingester.start();
+			Thread.sleep(100);
+			assertNotNull(ingester.getLastFailure());
+			assertNull(ingester.getSnapshot());
+		}
+		assertArrayEquals(corrupt, Files.readAllBytes(checkpoint.toPath()));
+	}
+
+	@Test
+	public void testBackgroundSnapshots() throws Exception {
+		File dir = folder.newFolder("logs");
+		File checkpoint = new File(dir, "logs.checkpoint");
+		CountDownLatch published = new CountDownLatch(1);
+
+		try (TailFollowIngester ingester = new TailFollowIngester(builder(), dir).setCheckpointFile(checkpoint)
+				.setPollInterval(10).setSnapshotInterval(10).addSnapshotListener(chain -> published.countDown())) {
+			append(new File(dir, "a.log"), "hello world\n");
+			ingester.start();
+			assertTrue(published.await(10, TimeUnit.SECONDS));
+			assertEquals("hello world", ingester.getSnapshot().generate(100));
+
+			// The checkpoint in the followed directory is never ingested.
+			Thread.sleep(100);
+			assertNull(ingester.getLastFailure());
+			assertEquals(3, ingester.publish().getStates().size());
+		}
+		assertTrue(checkpoint.isFile());
+	}
+
+	@Test
+	public void testBackgroundListenersRunWithoutLock() throws Exception {
+		File log = folder.newFile("a.log");
+		append(log, "hello world\n");
+		TailFollowIngester[] ingester = new TailFollowIngester[1];
+		AtomicReference<Boolean> lockHeld = new AtomicReference<>();
+		CountDownLatch published = new CountDownLatch(1);
+
+		ingester[0] = new TailFollowIngester(builder(), log).setPollInterval(10).addSnapshotListener(chain -> {
+			lockHeld.set(Thread.holdsLock(ingester[0]));
+			published.countDown();
+		});
+		try (TailFollowIngester started = ingester[0].start()) {
+			assertTrue(published.await(10, TimeUnit.SECONDS));
+			assertFalse(lockHeld.get());
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package com.germer.markov.chain;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+public class TextScorerTest {
+
+	private static final double DELTA = 1e-9;
+
+	private static final MarkovChain CHAIN = new MarkovChainBuilder().setPrefixLength(1).build("a b a b");
+
+	@Test
+	public void testUnsmoothedScore() {
+		TextScore score = CHAIN.scorer().setSmoothing(0).score("a b");
+
+		// Only the ending after "b" is uncertain: 1 * 1 * 1/2.
+		assertEquals(2, score.getTokens());
+		assertEquals(3, score.getTransitions());
+		assertEquals(0, score.getUnseenTransitions());
+		assertEquals(Math.log(0.5), score.getLogProbability(), DELTA);
+		assertEquals(Math.cbrt(2), score.getPerplexity(), DELTA);
+
+		score = CHAIN.scorer().setSmoothing(0).score("b a");
+		assertEquals(2, score.getUnseenTransitions());
+		assertEquals(Double.NEGATIVE_INFINITY, score.getLogProbability(), 0);
+	}
+
+	@Test
+	public void testSmoothedScore() {
+		// Vocabulary of 3 suffixes (a, b and the ending).
+		TextScore score = CHAIN.scorer().setSmoothing(1).score("a c");
+
+		assertEquals(2, score.getUnseenTransitions());
+		assertEquals(Math.log(2.0 / 4) + Math.log(1.0 / 5) + Math.log(1.0 / 3), score.getLogProbability(), DELTA);
+		assertTrue(CHAIN.score("a b a b").getLogProbability() > CHAIN.score("b a b a").getLogProbability());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeSmoothing() {
+		CHAIN.scorer().setSmoothing(-1);
+	}
+
+	@Test
+	public void testStreamedScore() {
+		MarkovChain chain = new MarkovChainBuilder().setTokenStrategy(TokenStrategy.ANY_SINGLE_CHARACTER)
+				.setPrefixLength(2).build("abracadabra");
+		String text = "cadabra abra";
+
+		TextScore score = chain.score(text);
+		TextScore streamed = chain.score(new StringReader(text));
+
+		assertEquals(12, score.getTokens());
+		assertEquals(score.getTokens(), streamed.getTokens());
+		assertEquals(score.getUnseenTransitions(), streamed.getUnseenTransitions());
+		assertEquals(score.getLogProbability(), streamed.getLogProbability(), DELTA);
+	}
+
+	@Test
+	public void testScoreAll() {
+		List<String> texts = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			texts.add(i % 3 == 0 ? "a b a b" : i % 3 == 1 ? "a c" : "");
+		}
+		TextScorer scorer = CHAIN.scorer().setSmoothing(0.5);
+
+		List<TextScore> scores = scorer.scoreAll(texts, new ForkJoinPool(4));
+
+		assertEquals(texts.size(), scores.size());
+		for (int i = 0; i < texts.size(); i++) {
+			TextScore expected = scorer.score(texts.get(i));
+			assertEquals(expected.getTokens(), scores.get(i).getTokens());
+			assertEquals(expected.getLogProbability(), scores.get(i).getLogProbability(), DELTA);
+		}
+	}
+}
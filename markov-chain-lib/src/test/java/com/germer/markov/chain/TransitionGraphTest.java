@@ -0,0 +1,136 @@
+package com.germer.markov.chain;
+
+import static org.junit.Assert.*;
+
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class TransitionGraphTest {
+
+	@Test
+	public void testEmptyChain() {
+		TransitionGraph graph = new TransitionGraph(2, new LinkedHashMap<>());
+
+		assertEquals(0, graph.getStateCount());
+		assertEquals(TransitionGraph.NO_STATE, graph.getStartState());
+		assertEquals("", new MarkovChain(2, " ", new LinkedHashMap<>()).compile().generate(10));
+	}
+
+	@Test
+	public void testEdgesPointToSuccessors() {
+		Prefix p = new Prefix(1);
+		WeightedSuffixes ws = new WeightedSuffixes();
+		ws.add("alpha");
+		ws.add("beta");
+		ws.add("beta");
+		WeightedSuffixes wsAlpha = new WeightedSuffixes();
+		wsAlpha.add(null);
+
+		Map<Prefix, WeightedSuffixes> map = new LinkedHashMap<>();
+		map.put(p.createNext("alpha"), wsAlpha);
+		map.put(p, ws);
+
+		TransitionGraph graph = new TransitionGraph(1, map);
+
+		assertEquals(2, graph.getStateCount());
+		assertEquals(3, graph.getEdgeCount());
+
+		// Hottest state first, hottest edge first.
+		int start = graph.getStartState();
+		assertEquals(0, start);
+		assertEquals(3, graph.getTotalWeight(start));
+		assertEquals("beta", graph.getToken(graph.sample(start, 0)));
+		assertEquals("beta", graph.getToken(graph.sample(start, 1)));
+		assertEquals("alpha", graph.getToken(graph.sample(start, 2)));
+
+		// Missing successor and final state.
+		assertEquals(TransitionGraph.NO_STATE, graph.getTarget(graph.sample(start, 0)));
+		int alpha = graph.getTarget(graph.sample(start, 2));
+		assertEquals(1, alpha);
+		assertNull(graph.getToken(graph.sample(alpha, 0)));
+		assertEquals(TransitionGraph.NO_STATE, graph.getTarget(graph.sample(alpha, 0)));
+	}
+
+	@Test
+	public void testHighFanoutSampling() {
+		WeightedSuffixes ws = new WeightedSuffixes();
+		for (int i = 0; i < 20; i++) {
+			ws.add("suffix" + i, i + 1);
+		}
+		Map<Prefix, WeightedSuffixes> map = new LinkedHashMap<>();
+		map.put(new Prefix(1), ws);
+
+		TransitionGraph graph = new TransitionGraph(1, map);
+		int start = graph.getStartState();
+
+		// Each random index selects the edge whose weight range contains it.
+		int[] hits = new int[graph.getEdgeCount()];
+		for (int r = 0; r < graph.getTotalWeight(start); r++) {
+			hits[graph.sample(start, r)]++;
+		}
+		for (int edge = 0; edge < hits.length; edge++) {
+			String token = graph.getToken(edge);
+			assertEquals(token, ws.getSuffixMap().get(token).intValue(), hits[edge]);
+		}
+	}
+
+	@Test
+	public void testCompiledChainGeneration() {
+		InputStream is = this.getClass().getResourceAsStream("/the-beatitudes.txt");
+		MarkovChain chain = new MarkovChainBuilder().setPrefixLength(1000).build(is);
+
+		String expected = chain.generate(1000);
+
+		assertEquals(expected, chain.compile().generate(1000));
+	}
+
+	@Test
+	public void testCompiledChainOriginalityWindow() {
+		InputStream is = this.getClass().getResourceAsStream("/the-beatitudes.txt");
+		MarkovChain chain = new MarkovChainBuilder().setPrefixLength(1000).setOriginalityWindow(5).build(is)
+				.compile();
+
+		assertEquals("Blessed are the poor", chain.generate(1000));
+	}
+
+	@Test
+	public void testLongestWalks() {
+		// "a" and "b" cycle, "c" ends after "d" only.
+		TransitionGraph graph = new MarkovChainBuilder().setPrefixLength(1).build("a b a c d").graph();
+		int[] longest = graph.getLongestWalks();
+		int[] shortest = graph.getDistancesToEnd();
+
+		for (int s = 0; s < graph.getStateCount(); s++) {
+			String token = graph.getPrefix(s).getTokens()[0];
+			if ("c".equals(token)) {
+				assertEquals(1, longest[s]);
+				assertEquals(1, shortest[s]);
+			} else if ("d".equals(token)) {
+				assertEquals(0, longest[s]);
+			} else {
+				assertEquals(Integer.MAX_VALUE, longest[s]);
+			}
+		}
+	}
+
+	@Test
+	public void testTemperedWeightsEvictLeastRecentlyUsed() {
+		TransitionGraph graph = new MarkovChainBuilder().build("a b a c a b d").graph();
+
+		double[] first = graph.getTemperedWeights(0.5);
+		double[] second = graph.getTemperedWeights(1.5);
+		for (int i = 2; i < TransitionGraph.MAX_TEMPERED_TABLES; i++) {
+			graph.getTemperedWeights(0.5 + i);
+		}
+		// Used again, so the least recently used one is the second.
+		assertSame(first, graph.getTemperedWeights(0.5));
+
+		graph.getTemperedWeights(100);
+
+		assertSame(first, graph.getTemperedWeights(0.5));
+		assertNotSame(second, graph.getTemperedWeights(1.5));
+	}
+}
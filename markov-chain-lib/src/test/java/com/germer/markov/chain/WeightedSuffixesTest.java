@@ -59,4 +59,30 @@ public class WeightedSuffixesTest {
 
 	}
 
+	@Test
+	public void testFrozenCopy() {
+		WeightedSuffixes ws = new WeightedSuffixes();
+		ws.add("alpha");
+		ws.add("beta");
+		ws.add("alpha");
+
+		WeightedSuffixes frozen = Mockito.spy(ws.frozenCopy());
+		when(frozen.generateRandomIndex()).thenReturn(0, 1, 2);
+
+		assertTrue(frozen.isFrozen());
+		assertEquals(ws.getSuffixMap(), frozen.getSuffixMap());
+		assertEquals(3, frozen.getTotalWeight());
+		assertEquals("alpha", frozen.getRandom());
+		assertEquals("alpha", frozen.getRandom());
+		assertEquals("beta", frozen.getRandom());
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testFrozenCopyIsImmutable() {
+		WeightedSuffixes ws = new WeightedSuffixes();
+		ws.add("alpha");
+
+		ws.frozenCopy().add("beta");
+	}
+
 }
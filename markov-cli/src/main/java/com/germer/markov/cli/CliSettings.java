@@ -0,0 +1,178 @@
+package com.germer.markov.cli;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.germer.markov.chain.MarkovChainBuilder;
+import com.germer.markov.chain.TokenStrategy;
+
+/**
+ * Settings of a command line run, parsed from {@code --name=value} arguments.
+ * Any other argument is an input file, where {@code -} stands for the standard
+ * input (also the only input when no file is given).
+ * <p>
+ * Recognized arguments (defaults in parenthesis):
+ * </p>
+ * <ul>
+ * <li>{@code --prefixLength} prefix length of the chains (2).</li>
+ * <li>{@code --maxTokens} token limit of each output (1000).</li>
+ * <li>{@code --outputs} outputs generated per input (1).</li>
+ * <li>{@code --tokenStrategy} {@code words} or {@code chars} (words).</li>
+ * <li>{@code --charset} charset of the inputs (system default).</li>
+ * <li>{@code --originalityWindow} see
+ * {@link MarkovChainBuilder#setOriginalityWindow} (0).</li>
+ * <li>{@code --delimiter} written after each output, accepting {@code \n},
+ * {@code \t} and {@code \0} escapes (\n).</li>
+ * <li>{@code --parallel} inputs processed at once, each one by its own thread
+ * (1).</li>
+ * <li>{@code --help} prints the usage and exits.</li>
+ * </ul>
+ *
+ * @author <a href="mailto:alegermer@gmail.com">Alessandro Germer</a>
+ */
+public class CliSettings {
+
+	/**
+	 * Input name standing for the standard input.
+	 */
+	public static final String STDIN = "-";
+
+	/**
+	 * Usage message of the command line tool.
+	 */
+	public static final String USAGE = "Usage: java -jar markov-cli.jar [options] [file...]\n"
+			+ "Builds a Markov Chain from each file (or the standard input, also as -)\n"
+			+ "and writes pseudo-random text generated from it to the standard output.\n\n"
+			+ "  --prefixLength=N       prefix length of the chains (2)\n"
+			+ "  --maxTokens=N          token limit of each output (1000)\n"
+			+ "  --outputs=N            outputs generated per input (1)\n"
+			+ "  --tokenStrategy=S      words or chars (words)\n"
+			+ "  --charset=NAME         charset of the inputs (system default)\n"
+			+ "  --originalityWindow=N  avoid copying N source tokens verbatim (0, off)\n"
+			+ "  --delimiter=S          written after each output, \\n \\t \\0 escapes (\\n)\n"
+			+ "  --parallel=N           inputs processed at once (1)\n"
+			+ "  --help                 prints this message\n";
+
+	private int prefixLength = MarkovChainBuilder.DEFAULT_PREFIX_LENGTH;
+	private int maxTokens = 1000;
+	private int outputs = 1;
+	private TokenStrategy tokenStrategy = MarkovChainBuilder.DEFAULT_TOKEN_STRATEGY;
+	private Charset charset = MarkovChainBuilder.DEFAULT_CHARSET;
+	private int originalityWindow = 0;
+	private String delimiter = "\n";
+	private int parallel = 1;
+	private boolean help = false;
+	private final List<String> inputs = new ArrayList<>();
+
+	private CliSettings() {
+	}
+
+	/**
+	 * Parses the settings from command line arguments.
+	 *
+	 * @param args the command line arguments.
+	 * @return the parsed settings.
+	 * @throws IllegalArgumentException if an option is unknown or has an
+	 *             invalid value.
+	 */
+	public static CliSettings parse(String[] args) {
+		CliSettings settings = new CliSettings();
+		for (String arg : args) {
+			if (!arg.startsWith("--")) {
+				settings.inputs.add(arg);
+				continue;
+			}
+			int eq = arg.indexOf('=');
+			String name = eq > 0 ? arg.substring(0, eq) : arg;
+			String value = eq > 0 ? arg.substring(eq + 1) : "";
+			switch (name) {
+			case "--prefixLength":
+				settings.prefixLength = positive(name, value);
+				break;
+			case "--maxTokens":
+				settings.maxTokens = positive(name, value);
+				break;
+			case "--outputs":
+				settings.outputs = positive(name, value);
+				break;
+			case "--tokenStrategy":
+				if (value.equals("words")) {
+					settings.tokenStrategy = TokenStrategy.WORD_GLUED_TO_PUNCTUATION;
+				} else if (value.equals("chars")) {
+					settings.tokenStrategy = TokenStrategy.ANY_SINGLE_CHARACTER;
+				} else {
+					throw new IllegalArgumentException("--tokenStrategy must be words or chars.");
+				}
+				break;
+			case "--charset":
+				settings.charset = Charset.forName(value);
+				break;
+			case "--originalityWindow":
+				settings.originalityWindow = Integer.parseInt(value);
+				if (settings.originalityWindow < 0) {
+					throw new IllegalArgumentException(name + " must not be negative.");
+				}
+				break;
+			case "--delimiter":
+				settings.delimiter = value.replace("\\n", "\n").replace("\\t", "\t").replace("\\0", "\0");
+				break;
+			case "--parallel":
+				settings.parallel = positive(name, value);
+				break;
+			case "--help":
+				settings.help = true;
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + name + ".");
+			}
+		}
+		if (settings.inputs.isEmpty()) {
+			settings.inputs.add(STDIN);
+		}
+		return settings;
+	}
+
+	private static int positive(String name, String value) {
+		int i = Integer.parseInt(value);
+		if (i <= 0) {
+			throw new IllegalArgumentException(name + " must be greater than 0.");
+		}
+		return i;
+	}
+
+	/**
+	 * Creates a {@link MarkovChainBuilder} configured with these settings.
+	 *
+	 * @return the new builder.
+	 */
+	public MarkovChainBuilder newBuilder() {
+		return new MarkovChainBuilder().setPrefixLength(prefixLength).setTokenStrategy(tokenStrategy)
+				.setSourceCharset(charset).setOriginalityWindow(originalityWindow);
+	}
+
+	public int getMaxTokens() {
+		return maxTokens;
+	}
+
+	public int getOutputs() {
+		return outputs;
+	}
+
+	public String getDelimiter() {
+		return delimiter;
+	}
+
+	public int getParallel() {
+		return parallel;
+	}
+
+	public boolean isHelp() {
+		return help;
+	}
+
+	public List<String> getInputs() {
+		return Collections.unmodifiableList(inputs);
+	}
+}
@@ -0,0 +1,216 @@
+package com.germer.markov.cli;
+
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.germer.markov.chain.MarkovChain;
+import com.germer.markov.chain.MarkovChainBuilder;
+
+/**
+ * Lightweight command line front-end of the Markov Chain library for batch
+ * jobs, with no dependency other than the library itself so it starts in a
+ * fraction of a second. Each input is built into its own chain and its
+ * outputs are streamed to the standard output, preceded by a
+ * {@code ==> name <==} header when there are many inputs. See
+ * {@link CliSettings} for the available arguments.
+ * <p>
+ * Inputs are processed one at a time by default, writing each output as soon
+ * as it's generated. In parallel mode inputs are built and generated by a
+ * pool of threads, a bounded window of them ahead of the one being written,
+ * and outputs are still written in the order of the inputs. Chains generating
+ * more than one output are compiled first (see {@link MarkovChain#compile()}).
+ * </p>
+ * <p>
+ * Inputs processed one at a time are built pipelined (see
+ * {@link MarkovChainBuilder#setPipelined}), decoding
+ * and tokenizing on two more threads while the cores would be idle anyway.
+ * Parallel builds aren't, since the pool already keeps a thread per core
+ * busy and the extra stage threads would only compete with it.
+ * </p>
+ *
+ * <pre>
+ * java -jar markov-cli/target/markov-cli-1.0.0.jar --outputs=3 --parallel=8 corpora/*.txt
+ * </pre>
+ *
+ * @author <a href="mailto:alegermer@gmail.com">Alessandro Germer</a>
+ */
+public class MarkovCli {
+
+	/**
+	 * Exit status when any input failed.
+	 */
+	public static final int EXIT_FAILURE = 1;
+	/**
+	 * Exit status for invalid arguments.
+	 */
+	public static final int EXIT_USAGE = 2;
+
+	private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+
+	private final CliSettings settings;
+	private final InputStream in;
+	private final Writer out;
+	private final PrintStream err;
+
+	/**
+	 * Creates a command line run.
+	 *
+	 * @param settings the parsed {@link CliSettings}.
+	 * @param in the standard input, read by the {@value CliSettings#STDIN}
+	 *            input.
+	 * @param out the output {@link Writer}.
+	 * @param err the stream of error messages.
+	 */
+	public MarkovCli(CliSettings settings, InputStream in, Writer out, PrintStream err) {
+		this.settings = settings;
+		this.in = in;
+		this.out = out;
+		this.err = err;
+	}
+
+	public static void main(String[] args) {
+		CliSettings settings;
+		try {
+			settings = CliSettings.parse(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println("markov-cli: " + e.getMessage());
+			System.err.print(CliSettings.USAGE);
+			System.exit(EXIT_USAGE);
+			return;
+		}
+		if (settings.isHelp()) {
+			System.out.print(CliSettings.USAGE);
+			return;
+		}
+
+		Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(FileDescriptor.out)),
+				OUTPUT_BUFFER_SIZE);
+		System.exit(new MarkovCli(settings, System.in, out, System.err).run());
+	}
+
+	/**
+	 * Processes all inputs, reporting failed ones to the error stream.
+	 *
+	 * @return the exit status, 0 if all inputs succeeded.
+	 */
+	public int run() {
+		try {
+			boolean failed = settings.getParallel() > 1 && settings.getInputs().size() > 1 ? runParallel()
+					: runSequential();
+			out.flush();
+			return failed ? EXIT_FAILURE : 0;
+		} catch (IOException e) {
+			err.println("markov-cli: can't write the output: " + e.getMessage());
+			return EXIT_FAILURE;
+		}
+	}
+
+	private boolean runSequential() throws IOException {
+		boolean failed = false;
+		for (String input : settings.getInputs()) {
+			MarkovChain chain;
+			try {
+				chain = build(input, true);
+			} catch (IOException | RuntimeException e) {
+				failed = true;
+				report(input, e);
+				continue;
+			}
+			writeHeader(input);
+			for (int i = 0; i < settings.getOutputs(); i++) {
+				out.write(chain.generate(settings.getMaxTokens()));
+				out.write(settings.getDelimiter());
+			}
+			out.flush();
+		}
+		return failed;
+	}
+
+	private boolean runParallel() throws IOException {
+		ExecutorService pool = Executors.newFixedThreadPool(settings.getParallel(), r -> {
+			Thread thread = new Thread(r, "markov-cli-worker");
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			List<String> inputs = settings.getInputs();
+			// Inputs in flight, bounded so finished outputs don't pile up.
+			int window = settings.getParallel() * 2;
+			Deque<Future<List<String>>> pending = new ArrayDeque<>(window);
+			int next = 0;
+			boolean failed = false;
+
+			for (String input : inputs) {
+				while (next < inputs.size() && pending.size() < window) {
+					String nextInput = inputs.get(next++);
+					pending.add(pool.submit(() -> generateAll(nextInput)));
+				}
+				try {
+					List<String> outputs = pending.remove().get();
+					writeHeader(input);
+					for (String output : outputs) {
+						out.write(output);
+						out.write(settings.getDelimiter());
+					}
+					out.flush();
+				} catch (ExecutionException e) {
+					failed = true;
+					report(input, e.getCause());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return true;
+				}
+			}
+			return failed;
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	private List<String> generateAll(String input) throws IOException {
+		MarkovChain chain = build(input, false);
+		List<String> outputs = new ArrayList<>(settings.getOutputs());
+		for (int i = 0; i < settings.getOutputs(); i++) {
+			outputs.add(chain.generate(settings.getMaxTokens()));
+		}
+		return outputs;
+	}
+
+	private MarkovChain build(String input, boolean pipelined) throws IOException {
+		MarkovChainBuilder builder = settings.newBuilder().setPipelined(pipelined);
+		MarkovChain chain;
+		if (input.equals(CliSettings.STDIN)) {
+			chain = builder.build(in);
+		} else {
+			try (InputStream is = new FileInputStream(input)) {
+				chain = builder.build(is);
+			}
+		}
+		return settings.getOutputs() > 1 ? chain.compile() : chain;
+	}
+
+	private void writeHeader(String input) throws IOException {
+		if (settings.getInputs().size() > 1) {
+			out.write("==> " + (input.equals(CliSettings.STDIN) ? "standard input" : input) + " <==\n");
+		}
+	}
+
+	private void report(String input, Throwable e) {
+		err.println("markov-cli: " + input + ": " + e.getMessage());
+	}
+}
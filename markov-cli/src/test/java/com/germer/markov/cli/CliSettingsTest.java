@@ -0,0 +1,97 @@
+package com.germer.markov.cli;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.germer.markov.chain.MarkovChain;
+import com.germer.markov.chain.MarkovChainBuilder;
+
+public class CliSettingsTest {
+
+	@Test
+	public void testDefaults() {
+		CliSettings settings = CliSettings.parse(new String[0]);
+
+		assertEquals(1000, settings.getMaxTokens());
+		assertEquals(1, settings.getOutputs());
+		assertEquals("\n", settings.getDelimiter());
+		assertEquals(1, settings.getParallel());
+		assertFalse(settings.isHelp());
+		// The standard input when no file is given.
+		assertEquals(Arrays.asList(CliSettings.STDIN), settings.getInputs());
+		assertEquals(MarkovChainBuilder.DEFAULT_PREFIX_LENGTH,
+				settings.newBuilder().build("a b c").getPrefixLength());
+	}
+
+	@Test
+	public void testOptions() {
+		CliSettings settings = CliSettings.parse(new String[] { "--prefixLength=3", "--maxTokens=50", "--outputs=4",
+				"--delimiter=\\t--\\0", "--parallel=8", "--help", "a.txt", "-", "b.txt" });
+
+		assertEquals(50, settings.getMaxTokens());
+		assertEquals(4, settings.getOutputs());
+		assertEquals("\t--\0", settings.getDelimiter());
+		assertEquals(8, settings.getParallel());
+		assertTrue(settings.isHelp());
+		assertEquals(Arrays.asList("a.txt", CliSettings.STDIN, "b.txt"), settings.getInputs());
+		assertEquals(3, settings.newBuilder().build("a b c").getPrefixLength());
+	}
+
+	@Test
+	public void testBuilderOptions() {
+		CliSettings settings = CliSettings
+				.parse(new String[] { "--prefixLength=1", "--tokenStrategy=chars", "--charset=ISO-8859-1" });
+
+		MarkovChain chain = settings.newBuilder()
+				.build(new ByteArrayInputStream("étè".getBytes(StandardCharsets.ISO_8859_1)));
+
+		// The start and a state per character, decoded as ISO-8859-1.
+		assertEquals(4, chain.getStates().size());
+		assertEquals("étè", chain.generate(100));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownOption() {
+		CliSettings.parse(new String[] { "--prefix=2" });
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMissingValue() {
+		CliSettings.parse(new String[] { "--maxTokens" });
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNotANumber() {
+		CliSettings.parse(new String[] { "--outputs=many" });
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testZeroPrefixLength() {
+		CliSettings.parse(new String[] { "--prefixLength=0" });
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeParallel() {
+		CliSettings.parse(new String[] { "--parallel=-1" });
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeOriginalityWindow() {
+		CliSettings.parse(new String[] { "--originalityWindow=-1" });
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownTokenStrategy() {
+		CliSettings.parse(new String[] { "--tokenStrategy=lines" });
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownCharset() {
+		CliSettings.parse(new String[] { "--charset=no-such-charset" });
+	}
+}
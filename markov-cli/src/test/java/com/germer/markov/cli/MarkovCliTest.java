@@ -0,0 +1,142 @@
+package com.germer.markov.cli;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MarkovCliTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final StringWriter out = new StringWriter();
+	private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+	/**
+	 * Writes a source text with no repeated words, so the chain can only
+	 * generate the text itself.
+	 */
+	private File source(String name, String text) throws IOException {
+		File file = folder.newFile(name);
+		Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+	private int run(InputStream in, String... args) {
+		List<String> arguments = new ArrayList<>();
+		arguments.add("--charset=UTF-8");
+		for (String arg : args) {
+			arguments.add(arg);
+		}
+		CliSettings settings = CliSettings.parse(arguments.toArray(new String[arguments.size()]));
+		return new MarkovCli(settings, in, out, new PrintStream(err, true)).run();
+	}
+
+	private int run(String... args) {
+		return run(new ByteArrayInputStream(new byte[0]), args);
+	}
+
+	private String errors() {
+		return new String(err.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void testFile() throws IOException {
+		File file = source("a.txt", "the quick brown fox");
+
+		assertEquals(0, run(file.getPath()));
+
+		assertEquals("the quick brown fox\n", out.toString());
+		assertEquals("", errors());
+	}
+
+	@Test
+	public void testStandardInput() {
+		InputStream in = new ByteArrayInputStream("jumps over the lazy dog".getBytes(StandardCharsets.UTF_8));
+
+		assertEquals(0, run(in, "--outputs=2", "--delimiter=|"));
+
+		assertEquals("jumps over the lazy dog|jumps over the lazy dog|", out.toString());
+	}
+
+	@Test
+	public void testMaxTokens() throws IOException {
+		File file = source("a.txt", "the quick brown fox");
+
+		assertEquals(0, run("--maxTokens=2", file.getPath()));
+
+		assertEquals("the quick\n", out.toString());
+	}
+
+	@Test
+	public void testManyInputsWithHeaders() throws IOException {
+		File a = source("a.txt", "the quick brown fox");
+		InputStream in = new ByteArrayInputStream("jumps over".getBytes(StandardCharsets.UTF_8));
+
+		assertEquals(0, run(in, "--outputs=2", a.getPath(), "-"));
+
+		assertEquals("==> " + a.getPath() + " <==\nthe quick brown fox\nthe quick brown fox\n"
+				+ "==> standard input <==\njumps over\njumps over\n", out.toString());
+	}
+
+	@Test
+	public void testParallelKeepsInputOrder() throws IOException {
+		List<String> args = new ArrayList<>();
+		args.add("--parallel=4");
+		args.add("--outputs=3");
+		StringBuilder expected = new StringBuilder();
+		// More inputs than the window of inputs in flight.
+		for (int i = 0; i < 20; i++) {
+			String text = "text " + i + " of many";
+			File file = source(i + ".txt", text);
+			args.add(file.getPath());
+			expected.append("==> ").append(file.getPath()).append(" <==\n");
+			for (int o = 0; o < 3; o++) {
+				expected.append(text).append('\n');
+			}
+		}
+
+		assertEquals(0, run(args.toArray(new String[args.size()])));
+
+		assertEquals(expected.toString(), out.toString());
+		assertEquals("", errors());
+	}
+
+	@Test
+	public void testFailedInputReported() throws IOException {
+		File a = source("a.txt", "the quick brown fox");
+		File missing = new File(folder.getRoot(), "missing.txt");
+		File b = source("b.txt", "jumps over");
+
+		assertEquals(MarkovCli.EXIT_FAILURE, run(a.getPath(), missing.getPath(), b.getPath()));
+
+		assertEquals("==> " + a.getPath() + " <==\nthe quick brown fox\n==> " + b.getPath() + " <==\njumps over\n",
+				out.toString());
+		assertTrue(errors().startsWith("markov-cli: " + missing.getPath() + ": "));
+	}
+
+	@Test
+	public void testParallelFailedInputReported() throws IOException {
+		File a = source("a.txt", "the quick brown fox");
+		File missing = new File(folder.getRoot(), "missing.txt");
+
+		assertEquals(MarkovCli.EXIT_FAILURE, run("--parallel=2", missing.getPath(), a.getPath()));
+
+		assertEquals("==> " + a.getPath() + " <==\nthe quick brown fox\n", out.toString());
+		assertTrue(errors().startsWith("markov-cli: " + missing.getPath() + ": "));
+	}
+}
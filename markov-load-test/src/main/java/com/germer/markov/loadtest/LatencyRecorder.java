@@ -0,0 +1,82 @@
+package com.germer.markov.loadtest;
+
+import java.util.Arrays;
+
+/**
+ * Collector of request latency samples (in nanoseconds) meant to be owned by a
+ * single client thread, and merged with the other threads ones once the run is
+ * over to compute percentiles. Samples are kept raw, so percentiles are exact.
+ * 
+ * @author <a href="mailto:alegermer@gmail.com">Alessandro Germer</a>
+ */
+public class LatencyRecorder {
+
+	private long[] samples = new long[4096];
+	private int size = 0;
+	private long errors = 0;
+
+	/**
+	 * Records the latency of a successful request.
+	 * 
+	 * @param nanos the request latency in nanoseconds.
+	 */
+	public void record(long nanos) {
+		if (size == samples.length) {
+			samples = Arrays.copyOf(samples, size * 2);
+		}
+		samples[size++] = nanos;
+	}
+
+	/**
+	 * Records a failed request.
+	 */
+	public void recordError() {
+		errors++;
+	}
+
+	/**
+	 * Merges the samples of this recorder into a target one.
+	 * 
+	 * @param target the recorder to receive this one samples.
+	 */
+	public void mergeInto(LatencyRecorder target) {
+		for (int i = 0; i < size; i++) {
+			target.record(samples[i]);
+		}
+		target.errors += errors;
+	}
+
+	/**
+	 * Gets the number of successful requests recorded.
+	 * 
+	 * @return the amount of samples.
+	 */
+	public int getCount() {
+		return size;
+	}
+
+	/**
+	 * Gets the number of failed requests recorded.
+	 * 
+	 * @return the amount of errors.
+	 */
+	public long getErrors() {
+		return errors;
+	}
+
+	/**
+	 * Computes a latency percentile (nearest-rank method).
+	 * 
+	 * @param percentile the percentile from 0 to 100 (e.g. 99.9).
+	 * @return the latency in nanoseconds, or 0 if there's no sample.
+	 */
+	public long getPercentile(double percentile) {
+		if (size == 0) {
+			return 0;
+		}
+		long[] sorted = Arrays.copyOf(samples, size);
+		Arrays.sort(sorted);
+		int rank = (int) Math.ceil(percentile / 100 * size);
+		return sorted[Math.max(0, Math.min(size - 1, rank - 1))];
+	}
+}
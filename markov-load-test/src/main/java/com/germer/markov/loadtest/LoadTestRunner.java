@@ -0,0 +1,227 @@
+package com.germer.markov.loadtest;
+
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.embedded.EmbeddedWebApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.germer.markov.loadtest.LoadTestSettings.Scenario;
+import com.germer.markov.web.StandaloneApplication;
+
+/**
+ * Self-contained HTTP load test of the web tool. It starts
+ * {@link StandaloneApplication} in the current JVM on a local port, drives a
+ * configurable mix of concurrent {@code /transform} uploads of synthetic
+ * corpora against it and reports throughput, p50/p99/p999 latencies per
+ * scenario and heap/GC statistics of the measured period. Since the server
+ * runs in the same JVM, heap and GC figures include the (small) client
+ * overhead. See {@link LoadTestSettings} for the available arguments.
+ * 
+ * <pre>
+ * mvn -pl markov-load-test exec:java -Dexec.args="--threads=16 --duration=60"
+ * </pre>
+ * 
+ * @author <a href="mailto:alegermer@gmail.com">Alessandro Germer</a>
+ */
+public class LoadTestRunner {
+
+	private final LoadTestSettings settings;
+	private final List<byte[]> corpora = new ArrayList<>();
+	private final int totalWeight;
+
+	/**
+	 * Heap and GC counters snapshot, used to report the measured period.
+	 */
+	private static class JvmStats {
+		private final long gcCount;
+		private final long gcMillis;
+		private final long heapUsed;
+
+		private JvmStats() {
+			long count = 0;
+			long millis = 0;
+			for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+				count += Math.max(0, gc.getCollectionCount());
+				millis += Math.max(0, gc.getCollectionTime());
+			}
+			this.gcCount = count;
+			this.gcMillis = millis;
+			this.heapUsed = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+		}
+	}
+
+	/**
+	 * Creates a runner, generating the synthetic corpus of each scenario.
+	 * 
+	 * @param settings the load test settings.
+	 */
+	public LoadTestRunner(LoadTestSettings settings) {
+		this.settings = settings;
+		SyntheticCorpus generator = new SyntheticCorpus(settings.getSeed());
+		int weight = 0;
+		for (Scenario scenario : settings.getMix()) {
+			corpora.add(generator.generate(scenario.getCorpusBytes()));
+			weight += scenario.getWeight();
+		}
+		this.totalWeight = weight;
+	}
+
+	public static void main(String[] args) throws Exception {
+		LoadTestSettings settings = LoadTestSettings.parse(args);
+
+		List<String> appArgs = new ArrayList<>(settings.getApplicationArgs());
+		appArgs.add("--server.port=" + settings.getPort());
+		appArgs.add("--spring.main.banner-mode=off");
+		appArgs.add("--logging.level.root=WARN");
+
+		ConfigurableApplicationContext context = SpringApplication.run(StandaloneApplication.class,
+				appArgs.toArray(new String[0]));
+		try {
+			int port = ((EmbeddedWebApplicationContext) context).getEmbeddedServletContainer().getPort();
+			new LoadTestRunner(settings).run(new TransformClient("http://localhost:" + port), System.out);
+		} finally {
+			context.close();
+		}
+	}
+
+	/**
+	 * Runs the warm-up and measured phases against a web tool and prints the
+	 * report.
+	 * 
+	 * @param client the client aimed to the web tool under test.
+	 * @param out the report output.
+	 * @throws Exception if the client threads can't be run.
+	 */
+	public void run(TransformClient client, PrintStream out) throws Exception {
+		out.printf("Load test: %d threads, %ds warm-up, %ds measured, %s uploads, mix %s%n", settings.getThreads(),
+				settings.getWarmupSeconds(), settings.getDurationSeconds(),
+				settings.isStreamUpload() ? "stream" : "multipart", settings.getMix());
+
+		if (settings.getWarmupSeconds() > 0) {
+			drive(client, settings.getWarmupSeconds());
+		}
+
+		System.gc();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			pool.resetPeakUsage();
+		}
+		JvmStats before = new JvmStats();
+		long start = System.nanoTime();
+		List<LatencyRecorder[]> results = drive(client, settings.getDurationSeconds());
+		double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+		JvmStats after = new JvmStats();
+
+		report(results, elapsedSeconds, before, after, out);
+	}
+
+	/**
+	 * Drives the request mix with all client threads for a given duration.
+	 * 
+	 * @return the per-thread recorders, one per scenario.
+	 */
+	private List<LatencyRecorder[]> drive(TransformClient client, int seconds) throws Exception {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+		ExecutorService executor = Executors.newFixedThreadPool(settings.getThreads());
+		try {
+			List<Future<LatencyRecorder[]>> futures = new ArrayList<>();
+			for (int t = 0; t < settings.getThreads(); t++) {
+				Random random = new Random(settings.getSeed() + t);
+				futures.add(executor.submit(() -> clientLoop(client, random, deadline)));
+			}
+
+			List<LatencyRecorder[]> results = new ArrayList<>();
+			for (Future<LatencyRecorder[]> future : futures) {
+				results.add(future.get());
+			}
+			return results;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private LatencyRecorder[] clientLoop(TransformClient client, Random random, long deadline) {
+		List<Scenario> mix = settings.getMix();
+		LatencyRecorder[] recorders = new LatencyRecorder[mix.size()];
+		for (int i = 0; i < recorders.length; i++) {
+			recorders[i] = new LatencyRecorder();
+		}
+
+		while (System.nanoTime() < deadline) {
+			int index = pickScenario(random);
+			Scenario scenario = mix.get(index);
+			long start = System.nanoTime();
+			try {
+				if (settings.isStreamUpload()) {
+					client.transformStream(corpora.get(index), scenario.getPrefixLen(), scenario.getMaxTokens(),
+							settings.getTokenStrategy());
+				} else {
+					client.transform(corpora.get(index), scenario.getPrefixLen(), scenario.getMaxTokens(),
+							settings.getTokenStrategy());
+				}
+				recorders[index].record(System.nanoTime() - start);
+			} catch (Exception e) {
+				recorders[index].recordError();
+			}
+		}
+		return recorders;
+	}
+
+	private int pickScenario(Random random) {
+		int pick = random.nextInt(totalWeight);
+		List<Scenario> mix = settings.getMix();
+		for (int i = 0; i < mix.size(); i++) {
+			pick -= mix.get(i).getWeight();
+			if (pick < 0) {
+				return i;
+			}
+		}
+		return mix.size() - 1;
+	}
+
+	private void report(List<LatencyRecorder[]> results, double elapsedSeconds, JvmStats before, JvmStats after,
+			PrintStream out) {
+		List<Scenario> mix = settings.getMix();
+		LatencyRecorder total = new LatencyRecorder();
+
+		out.printf("%n%-20s %10s %8s %10s %10s %10s %10s%n", "scenario", "requests", "errors", "req/s", "p50 ms",
+				"p99 ms", "p999 ms");
+		for (int i = 0; i < mix.size(); i++) {
+			LatencyRecorder scenario = new LatencyRecorder();
+			for (LatencyRecorder[] recorders : results) {
+				recorders[i].mergeInto(scenario);
+			}
+			scenario.mergeInto(total);
+			printRow(out, mix.get(i).toString(), scenario, elapsedSeconds);
+		}
+		printRow(out, "total", total, elapsedSeconds);
+
+		long peakHeap = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+				peakHeap += pool.getPeakUsage().getUsed();
+			}
+		}
+		out.printf("%nheap: used %d MB -> %d MB, peak %d MB, max %d MB%n", before.heapUsed >> 20,
+				after.heapUsed >> 20, peakHeap >> 20, Runtime.getRuntime().maxMemory() >> 20);
+		out.printf("gc: %d collections, %d ms (%.2f%% of wall time)%n", after.gcCount - before.gcCount,
+				after.gcMillis - before.gcMillis, (after.gcMillis - before.gcMillis) / (elapsedSeconds * 10));
+	}
+
+	private static void printRow(PrintStream out, String name, LatencyRecorder recorder, double elapsedSeconds) {
+		out.printf("%-20s %10d %8d %10.1f %10.2f %10.2f %10.2f%n", name, recorder.getCount(), recorder.getErrors(),
+				recorder.getCount() / elapsedSeconds, recorder.getPercentile(50) / 1e6,
+				recorder.getPercentile(99) / 1e6, recorder.getPercentile(99.9) / 1e6);
+	}
+}
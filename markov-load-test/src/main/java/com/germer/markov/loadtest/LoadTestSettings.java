@@ -0,0 +1,223 @@
+package com.germer.markov.loadtest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Settings of a load test run, parsed from {@code --name=value} command line
+ * arguments. Any argument not recognized here is kept aside to be forwarded to
+ * the Spring Boot application under test (e.g.
+ * {@code --multipart.max-file-size=64Mb}).
+ * <p>
+ * Recognized arguments (defaults in parenthesis):
+ * </p>
+ * <ul>
+ * <li>{@code --port} server port, 0 for a random free one (0).</li>
+ * <li>{@code --threads} concurrent client threads (8).</li>
+ * <li>{@code --warmup} warm-up duration in seconds, not measured (10).</li>
+ * <li>{@code --duration} measured duration in seconds (30).</li>
+ * <li>{@code --tokenStrategy} token strategy index (0).</li>
+ * <li>{@code --upload} upload flavor, {@code multipart} for
+ * {@code /transform} or {@code stream} for the raw-body
+ * {@code /transform/stream} (multipart).</li>
+ * <li>{@code --seed} seed of the synthetic corpora and request mix (42).</li>
+ * <li>{@code --mix} comma-separated scenarios as
+ * {@code size:prefixLen:maxTokens:weight}, where size accepts k/m suffixes (
+ * {@value #DEFAULT_MIX}).</li>
+ * </ul>
+ * 
+ * @author <a href="mailto:alegermer@gmail.com">Alessandro Germer</a>
+ */
+public class LoadTestSettings {
+
+	/**
+	 * Default request mix, kept under the default 1Mb multipart file limit of
+	 * the web tool.
+	 */
+	public static final String DEFAULT_MIX = "16k:2:1000:6,128k:2:1000:3,900k:3:1000:1";
+
+	private int port = 0;
+	private int threads = 8;
+	private int warmupSeconds = 10;
+	private int durationSeconds = 30;
+	private int tokenStrategy = 0;
+	private boolean streamUpload = false;
+	private long seed = 42;
+	private List<Scenario> mix = parseMix(DEFAULT_MIX);
+	private final List<String> applicationArgs = new ArrayList<>();
+
+	/**
+	 * A request scenario of the mix: a synthetic corpus size and the
+	 * transformation parameters, picked by the client threads proportionally
+	 * to its weight.
+	 *
+	 * @author <a href="mailto:alegermer@gmail.com">Alessandro Germer</a>
+	 */
+	public static class Scenario {
+		private final int corpusBytes;
+		private final int prefixLen;
+		private final int maxTokens;
+		private final int weight;
+
+		Scenario(int corpusBytes, int prefixLen, int maxTokens, int weight) {
+			this.corpusBytes = corpusBytes;
+			this.prefixLen = prefixLen;
+			this.maxTokens = maxTokens;
+			this.weight = weight;
+		}
+
+		public int getCorpusBytes() {
+			return corpusBytes;
+		}
+
+		public int getPrefixLen() {
+			return prefixLen;
+		}
+
+		public int getMaxTokens() {
+			return maxTokens;
+		}
+
+		public int getWeight() {
+			return weight;
+		}
+
+		@Override
+		public String toString() {
+			return formatSize(corpusBytes) + " p" + prefixLen + " t" + maxTokens;
+		}
+	}
+
+	private LoadTestSettings() {
+	}
+
+	/**
+	 * Parses the settings from command line arguments.
+	 * 
+	 * @param args the {@code --name=value} arguments.
+	 * @return the parsed settings.
+	 * @throws IllegalArgumentException if a recognized argument has an invalid
+	 *             value.
+	 */
+	public static LoadTestSettings parse(String[] args) {
+		LoadTestSettings settings = new LoadTestSettings();
+		for (String arg : args) {
+			int eq = arg.indexOf('=');
+			String name = eq > 0 ? arg.substring(0, eq) : arg;
+			String value = eq > 0 ? arg.substring(eq + 1) : "";
+			switch (name) {
+			case "--port":
+				settings.port = Integer.parseInt(value);
+				break;
+			case "--threads":
+				settings.threads = positive(name, Integer.parseInt(value));
+				break;
+			case "--warmup":
+				settings.warmupSeconds = Integer.parseInt(value);
+				break;
+			case "--duration":
+				settings.durationSeconds = positive(name, Integer.parseInt(value));
+				break;
+			case "--tokenStrategy":
+				settings.tokenStrategy = Integer.parseInt(value);
+				break;
+			case "--upload":
+				if (!value.equals("multipart") && !value.equals("stream")) {
+					throw new IllegalArgumentException("--upload must be multipart or stream.");
+				}
+				settings.streamUpload = value.equals("stream");
+				break;
+			case "--seed":
+				settings.seed = Long.parseLong(value);
+				break;
+			case "--mix":
+				settings.mix = parseMix(value);
+				break;
+			default:
+				settings.applicationArgs.add(arg);
+			}
+		}
+		return settings;
+	}
+
+	private static int positive(String name, int value) {
+		if (value <= 0) {
+			throw new IllegalArgumentException(name + " must be greater than 0.");
+		}
+		return value;
+	}
+
+	private static List<Scenario> parseMix(String mix) {
+		List<Scenario> scenarios = new ArrayList<>();
+		for (String scenario : mix.split(",")) {
+			String[] fields = scenario.trim().split(":");
+			if (fields.length != 4) {
+				throw new IllegalArgumentException("Invalid scenario '" + scenario
+						+ "', expected size:prefixLen:maxTokens:weight.");
+			}
+			scenarios.add(new Scenario(parseSize(fields[0]), positive("prefixLen", Integer.parseInt(fields[1])),
+					Integer.parseInt(fields[2]), positive("weight", Integer.parseInt(fields[3]))));
+		}
+		return Collections.unmodifiableList(scenarios);
+	}
+
+	private static int parseSize(String size) {
+		String s = size.trim().toLowerCase();
+		int multiplier = 1;
+		if (s.endsWith("k")) {
+			multiplier = 1024;
+		} else if (s.endsWith("m")) {
+			multiplier = 1024 * 1024;
+		}
+		if (multiplier > 1) {
+			s = s.substring(0, s.length() - 1);
+		}
+		return positive("size", Integer.parseInt(s) * multiplier);
+	}
+
+	static String formatSize(long bytes) {
+		if (bytes >= 1024 * 1024 && bytes % (1024 * 1024) == 0) {
+			return (bytes / (1024 * 1024)) + "m";
+		} else if (bytes >= 1024 && bytes % 1024 == 0) {
+			return (bytes / 1024) + "k";
+		}
+		return Long.toString(bytes);
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public int getWarmupSeconds() {
+		return warmupSeconds;
+	}
+
+	public int getDurationSeconds() {
+		return durationSeconds;
+	}
+
+	public int getTokenStrategy() {
+		return tokenStrategy;
+	}
+
+	public boolean isStreamUpload() {
+		return streamUpload;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public List<Scenario> getMix() {
+		return mix;
+	}
+
+	public List<String> getApplicationArgs() {
+		return Collections.unmodifiableList(applicationArgs);
+	}
+}
@@ -0,0 +1,116 @@
+package com.germer.markov.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal HTTP client for the web tool {@code /transform} API, posting a
+ * corpus as a multipart upload (or as the raw body of
+ * {@code /transform/stream}) and reading the whole JSON response, so the
+ * measured latency includes the server-side serialization.
+ * 
+ * @author <a href="mailto:alegermer@gmail.com">Alessandro Germer</a>
+ */
+public class TransformClient {
+
+	private static final String BOUNDARY = "----markov-load-test-boundary";
+
+	private final String baseUrl;
+
+	/**
+	 * Creates a client for a web tool instance.
+	 * 
+	 * @param baseUrl the base URL of the web tool (e.g.
+	 *            {@code http://localhost:8080}).
+	 */
+	public TransformClient(String baseUrl) {
+		this.baseUrl = baseUrl;
+	}
+
+	/**
+	 * Posts a multipart {@code /transform} request and reads its response.
+	 * 
+	 * @param corpus the corpus to be uploaded.
+	 * @param prefixLen the prefix length parameter.
+	 * @param maxTokens the maximum tokens parameter.
+	 * @param tokenStrategy the token strategy index parameter.
+	 * @return the size of the response body in bytes.
+	 * @throws IOException if the request fails or the response isn't 200 OK.
+	 */
+	public long transform(byte[] corpus, int prefixLen, int maxTokens, int tokenStrategy) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + "/transform").openConnection();
+		connection.setRequestMethod("POST");
+		connection.setDoOutput(true);
+		connection.setRequestProperty("Content-Type", "multipart/form-data; boundary=" + BOUNDARY);
+
+		ByteArrayOutputStream header = new ByteArrayOutputStream();
+		writeField(header, "prefixLen", prefixLen);
+		writeField(header, "maxTokens", maxTokens);
+		writeField(header, "tokenStrategy", tokenStrategy);
+		header.write(("--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"file\"; filename=\"corpus.txt\""
+				+ "\r\nContent-Type: text/plain\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+		byte[] trailer = ("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8);
+
+		connection.setFixedLengthStreamingMode((long) header.size() + corpus.length + trailer.length);
+		try (OutputStream out = connection.getOutputStream()) {
+			header.writeTo(out);
+			out.write(corpus);
+			out.write(trailer);
+		}
+
+		return readResponse(connection);
+	}
+
+	/**
+	 * Posts a raw-body {@code /transform/stream} request and reads its
+	 * response.
+	 * 
+	 * @param corpus the corpus to be uploaded.
+	 * @param prefixLen the prefix length parameter.
+	 * @param maxTokens the maximum tokens parameter.
+	 * @param tokenStrategy the token strategy index parameter.
+	 * @return the size of the response body in bytes.
+	 * @throws IOException if the request fails or the response isn't 200 OK.
+	 */
+	public long transformStream(byte[] corpus, int prefixLen, int maxTokens, int tokenStrategy) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + "/transform/stream?prefixLen="
+				+ prefixLen + "&maxTokens=" + maxTokens + "&tokenStrategy=" + tokenStrategy).openConnection();
+		connection.setRequestMethod("POST");
+		connection.setDoOutput(true);
+		connection.setRequestProperty("Content-Type", "text/plain; charset=UTF-8");
+
+		connection.setFixedLengthStreamingMode((long) corpus.length);
+		try (OutputStream out = connection.getOutputStream()) {
+			out.write(corpus);
+		}
+
+		return readResponse(connection);
+	}
+
+	private static void writeField(ByteArrayOutputStream out, String name, int value) throws IOException {
+		out.write(("--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"" + name + "\"\r\n\r\n" + value
+				+ "\r\n").getBytes(StandardCharsets.UTF_8));
+	}
+
+	static long readResponse(HttpURLConnection connection) throws IOException {
+		int status = connection.getResponseCode();
+		if (status != HttpURLConnection.HTTP_OK) {
+			connection.disconnect();
+			throw new IOException("Unexpected HTTP status " + status + ".");
+		}
+
+		long length = 0;
+		byte[] buffer = new byte[1 << 14];
+		try (InputStream in = connection.getInputStream()) {
+			for (int n; (n = in.read(buffer)) >= 0;) {
+				length += n;
+			}
+		}
+		return length;
+	}
+}
@@ -0,0 +1,100 @@
+package com.germer.markov.memory;
+
+import static com.germer.markov.memory.MemoryThresholds.assertWithin;
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.function.IntSupplier;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.germer.markov.chain.MarkovChain;
+
+public class AllocationTest {
+
+	private static final int MIN_WARMUP_ROUNDS = 5;
+	private static final int MAX_WARMUP_ROUNDS = 20;
+	private static final int GENERATE_CALLS = 2000;
+	private static final int MAX_TOKENS = 500;
+
+	private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory
+			.getThreadMXBean();
+
+	@BeforeClass
+	public static void setUpClass() {
+		assertTrue("Thread allocation counters are not supported",
+				THREADS.isThreadAllocatedMemorySupported() && THREADS.isThreadAllocatedMemoryEnabled());
+	}
+
+	private static long allocatedBytes() {
+		return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	private static double measure(IntSupplier workload) {
+		long before = allocatedBytes();
+		int units = workload.getAsInt();
+		return (double) (allocatedBytes() - before) / units;
+	}
+
+	/**
+	 * Measures the bytes allocated per unit of work by the current thread,
+	 * after warming it up until two rounds in a row allocate about the same
+	 * (within 1%), so measurements are taken on JIT compiled code. The
+	 * workload returns its amount of units (e.g. tokens).
+	 */
+	private static double allocationPerUnit(IntSupplier workload) {
+		double previous = measure(workload);
+		for (int round = 1; round < MAX_WARMUP_ROUNDS; round++) {
+			double current = measure(workload);
+			if (round >= MIN_WARMUP_ROUNDS && Math.abs(current - previous) <= previous / 100) {
+				break;
+			}
+			previous = current;
+		}
+		return measure(workload);
+	}
+
+	/**
+	 * Generates into a reused builder, so only the walk itself is measured
+	 * and not the building of the output strings.
+	 * 
+	 * @return the amount of tokens generated.
+	 */
+	private static int generate(MarkovChain chain, StringBuilder output) {
+		int tokens = 0;
+		for (int i = 0; i < GENERATE_CALLS; i++) {
+			output.setLength(0);
+			tokens += chain.generate(MAX_TOKENS, output);
+		}
+		return Math.max(1, tokens);
+	}
+
+	private void testAllocation(ReferenceCorpus corpus) {
+		assertWithin(corpus.key("allocatedBytesPerBuiltToken"), allocationPerUnit(() -> {
+			corpus.build();
+			return corpus.getTokenCount();
+		}));
+
+		MarkovChain chain = corpus.build();
+		StringBuilder output = new StringBuilder();
+		assertWithin(corpus.key("allocatedBytesPerWalkedToken"), allocationPerUnit(() -> generate(chain, output)));
+
+		// Allocation free per token, so only the fixed cost of each call counts.
+		chain.compile();
+		assertWithin(corpus.key("allocatedBytesPerCompiledWalk"), allocationPerUnit(() -> {
+			generate(chain, output);
+			return GENERATE_CALLS;
+		}));
+	}
+
+	@Test
+	public void testWordsAllocation() {
+		testAllocation(ReferenceCorpus.WORDS);
+	}
+
+	@Test
+	public void testCharactersAllocation() {
+		testAllocation(ReferenceCorpus.CHARACTERS);
+	}
+}
@@ -0,0 +1,46 @@
+package com.germer.markov.memory;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Properties;
+
+/**
+ * Recorded memory thresholds (see {@code memory-thresholds.properties}) the
+ * measurements are checked against. Thresholds are the measurements at the
+ * time they were recorded plus some headroom, so they must be lowered after an
+ * improvement and only raised on purpose.
+ * 
+ * @author <a href="mailto:alegermer@gmail.com">Alessandro Germer</a>
+ */
+final class MemoryThresholds {
+
+	private static final String RESOURCE = "/memory-thresholds.properties";
+	private static final Properties THRESHOLDS = new Properties();
+
+	static {
+		try (InputStream is = MemoryThresholds.class.getResourceAsStream(RESOURCE)) {
+			THRESHOLDS.load(is);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private MemoryThresholds() {
+	}
+
+	/**
+	 * Checks a measurement against its recorded threshold, failing when above.
+	 * 
+	 * @param key the threshold key.
+	 * @param measured the measured value.
+	 */
+	static void assertWithin(String key, double measured) {
+		String threshold = THRESHOLDS.getProperty(key);
+		assertNotNull("No threshold recorded for " + key + " (measured " + measured + ")", threshold);
+		assertTrue(key + " = " + measured + " passed its threshold " + threshold,
+				measured <= Double.parseDouble(threshold));
+	}
+}
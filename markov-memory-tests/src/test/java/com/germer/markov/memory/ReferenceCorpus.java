@@ -0,0 +1,92 @@
+package com.germer.markov.memory;
+
+import java.nio.charset.StandardCharsets;
+
+import com.germer.markov.chain.MarkovChain;
+import com.germer.markov.chain.MarkovChainBuilder;
+import com.germer.markov.chain.TokenStrategy;
+
+/**
+ * Reference corpora the memory measurements are taken on, each one with its
+ * chain build parameters. Corpora are synthetic (see {@link SyntheticCorpus})
+ * and deterministic, so measurements only change when the code does.
+ * 
+ * @author <a href="mailto:alegermer@gmail.com">Alessandro Germer</a>
+ */
+enum ReferenceCorpus {
+
+	/**
+	 * Word-level chain of prefix length 2 over 1MB of text.
+	 */
+	WORDS(TokenStrategy.WORD_GLUED_TO_PUNCTUATION, 2, 1 << 20),
+	/**
+	 * Character-level chain of prefix length 5 over 256KB of text.
+	 */
+	CHARACTERS(TokenStrategy.ANY_SINGLE_CHARACTER, 5, 1 << 18);
+
+	private static final long SEED = 20151201L;
+
+	private final TokenStrategy tokenStrategy;
+	private final int prefixLength;
+	private final String text;
+	private final int tokenCount;
+
+	private ReferenceCorpus(TokenStrategy tokenStrategy, int prefixLength, int bytes) {
+		this.tokenStrategy = tokenStrategy;
+		this.prefixLength = prefixLength;
+		this.text = new String(new SyntheticCorpus(SEED).generate(bytes), StandardCharsets.UTF_8);
+		this.tokenCount = countTokens(text);
+	}
+
+	/**
+	 * Builds the chain of this corpus.
+	 * 
+	 * @return the new {@link MarkovChain}.
+	 */
+	MarkovChain build() {
+		return new MarkovChainBuilder().setTokenStrategy(tokenStrategy).setPrefixLength(prefixLength)
+				.setSourceCharset(StandardCharsets.UTF_8).build(text);
+	}
+
+	/**
+	 * Gets the number of source tokens of this corpus.
+	 * 
+	 * @return the amount of tokens.
+	 */
+	int getTokenCount() {
+		return tokenCount;
+	}
+
+	/**
+	 * Counts the tokens of a text of this corpus (or generated from it)
+	 * without allocating.
+	 * 
+	 * @param s the text.
+	 * @return the amount of tokens.
+	 */
+	int countTokens(String s) {
+		if (tokenStrategy == TokenStrategy.ANY_SINGLE_CHARACTER) {
+			return s.length();
+		}
+		int tokens = 0;
+		boolean inToken = false;
+		for (int i = 0; i < s.length(); i++) {
+			boolean whitespace = Character.isWhitespace(s.charAt(i));
+			if (!whitespace && !inToken) {
+				tokens++;
+			}
+			inToken = !whitespace;
+		}
+		return tokens;
+	}
+
+	/**
+	 * Gets the threshold key of a measurement taken on this corpus.
+	 * 
+	 * @param measurement the measurement name.
+	 * @return the key in the thresholds file.
+	 */
+	String key(String measurement) {
+		return name().toLowerCase() + "." + measurement;
+	}
+}
@@ -0,0 +1,73 @@
+package com.germer.markov.memory;
+
+import static com.germer.markov.memory.MemoryThresholds.assertWithin;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.openjdk.jol.info.ClassLayout;
+import org.openjdk.jol.info.GraphLayout;
+
+import com.germer.markov.chain.MarkovChain;
+import com.germer.markov.chain.TokenStrategy;
+
+public class RetainedSizeTest {
+
+	/**
+	 * Retained size of a chain, leaving out its {@link TokenStrategy}: a
+	 * constant shared by all chains, which compiled Pattern can't be walked on
+	 * JDK 15+ (its predicates are hidden classes).
+	 */
+	private static long retainedSize(MarkovChain chain) {
+		List<Object> roots = new ArrayList<>();
+		try {
+			for (Field field : MarkovChain.class.getDeclaredFields()) {
+				if (!Modifier.isStatic(field.getModifiers()) && !field.getType().isPrimitive()
+						&& field.getType() != TokenStrategy.class) {
+					field.setAccessible(true);
+					if (field.get(chain) != null) {
+						roots.add(field.get(chain));
+					}
+				}
+			}
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+		return ClassLayout.parseClass(MarkovChain.class).instanceSize()
+				+ GraphLayout.parseInstance(roots.toArray()).totalSize();
+	}
+
+	private static int transitions(MarkovChain chain) {
+		return chain.getStates().stream().mapToInt(s -> s.getSuffixes().size()).sum();
+	}
+
+	private void testRetainedSize(ReferenceCorpus corpus) {
+		MarkovChain chain = corpus.build();
+		int states = chain.getStates().size();
+
+		long built = retainedSize(chain);
+		assertWithin(corpus.key("retainedBytesPerState"), (double) built / states);
+		assertWithin(corpus.key("retainedBytesPerToken"), (double) built / corpus.getTokenCount());
+
+		chain.compact();
+		long compacted = retainedSize(chain);
+		assertWithin(corpus.key("compactedBytesPerState"), (double) compacted / states);
+
+		chain.compile();
+		assertWithin(corpus.key("compiledGraphBytesPerTransition"),
+				(double) (retainedSize(chain) - compacted) / transitions(chain));
+	}
+
+	@Test
+	public void testWordsRetainedSize() {
+		testRetainedSize(ReferenceCorpus.WORDS);
+	}
+
+	@Test
+	public void testCharactersRetainedSize() {
+		testRetainedSize(ReferenceCorpus.CHARACTERS);
+	}
+}
@@ -0,0 +1,93 @@
+package com.germer.markov.memory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Generator of synthetic natural-language-like corpora. Words are drawn from a
+ * fixed pseudo-word vocabulary following a Zipf distribution (as word
+ * frequencies of natural languages do), grouped in sentences and lines, so
+ * the resulting Markov Chains have realistic fan-out and state counts.
+ * <p>
+ * Same generator as the load-test module's one, copied so memory measurements
+ * don't run with the web application on their classpath. Both must produce the
+ * same corpus for a seed, or the recorded thresholds no longer apply.
+ * </p>
+ * 
+ * @author <a href="mailto:alegermer@gmail.com">Alessandro Germer</a>
+ */
+class SyntheticCorpus {
+
+	private static final int VOCABULARY_SIZE = 20000;
+	private static final double ZIPF_EXPONENT = 1.07;
+	private static final String LETTERS = "etaoinshrdlcumwfgypbvkjxqz";
+
+	private final String[] vocabulary = new String[VOCABULARY_SIZE];
+	// cumulative Zipf probabilities related to the vocabulary ranks.
+	private final double[] cumulative = new double[VOCABULARY_SIZE];
+	private final Random random;
+
+	/**
+	 * Creates a generator with a deterministic vocabulary and word sequence
+	 * for a given seed.
+	 * 
+	 * @param seed the pseudo-random seed.
+	 */
+	SyntheticCorpus(long seed) {
+		this.random = new Random(seed);
+
+		double sum = 0;
+		for (int rank = 0; rank < VOCABULARY_SIZE; rank++) {
+			// Frequent words tend to be shorter, as in natural languages.
+			int length = 1 + Math.min(12, (int) (Math.log(rank + 2) + random.nextInt(4)));
+			StringBuilder word = new StringBuilder(length);
+			for (int i = 0; i < length; i++) {
+				word.append(LETTERS.charAt((int) (Math.abs(random.nextGaussian()) * 6) % LETTERS.length()));
+			}
+			vocabulary[rank] = word.toString();
+
+			sum += 1 / Math.pow(rank + 1, ZIPF_EXPONENT);
+			cumulative[rank] = sum;
+		}
+		for (int rank = 0; rank < VOCABULARY_SIZE; rank++) {
+			cumulative[rank] /= sum;
+		}
+	}
+
+	private String nextWord() {
+		int rank = Arrays.binarySearch(cumulative, random.nextDouble());
+		return vocabulary[Math.min(VOCABULARY_SIZE - 1, rank < 0 ? -rank - 1 : rank)];
+	}
+
+	/**
+	 * Generates a corpus of approximately the given size.
+	 * 
+	 * @param bytes the target size in bytes.
+	 * @return the UTF-8 encoded corpus.
+	 */
+	byte[] generate(int bytes) {
+		StringBuilder sb = new StringBuilder(bytes + 64);
+		int sentenceLength = 0;
+		while (sb.length() < bytes) {
+			String word = nextWord();
+			if (sentenceLength == 0) {
+				word = Character.toUpperCase(word.charAt(0)) + word.substring(1);
+			}
+			sb.append(word);
+			sentenceLength++;
+
+			if (sentenceLength > 4 && random.nextInt(12) == 0) {
+				sb.append(random.nextInt(4) == 0 ? "?" : ".");
+				sb.append(random.nextInt(5) == 0 ? '\n' : ' ');
+				sentenceLength = 0;
+			} else if (random.nextInt(10) == 0) {
+				sb.append(", ");
+			} else {
+				sb.append(' ');
+			}
+		}
+		sb.setLength(bytes);
+		return sb.toString().getBytes(StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,24 @@
+package com.germer.markov.web.controller;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when the body of a request doesn't match the digest sent by the
+ * client in its {@code Content-Digest} header. Answered as
+ * {@code 400 Bad Request}.
+ * 
+ * @author <a href="mailto:alegermer@gmail.com">Alessandro Germer</a>
+ */
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class ContentDigestMismatchException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Creates the exception.
+	 */
+	public ContentDigestMismatchException() {
+		super("The request body doesn't match its Content-Digest header.");
+	}
+}
@@ -0,0 +1,29 @@
+package com.germer.markov.web.controller;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when a source would build a Markov Chain model too large for the
+ * admission limit of the web application, even with the shortest prefix
+ * length. Answered as {@code 413 Payload Too Large}.
+ * 
+ * @author <a href="mailto:alegermer@gmail.com">Alessandro Germer</a>
+ */
+@ResponseStatus(HttpStatus.PAYLOAD_TOO_LARGE)
+public class ModelTooLargeException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Creates the exception for the given estimate and limit.
+	 * 
+	 * @param estimatedBytes the estimated model bytes with the shortest
+	 *            prefix length when the limit was passed.
+	 * @param limitBytes the admission limit in bytes.
+	 */
+	public ModelTooLargeException(long estimatedBytes, long limitBytes) {
+		super("The source would build a model of at least " + estimatedBytes + " bytes, over the limit of "
+				+ limitBytes + " bytes.");
+	}
+}
@@ -1,15 +1,26 @@
 package com.germer.markov.web.controller;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
 
+import com.germer.markov.chain.ChainAnalysis;
 import com.germer.markov.chain.MarkovChain;
 import com.germer.markov.chain.MarkovChainBuilder;
+import com.germer.markov.chain.ModelSizeLimitException;
 import com.germer.markov.web.model.AvailableParameters;
 import com.germer.markov.web.model.MarkovChainResult;
 
@@ -21,6 +32,19 @@ import com.germer.markov.web.model.MarkovChainResult;
 @RestController
 public class RestfulController {
 
+	/**
+	 * Estimated model bytes up to which uploads are built with the requested
+	 * prefix length (see {@link MarkovChainBuilder#setModelSizeLimit}), 0
+	 * (default) for a quarter of the maximum heap.
+	 */
+	@Value("${markov.admission.maxModelBytes:0}")
+	private long maxModelBytes;
+
+	/**
+	 * Builds in flight, by digest of the source and build parameters.
+	 */
+	private final SingleFlight<String, MarkovChain> uploadBuilds = new SingleFlight<>();
+
 	/**
 	 * Provides some available parameters to be used in /transform call.
 	 * 
@@ -34,29 +58,250 @@ public class RestfulController {
 	/**
 	 * Applies Markov Chain Algorithm text transformation to a submitted file,
 	 * according to given parameters.
+	 * <p>
+	 * The size of the model is checked against the admission limit
+	 * ({@code markov.admission.maxModelBytes}) while it's built: once over the
+	 * limit, the prefix length is downgraded to the longest one fitting it
+	 * (see {@link MarkovChainResult#getPrefixLength()}), or the request is
+	 * rejected with {@code 413 Payload Too Large} if none does.
+	 * </p>
+	 * <p>
+	 * Identical uploads arriving together are built once: the file is read
+	 * once to get its SHA-256 digest, then the first request builds the chain
+	 * while requests with the same file content, prefix length and token
+	 * strategy wait for that build and share the resulting chain read-only.
+	 * Each request still generates its own text.
+	 * </p>
 	 * 
 	 * @param file the {@link MultipartFile} submitted in the POST.
 	 * @param prefixLen the prefix length to be used (default 2).
 	 * @param maxTokens the token limit for generation when the final state
 	 *            isn't achieved before (default 1000).
+	 * @param minTokens the minimum length of the generated text whenever the
+	 *            chain allows it, see {@link MarkovChain#generate(int, int)}
+	 *            (default 0, none).
 	 * @param tokenStrategy the token strategy index according to the provided
 	 *            through {@link AvailableParameters#getTokenStrategies}.
 	 * @return the {@link MarkovChainResult} model.
+	 * @throws ModelTooLargeException if the model would be too large even
+	 *             with prefix length 1.
 	 */
 	@RequestMapping(value = "/transform", method = RequestMethod.POST)
 	public MarkovChainResult handleFileUpload(@RequestParam(value = "file", required = true) MultipartFile file,
 			@RequestParam(value = "prefixLen", defaultValue = "2") Integer prefixLen,
 			@RequestParam(value = "maxTokens", defaultValue = "1000") Integer maxTokens,
+			@RequestParam(value = "minTokens", defaultValue = "0") Integer minTokens,
+			@RequestParam(value = "tokenStrategy", defaultValue = "0") Integer tokenStrategy) {
+
+		String key = keyOf(digestOf(file), MarkovChainBuilder.DEFAULT_CHARSET, prefixLen, tokenStrategy, true);
+		MarkovChain chain = uploadBuilds.get(key, () -> buildUpload(file, prefixLen, tokenStrategy));
+
+		return generate(chain, maxTokens, minTokens);
+	}
+
+	/**
+	 * Applies Markov Chain Algorithm text transformation to the raw body of
+	 * the request, according to given parameters (sent in the query string).
+	 * Unlike {@link #handleFileUpload}, the source isn't buffered at all: the
+	 * chain is built in a single pass while the bytes arrive off the socket,
+	 * downgrading the prefix length or rejecting the request as in
+	 * {@link #handleFileUpload} as soon as the model passes the admission
+	 * limit, without reading the rest of the body. The source charset is taken
+	 * from the request Content-Type (e.g. {@code text/plain; charset=UTF-8}),
+	 * falling back to the system default.
+	 * <p>
+	 * Since the body is never buffered, its digest isn't known before the
+	 * build: identical requests are only built once (see
+	 * {@link #handleFileUpload}) when clients send the SHA-256 digest of the
+	 * body in a {@code Content-Digest} header (e.g.
+	 * {@code Content-Digest: sha-256=:<base64>:}). The digest is verified
+	 * while the body is built, rejecting the request with
+	 * {@code 400 Bad Request} if it doesn't match, and requests waiting for a
+	 * build which failed build their own body instead, so a wrong digest
+	 * never spoils the result of other requests.
+	 * </p>
+	 * 
+	 * @param request the {@link HttpServletRequest} which body is the source
+	 *            text.
+	 * @param prefixLen the prefix length to be used (default 2).
+	 * @param maxTokens the token limit for generation when the final state
+	 *            isn't achieved before (default 1000).
+	 * @param minTokens the minimum length of the generated text whenever the
+	 *            chain allows it, see {@link MarkovChain#generate(int, int)}
+	 *            (default 0, none).
+	 * @param tokenStrategy the token strategy index according to the provided
+	 *            through {@link AvailableParameters#getTokenStrategies}.
+	 * @return the {@link MarkovChainResult} model.
+	 * @throws ModelTooLargeException if the model would be too large even
+	 *             with prefix length 1.
+	 */
+	@RequestMapping(value = "/transform/stream", method = RequestMethod.POST)
+	public MarkovChainResult handleStreamUpload(HttpServletRequest request,
+			@RequestParam(value = "prefixLen", defaultValue = "2") Integer prefixLen,
+			@RequestParam(value = "maxTokens", defaultValue = "1000") Integer maxTokens,
+			@RequestParam(value = "minTokens", defaultValue = "0") Integer minTokens,
 			@RequestParam(value = "tokenStrategy", defaultValue = "0") Integer tokenStrategy) {
 
+		MarkovChain chain = buildShared(request, prefixLen, tokenStrategy, true);
+
+		return generate(chain, maxTokens, minTokens);
+	}
+
+	/**
+	 * Builds a Markov Chain from the raw body of the request (as in
+	 * {@link #handleStreamUpload}) and analyzes its structure instead of
+	 * generating text: entropy, branching factor, terminal reachability and
+	 * the most visited states. Meant to help choosing the prefix length for a
+	 * given source. Sources which would build a model over the admission
+	 * limit with the requested prefix length are rejected, since the analysis
+	 * of a shorter one would be misleading.
+	 * 
+	 * @param request the {@link HttpServletRequest} which body is the source
+	 *            text.
+	 * @param prefixLen the prefix length to be used (default 2).
+	 * @param tokenStrategy the token strategy index according to the provided
+	 *            through {@link AvailableParameters#getTokenStrategies}.
+	 * @return the {@link ChainAnalysis} model.
+	 * @throws ModelTooLargeException if the model would be too large with
+	 *             the requested prefix length.
+	 */
+	@RequestMapping(value = "/analyze", method = RequestMethod.POST)
+	public ChainAnalysis handleAnalyze(HttpServletRequest request,
+			@RequestParam(value = "prefixLen", defaultValue = "2") Integer prefixLen,
+			@RequestParam(value = "tokenStrategy", defaultValue = "0") Integer tokenStrategy) {
+
+		return buildShared(request, prefixLen, tokenStrategy, false).analyze();
+	}
+
+	/**
+	 * Builds the chain of a source (closing it) within the admission limit,
+	 * downgrading the prefix length if allowed.
+	 */
+	private MarkovChain admit(InputStream is, Charset charset, Integer prefixLen, Integer tokenStrategy,
+			boolean downgrade) {
+		long limit = maxModelBytes > 0 ? maxModelBytes : Runtime.getRuntime().maxMemory() / 4;
+		try (InputStream source = is) {
+			return newBuilder(charset, prefixLen, tokenStrategy).setModelSizeLimit(limit)
+					.setPrefixDowngrade(downgrade).build(source);
+		} catch (ModelSizeLimitException e) {
+			throw new ModelTooLargeException(e.getModelBytes(), e.getLimitBytes());
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private MarkovChain buildUpload(MultipartFile file, Integer prefixLen, Integer tokenStrategy) {
 		try {
-			MarkovChain chain = new MarkovChainBuilder().setPrefixLength(prefixLen)
-					.setTokenStrategy(AvailableParameters.getInstance().tokenStrategyByIndex(tokenStrategy))
-					.build(file.getInputStream());
+			return admit(file.getInputStream(), MarkovChainBuilder.DEFAULT_CHARSET, prefixLen, tokenStrategy, true);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
 
-			return new MarkovChainResult(chain.generate(maxTokens), chain.getStates());
+	/**
+	 * Builds the raw body of the request, sharing the build with identical
+	 * concurrent requests if the client sent the digest of the body.
+	 */
+	private MarkovChain buildShared(HttpServletRequest request, Integer prefixLen, Integer tokenStrategy,
+			boolean downgrade) {
+		String digest = contentDigestOf(request);
+		if (digest == null) {
+			return buildStream(request, prefixLen, tokenStrategy, downgrade, null);
+		}
+
+		String key = keyOf(digest, charsetOf(request), prefixLen, tokenStrategy, downgrade);
+		boolean[] led = new boolean[1];
+		try {
+			return uploadBuilds.get(key, () -> {
+				led[0] = true;
+				return buildStream(request, prefixLen, tokenStrategy, downgrade, digest);
+			});
+		} catch (RuntimeException e) {
+			if (led[0]) {
+				throw e;
+			}
+			// Failed on the body of another request, which may not match.
+			return buildStream(request, prefixLen, tokenStrategy, downgrade, digest);
+		}
+	}
+
+	/**
+	 * Builds the raw body of the request, verifying its digest if not null.
+	 */
+	private MarkovChain buildStream(HttpServletRequest request, Integer prefixLen, Integer tokenStrategy,
+			boolean downgrade, String digest) {
+		try {
+			if (digest == null) {
+				return admit(request.getInputStream(), charsetOf(request), prefixLen, tokenStrategy, downgrade);
+			}
+			DigestInputStream body = new DigestInputStream(request.getInputStream(), newDigest());
+			MarkovChain chain = admit(body, charsetOf(request), prefixLen, tokenStrategy, downgrade);
+			if (!digest.equals(Base64.getEncoder().encodeToString(body.getMessageDigest().digest()))) {
+				throw new ContentDigestMismatchException();
+			}
+			return chain;
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
 	}
+
+	private static String keyOf(String digest, Charset charset, Integer prefixLen, Integer tokenStrategy,
+			boolean downgrade) {
+		return digest + ':' + charset.name() + ':' + prefixLen + ':' + tokenStrategy + ':' + downgrade;
+	}
+
+	/**
+	 * Gets the SHA-256 digest of the body sent by the client in the
+	 * Content-Digest header (RFC 9530), null if none.
+	 */
+	private static String contentDigestOf(HttpServletRequest request) {
+		String header = request.getHeader("Content-Digest");
+		if (header == null) {
+			return null;
+		}
+		for (String member : header.split(",")) {
+			member = member.trim();
+			if (member.startsWith("sha-256=:") && member.endsWith(":") && member.length() > 10) {
+				return member.substring(9, member.length() - 1);
+			}
+		}
+		return null;
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String digestOf(MultipartFile file) {
+		try (InputStream is = file.getInputStream()) {
+			MessageDigest digest = newDigest();
+			byte[] buffer = new byte[1 << 16];
+			for (int read = is.read(buffer); read >= 0; read = is.read(buffer)) {
+				digest.update(buffer, 0, read);
+			}
+			return Base64.getEncoder().encodeToString(digest.digest());
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static Charset charsetOf(HttpServletRequest request) {
+		return request.getCharacterEncoding() != null ? Charset.forName(request.getCharacterEncoding())
+				: MarkovChainBuilder.DEFAULT_CHARSET;
+	}
+
+	private MarkovChainBuilder newBuilder(Charset charset, Integer prefixLen, Integer tokenStrategy) {
+		return new MarkovChainBuilder().setPrefixLength(prefixLen).setSourceCharset(charset)
+				.setTokenStrategy(AvailableParameters.getInstance().tokenStrategyByIndex(tokenStrategy));
+	}
+
+	private static MarkovChainResult generate(MarkovChain chain, Integer maxTokens, Integer minTokens) {
+		String text = minTokens > 0 ? chain.generate(minTokens, maxTokens) : chain.generate(maxTokens);
+
+		return new MarkovChainResult(text, chain.getStates(), chain.getPrefixLength());
+	}
 }
@@ -0,0 +1,60 @@
+package com.germer.markov.web.controller;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Deduplication of identical concurrent computations: the first caller for a
+ * key computes the value in its own thread, and callers arriving with the
+ * same key while it's in flight wait for it and get the same value (or the
+ * same failure) instead of computing it again. Values aren't cached, a key is
+ * computed again once its flight lands.
+ *
+ * @author <a href="mailto:alegermer@gmail.com">Alessandro Germer</a>
+ *
+ * @param <K> the type of the keys.
+ * @param <V> the type of the values.
+ */
+class SingleFlight<K, V> {
+
+	private final ConcurrentMap<K, CompletableFuture<V>> flights = new ConcurrentHashMap<>();
+
+	/**
+	 * Gets the value of a key, computing it unless an identical computation
+	 * is already in flight.
+	 *
+	 * @param key the key identifying the computation.
+	 * @param computation the computation of the value.
+	 * @return the computed value, shared by all concurrent callers.
+	 */
+	V get(K key, Supplier<V> computation) {
+		CompletableFuture<V> flight = new CompletableFuture<>();
+		CompletableFuture<V> inFlight = flights.putIfAbsent(key, flight);
+		if (inFlight != null) {
+			try {
+				return inFlight.join();
+			} catch (CompletionException e) {
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				} else if (e.getCause() instanceof Error) {
+					throw (Error) e.getCause();
+				}
+				throw e;
+			}
+		}
+
+		try {
+			V value = computation.get();
+			flight.complete(value);
+			return value;
+		} catch (RuntimeException | Error e) {
+			flight.completeExceptionally(e);
+			throw e;
+		} finally {
+			flights.remove(key, flight);
+		}
+	}
+}
@@ -14,10 +14,12 @@ public class MarkovChainResult {
 
 	private final String content;
 	private final List<MarkovChain.State> states;
+	private final int prefixLength;
 
-	public MarkovChainResult(String content, List<MarkovChain.State> states) {
+	public MarkovChainResult(String content, List<MarkovChain.State> states, int prefixLength) {
 		this.content = content;
 		this.states = states;
+		this.prefixLength = prefixLength;
 	}
 
 	public String getContent() {
@@ -27,4 +29,14 @@ public class MarkovChainResult {
 	public List<MarkovChain.State> getStates() {
 		return states;
 	}
+
+	/**
+	 * Gets the prefix length the chain was actually built with, which may be
+	 * shorter than the requested one when the model would be too large.
+	 * 
+	 * @return the prefix length.
+	 */
+	public int getPrefixLength() {
+		return prefixLength;
+	}
 }
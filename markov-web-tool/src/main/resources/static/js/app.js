@@ -18,19 +18,16 @@ app.directive('fileModel', [ '$parse', function($parse) {
 
 app.service('MarkovChainService', [ '$http', '$rootScope', function($http, $rootScope) {
 	this.transform = function(file, prefixLen, maxTokens, tokenStrategy) {
-		var fd = new FormData();
-		fd.append('file', file);
-		if (prefixLen != null) {
-			fd.append('prefixLen', prefixLen);
-		}
-		if (maxTokens != null) {
-			fd.append('maxTokens', maxTokens);
-		}
-		fd.append('tokenStrategy', tokenStrategy)
-		$http.post("/transform", fd, {
+		// Raw file body (streamed by the server), parameters in the query.
+		$http.post("/transform/stream", file, {
+			params : {
+				prefixLen : prefixLen,
+				maxTokens : maxTokens,
+				tokenStrategy : tokenStrategy
+			},
 			transformRequest : angular.identity,
 			headers : {
-				'Content-Type' : undefined
+				'Content-Type' : 'application/octet-stream'
 			}
 		}).then(function(response) {
 			$rootScope.result = response.data;
@@ -0,0 +1,248 @@
+package com.germer.markov.web.controller;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.germer.markov.chain.ChainSizeEstimate;
+import com.germer.markov.chain.MarkovChainBuilder;
+import com.germer.markov.web.model.MarkovChainResult;
+
+public class RestfulControllerTest {
+
+	private byte[] source;
+	private ChainSizeEstimate estimate;
+	private RestfulController controller;
+
+	@Before
+	public void setUp() {
+		Random random = new Random(42);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 20000; i++) {
+			sb.append("w").append(random.nextInt(200)).append(' ');
+		}
+		source = sb.toString().getBytes(StandardCharsets.UTF_8);
+		estimate = new MarkovChainBuilder().setPrefixLength(3).setSourceCharset(StandardCharsets.UTF_8)
+				.estimate(new ByteArrayInputStream(source));
+		controller = new RestfulController();
+	}
+
+	private void setMaxModelBytes(long bytes) throws ReflectiveOperationException {
+		Field field = RestfulController.class.getDeclaredField("maxModelBytes");
+		field.setAccessible(true);
+		field.setLong(controller, bytes);
+	}
+
+	private HttpServletRequest request() throws IOException {
+		return request(new ByteArrayInputStream(source));
+	}
+
+	private HttpServletRequest request(ByteArrayInputStream body) throws IOException {
+		return request(body, null);
+	}
+
+	private HttpServletRequest request(ByteArrayInputStream body, String contentDigest) throws IOException {
+		HttpServletRequest request = mock(HttpServletRequest.class);
+		when(request.getHeader("Content-Digest")).thenReturn(contentDigest);
+		when(request.getCharacterEncoding()).thenReturn("UTF-8");
+		when(request.getInputStream()).thenReturn(new ServletInputStream() {
+			@Override
+			public int read() throws IOException {
+				return body.read();
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				return body.read(b, off, len);
+			}
+
+			@Override
+			public boolean isFinished() {
+				return body.available() == 0;
+			}
+
+			@Override
+			public boolean isReady() {
+				return true;
+			}
+
+			@Override
+			public void setReadListener(ReadListener listener) {
+				throw new UnsupportedOperationException();
+			}
+		});
+		return request;
+	}
+
+	private String sourceDigest() throws NoSuchAlgorithmException {
+		return "sha-256=:" + Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(source))
+				+ ":";
+	}
+
+	/**
+	 * A body blocking its first read until released.
+	 */
+	private ByteArrayInputStream blockingBody(CountDownLatch release) {
+		return new ByteArrayInputStream(source) {
+			@Override
+			public synchronized int read(byte[] b, int off, int len) {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return super.read(b, off, len);
+			}
+		};
+	}
+
+	private static Thread start(Runnable runnable) {
+		Thread thread = new Thread(runnable);
+		thread.start();
+		return thread;
+	}
+
+	private static void awaitWaiting(Thread thread) throws InterruptedException {
+		while (thread.getState() != Thread.State.WAITING) {
+			Thread.sleep(1);
+		}
+	}
+
+	@Test
+	public void testStreamWithinLimit() throws Exception {
+		setMaxModelBytes(estimate.getModelBytes(3) * 2);
+
+		MarkovChainResult result = controller.handleStreamUpload(request(), 3, 10, 0, 0);
+
+		assertEquals(3, result.getPrefixLength());
+	}
+
+	@Test
+	public void testStreamBuiltWhileRead() throws Exception {
+		setMaxModelBytes(estimate.getModelBytes(3) * 2);
+		// Records whether the body is first read by the build itself.
+		AtomicReference<Boolean> readByBuild = new AtomicReference<>();
+		ByteArrayInputStream body = new ByteArrayInputStream(source) {
+			@Override
+			public synchronized int read(byte[] b, int off, int len) {
+				if (readByBuild.get() == null) {
+					readByBuild.set(Arrays.stream(Thread.currentThread().getStackTrace())
+							.anyMatch(frame -> frame.getClassName().equals(MarkovChainBuilder.class.getName())
+									&& frame.getMethodName().equals("build")));
+				}
+				return super.read(b, off, len);
+			}
+		};
+
+		controller.handleStreamUpload(request(body), 3, 10, 0, 0);
+
+		assertTrue(readByBuild.get());
+	}
+
+	@Test
+	public void testStreamDowngraded() throws Exception {
+		// Between the model sizes of prefix lengths 1 and 2.
+		setMaxModelBytes((estimate.getModelBytes(1) + estimate.getModelBytes(2)) / 2);
+
+		MarkovChainResult result = controller.handleStreamUpload(request(), 3, 10, 0, 0);
+
+		assertEquals(1, result.getPrefixLength());
+	}
+
+	@Test
+	public void testStreamRejectedBeforeReadToTheEnd() throws Exception {
+		setMaxModelBytes(estimate.getModelBytes(1) / 2);
+		ByteArrayInputStream body = new ByteArrayInputStream(source);
+
+		try {
+			controller.handleStreamUpload(request(body), 3, 10, 0, 0);
+			fail("The source should be rejected.");
+		} catch (ModelTooLargeException e) {
+			assertTrue(body.available() > 0);
+		}
+	}
+
+	@Test(expected = ModelTooLargeException.class)
+	public void testAnalyzeRejectedInsteadOfDowngraded() throws Exception {
+		setMaxModelBytes((estimate.getModelBytes(1) + estimate.getModelBytes(2)) / 2);
+
+		controller.handleAnalyze(request(), 3, 0);
+	}
+
+	@Test
+	public void testStreamsWithDigestBuiltOnce() throws Exception {
+		setMaxModelBytes(estimate.getModelBytes(3) * 2);
+		CountDownLatch release = new CountDownLatch(1);
+		ByteArrayInputStream second = new ByteArrayInputStream(source);
+		HttpServletRequest firstRequest = request(blockingBody(release), sourceDigest());
+		HttpServletRequest secondRequest = request(second, sourceDigest());
+		MarkovChainResult[] results = new MarkovChainResult[2];
+
+		Thread leader = start(() -> results[0] = controller.handleStreamUpload(firstRequest, 3, 5, 0, 0));
+		awaitWaiting(leader);
+		Thread waiter = start(() -> results[1] = controller.handleStreamUpload(secondRequest, 3, 50, 0, 0));
+		awaitWaiting(waiter);
+		release.countDown();
+		leader.join();
+		waiter.join();
+
+		// The second body is never read, each request generates its own text.
+		assertEquals(source.length, second.available());
+		assertEquals(results[0].getStates().size(), results[1].getStates().size());
+		assertTrue(results[0].getContent().split(" ").length <= 5);
+		assertTrue(results[1].getContent().split(" ").length > 5);
+	}
+
+	@Test(expected = ContentDigestMismatchException.class)
+	public void testStreamDigestMismatch() throws Exception {
+		setMaxModelBytes(estimate.getModelBytes(3) * 2);
+
+		controller.handleStreamUpload(request(new ByteArrayInputStream(source), "sha-256=:AAAA:"), 3, 10, 0, 0);
+	}
+
+	@Test
+	public void testUploadsBuiltOnce() throws Exception {
+		setMaxModelBytes(estimate.getModelBytes(3) * 2);
+		CountDownLatch release = new CountDownLatch(1);
+		// The first file blocks its second read (the build) until released.
+		MultipartFile first = mock(MultipartFile.class);
+		when(first.getInputStream()).thenReturn(new ByteArrayInputStream(source), blockingBody(release));
+		MultipartFile second = mock(MultipartFile.class);
+		when(second.getInputStream()).thenAnswer(invocation -> new ByteArrayInputStream(source));
+		MarkovChainResult[] results = new MarkovChainResult[2];
+
+		Thread leader = start(() -> results[0] = controller.handleFileUpload(first, 3, 5, 0, 0));
+		awaitWaiting(leader);
+		Thread waiter = start(() -> results[1] = controller.handleFileUpload(second, 3, 50, 0, 0));
+		awaitWaiting(waiter);
+		release.countDown();
+		leader.join();
+		waiter.join();
+
+		// The second file is only read for its digest.
+		verify(first, times(2)).getInputStream();
+		verify(second, times(1)).getInputStream();
+		assertEquals(results[0].getStates().size(), results[1].getStates().size());
+		assertTrue(results[0].getContent().split(" ").length <= 5);
+		assertTrue(results[1].getContent().split(" ").length > 5);
+	}
+}
@@ -0,0 +1,113 @@
+package com.germer.markov.web.controller;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+public class SingleFlightTest {
+
+	private static final int CALLERS = 8;
+
+	private final SingleFlight<String, Object> flights = new SingleFlight<>();
+	private final AtomicInteger computations = new AtomicInteger();
+
+	/**
+	 * Calls get from many threads at once, the first computation blocking
+	 * until all of them are waiting.
+	 *
+	 * @return the value or failure got by each caller.
+	 */
+	private Object[] callConcurrently(Supplier<Object> computation) throws InterruptedException {
+		CountDownLatch release = new CountDownLatch(1);
+		Supplier<Object> blocking = () -> {
+			computations.incrementAndGet();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return computation.get();
+		};
+
+		Object[] outcomes = new Object[CALLERS];
+		List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < CALLERS; i++) {
+			int caller = i;
+			Thread thread = new Thread(() -> {
+				try {
+					outcomes[caller] = flights.get("key", blocking);
+				} catch (RuntimeException e) {
+					outcomes[caller] = e;
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			while (thread.getState() != Thread.State.WAITING) {
+				Thread.sleep(1);
+			}
+		}
+		release.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		return outcomes;
+	}
+
+	@Test
+	public void testComputedOnce() throws InterruptedException {
+		Object[] outcomes = callConcurrently(Object::new);
+
+		assertEquals(1, computations.get());
+		for (Object outcome : outcomes) {
+			assertNotNull(outcome);
+			assertSame(outcomes[0], outcome);
+		}
+	}
+
+	@Test
+	public void testFailurePropagated() throws InterruptedException {
+		IllegalStateException failure = new IllegalStateException();
+
+		Object[] outcomes = callConcurrently(() -> {
+			throw failure;
+		});
+
+		assertEquals(1, computations.get());
+		for (Object outcome : outcomes) {
+			assertSame(failure, outcome);
+		}
+	}
+
+	@Test
+	public void testComputedAgainOnceLanded() throws InterruptedException {
+		Object first = flights.get("key", Object::new);
+		Object[] outcomes = callConcurrently(Object::new);
+		Object last = flights.get("key", Object::new);
+
+		assertEquals(1, computations.get());
+		assertNotSame(first, outcomes[0]);
+		assertNotSame(outcomes[0], last);
+	}
+
+	@Test
+	public void testComputedAgainAfterFailure() {
+		try {
+			flights.get("key", () -> {
+				throw new IllegalStateException();
+			});
+			fail("The failure should be thrown.");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+
+		assertEquals("value", flights.get("key", () -> "value"));
+	}
+}